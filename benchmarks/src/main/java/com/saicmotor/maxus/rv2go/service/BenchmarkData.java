@@ -0,0 +1,312 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试数据
+ * 按行数生成主表、表2、排除表、电子发票模板和出库单，内容固定（固定随机种子），
+ * 生成后按行数保存在临时目录的 data-processor-benchmarks 下，之后的运行直接复用（100 万行的文件生成较慢）。
+ * 主表约 40% 的行能在表2中按编号匹配，排除表的行数是主表的 1/4。
+ */
+final class BenchmarkData {
+
+    // 数据格式变化时修改，使旧的缓存文件失效
+    private static final int VERSION = 1;
+
+    // 微基准在内存中生成的主表行数，以及其中的数据行数（fillTable1 每 97 行留一个空行）
+    static final int MICRO_ROWS = 10000;
+    static final int MICRO_DATA_ROWS = MICRO_ROWS - MICRO_ROWS / 97;
+
+    static final String[] TABLE1_COLUMNS = {"编号", "名称", "日期", "数量", "金额", "备注", "单价"};
+    static final String[] TABLE2_COLUMNS = {"编号", "名称", "单价", "日期", "备注"};
+
+    final int rows;
+    final File table1;
+    final File table2;
+    final File table3;
+    final File template;
+    final File outbound;
+
+    private BenchmarkData(int rows, File directory) {
+        this.rows = rows;
+        this.table1 = new File(directory, "table1.xlsx");
+        this.table2 = new File(directory, "table2.xlsx");
+        this.table3 = new File(directory, "table3.xlsx");
+        this.template = new File(directory, "template.xlsx");
+        this.outbound = new File(directory, "outbound.xlsx");
+    }
+
+    /**
+     * 获取指定行数的数据文件，不存在时生成
+     */
+    static BenchmarkData generate(int rows) throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"),
+                "data-processor-benchmarks" + File.separator + "v" + VERSION + "-" + rows);
+        BenchmarkData data = new BenchmarkData(rows, directory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录: " + directory.getAbsolutePath());
+        }
+        write(data.table1, workbook -> fillTable1(workbook, rows));
+        write(data.table2, workbook -> fillTable2(workbook, rows));
+        write(data.table3, workbook -> fillTable3(workbook, rows));
+        write(data.template, BenchmarkData::fillTemplate);
+        write(data.outbound, workbook -> fillOutbound(workbook, rows));
+        return data;
+    }
+
+    /**
+     * 关联列参数对应的列名：id 为数字编号（单列），name_date 为名称+日期（文本和日期两列）
+     */
+    static String[] keyColumns(String key) {
+        switch (key) {
+            case "id":
+                return new String[]{"编号"};
+            case "name_date":
+                return new String[]{"名称", "日期"};
+            default:
+                throw new IllegalArgumentException("未知的关联列参数: " + key);
+        }
+    }
+
+    /**
+     * 在内存中生成主表工作簿（微基准测试直接读写单元格）
+     */
+    static XSSFWorkbook table1Workbook(int rows) {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        fillTable1(workbook, rows);
+        return workbook;
+    }
+
+    /**
+     * sheet 页中表头（第 1 行）以下的所有行
+     */
+    static Row[] dataRows(Sheet sheet) {
+        List<Row> rows = new ArrayList<>();
+        for (Row row : sheet) {
+            if (row.getRowNum() > 0) {
+                rows.add(row);
+            }
+        }
+        return rows.toArray(new Row[0]);
+    }
+
+    private interface Filler {
+        void fill(Workbook workbook);
+    }
+
+    /**
+     * 流式生成一个 xlsx 文件（已存在时跳过），先写临时文件再改名，中断的生成不会留下不完整的文件
+     */
+    private static void write(File file, Filler filler) throws IOException {
+        if (file.isFile()) {
+            return;
+        }
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+        try {
+            filler.fill(workbook);
+            try (OutputStream out = new FileOutputStream(temp)) {
+                workbook.write(out);
+            }
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 主表：主表 sheet 页在前，表头在第 1 行；包含空行、空单元格、日期、带格式的金额和多行文本
+     */
+    static void fillTable1(Workbook workbook, int rows) {
+        Random random = new Random(42);
+        Sheet sheet = workbook.createSheet("主表");
+        CellStyle dateStyle = dateStyle(workbook);
+        CellStyle headerStyle = workbook.createCellStyle();
+        Font bold = workbook.createFont();
+        bold.setBold(true);
+        headerStyle.setFont(bold);
+        headerStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        CellStyle moneyStyle = workbook.createCellStyle();
+        moneyStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+        moneyStyle.setBorderBottom(BorderStyle.THIN);
+
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < TABLE1_COLUMNS.length; i++) {
+            Cell cell = header.createCell(i);
+            cell.setCellValue(TABLE1_COLUMNS[i]);
+            cell.setCellStyle(headerStyle);
+        }
+        Calendar calendar = calendar();
+        for (int r = 1; r <= rows; r++) {
+            if (r % 97 == 0) {
+                continue;
+            }
+            Row row = sheet.createRow(r);
+            int id = random.nextInt(rows * 2);
+            if (r % 13 != 0) {
+                row.createCell(0).setCellValue(id);
+            }
+            row.createCell(1).setCellValue("品名" + id % 300);
+            Cell date = row.createCell(2);
+            calendar.set(2024, Calendar.JANUARY, 1 + id % 60);
+            date.setCellValue(calendar.getTime());
+            date.setCellStyle(dateStyle);
+            if (r % 11 != 0) {
+                row.createCell(3).setCellValue(random.nextInt(100));
+            }
+            Cell amount = row.createCell(4);
+            amount.setCellValue(random.nextInt(100000) / 100.0);
+            amount.setCellStyle(moneyStyle);
+            if (r % 5 == 0) {
+                row.createCell(5).setCellValue("备注\n第二行" + r);
+            }
+            if (r % 7 == 0) {
+                row.createCell(6).setCellValue("原价");
+            }
+        }
+
+        Sheet other = workbook.createSheet("其他");
+        other.createRow(0).createCell(0).setCellValue("其他 sheet 页");
+    }
+
+    /**
+     * 表2：编号有数字、带空格的文本两种写法，名称带首尾空格
+     */
+    static void fillTable2(Workbook workbook, int rows) {
+        Random random = new Random(43);
+        Sheet sheet = workbook.createSheet("数据");
+        CellStyle dateStyle = dateStyle(workbook);
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < TABLE2_COLUMNS.length; i++) {
+            header.createCell(i).setCellValue(TABLE2_COLUMNS[i]);
+        }
+        Calendar calendar = calendar();
+        for (int r = 1; r <= rows; r++) {
+            if (r % 89 == 0) {
+                continue;
+            }
+            Row row = sheet.createRow(r);
+            int id = random.nextInt(rows * 2);
+            if (r % 17 == 0) {
+                row.createCell(0).setCellValue(" " + id + ".0 ");
+            } else if (r % 19 != 0) {
+                row.createCell(0).setCellValue(id);
+            }
+            row.createCell(1).setCellValue(" 品名" + id % 300 + " ");
+            row.createCell(2).setCellValue(random.nextInt(10000) / 10.0);
+            Cell date = row.createCell(3);
+            calendar.set(2024, Calendar.JANUARY, 1 + id % 60);
+            date.setCellValue(calendar.getTime());
+            date.setCellStyle(dateStyle);
+            if (r % 4 == 0) {
+                row.createCell(4).setCellValue("行" + r + "\r\n换行");
+            }
+        }
+    }
+
+    /**
+     * 排除表：数量有数字和文本两种写法
+     */
+    static void fillTable3(Workbook workbook, int rows) {
+        Random random = new Random(44);
+        Sheet sheet = workbook.createSheet("排除");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("编号");
+        header.createCell(1).setCellValue("名称");
+        header.createCell(2).setCellValue("数量");
+        for (int r = 1; r <= rows / 4; r++) {
+            Row row = sheet.createRow(r);
+            int id = random.nextInt(rows * 2);
+            row.createCell(0).setCellValue(id);
+            row.createCell(1).setCellValue("品名" + id % 300);
+            if (r % 3 == 0) {
+                row.createCell(2).setCellValue(String.valueOf(random.nextInt(10)));
+            } else {
+                row.createCell(2).setCellValue(random.nextInt(10));
+            }
+        }
+    }
+
+    /**
+     * 电子发票模板：表头在第 3 行，下面几行带样式的示例数据
+     */
+    static void fillTemplate(Workbook workbook) {
+        Sheet sheet = workbook.createSheet("模板");
+        CellStyle fill = workbook.createCellStyle();
+        fill.setFillForegroundColor(IndexedColors.LIGHT_GREEN.getIndex());
+        fill.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        fill.setBorderLeft(BorderStyle.THIN);
+        sheet.createRow(0).createCell(0).setCellValue("电子发票");
+        sheet.createRow(1).createCell(0).setCellValue("说明");
+        String[] columns = {"项目名称", "商品和服务税收分类编码", "单位", "商品数量", "商品单价", "金额", "税率", "优惠政策类型"};
+        for (int r = 2; r < 6; r++) {
+            Row row = sheet.createRow(r);
+            for (int i = 0; i < columns.length; i++) {
+                Cell cell = row.createCell(i);
+                cell.setCellValue(r == 2 ? columns[i] : "示例" + r);
+                cell.setCellStyle(fill);
+            }
+        }
+    }
+
+    /**
+     * 出库单：400 种商品，定价有数字和文本两种写法
+     */
+    static void fillOutbound(Workbook workbook, int rows) {
+        Sheet sheet = workbook.createSheet("出库");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("商品编号");
+        header.createCell(1).setCellValue("商品名称");
+        header.createCell(2).setCellValue("数量");
+        header.createCell(3).setCellValue("定价");
+        for (int r = 1; r <= rows; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue("SP" + r % 400);
+            if (r % 9 != 0) {
+                row.createCell(1).setCellValue("书" + r % 350);
+            }
+            row.createCell(2).setCellValue(1 + r % 5);
+            if (r % 10 == 0) {
+                row.createCell(3).setCellValue("12.5");
+            } else {
+                row.createCell(3).setCellValue(10 + r % 30);
+            }
+        }
+    }
+
+    private static CellStyle dateStyle(Workbook workbook) {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+        return style;
+    }
+
+    private static Calendar calendar() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.JANUARY, 1, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+}
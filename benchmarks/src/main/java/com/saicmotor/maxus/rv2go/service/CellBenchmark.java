@@ -0,0 +1,109 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单元格读取和复制：getCellValue / getCellValueAsString 的类型解码，copyCellXSSF 的样式查找和值复制
+ * 在主表的 10000 行（数字、文本、日期、空单元格混合）上逐个单元格执行，结果为每个单元格的平均耗时。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CellBenchmark {
+
+    // 每次调用处理的单元格数（主表去掉空行和空单元格后的数量）
+    private static final int CELLS = 51217;
+
+    private final ExcelService excelService = new ExcelService();
+    private XSSFWorkbook sourceWorkbook;
+    private Cell[] cells;
+
+    // 复制的目标（每轮重建，避免共享字符串表无限增长）
+    private XSSFWorkbook targetWorkbook;
+    private StyleCache styleCache;
+    private Row targetRow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sourceWorkbook = BenchmarkData.table1Workbook(BenchmarkData.MICRO_ROWS);
+        List<Cell> list = new ArrayList<>();
+        for (Row row : BenchmarkData.dataRows(sourceWorkbook.getSheetAt(0))) {
+            for (Cell cell : row) {
+                list.add(cell);
+            }
+        }
+        if (list.size() != CELLS) {
+            throw new IllegalStateException("单元格数应为 " + CELLS + "，实际为 " + list.size());
+        }
+        cells = list.toArray(new Cell[0]);
+    }
+
+    @Setup(Level.Iteration)
+    public void createTarget() {
+        targetWorkbook = new XSSFWorkbook();
+        styleCache = new StyleCache(targetWorkbook);
+        targetRow = targetWorkbook.createSheet("目标").createRow(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeTarget() throws IOException {
+        targetWorkbook.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sourceWorkbook.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void getCellValue(Blackhole blackhole) {
+        for (Cell cell : cells) {
+            blackhole.consume(excelService.getCellValue(cell));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void getCellValueAsString(Blackhole blackhole) {
+        for (Cell cell : cells) {
+            blackhole.consume(excelService.getCellValueAsString(cell));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void copyCellXSSF() {
+        for (Cell cell : cells) {
+            Cell target = targetRow.getCell(cell.getColumnIndex());
+            if (target == null) {
+                target = targetRow.createCell(cell.getColumnIndex());
+            }
+            excelService.copyCellXSSF(cell, target, targetWorkbook, styleCache);
+        }
+    }
+}
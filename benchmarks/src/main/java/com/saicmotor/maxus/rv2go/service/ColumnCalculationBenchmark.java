@@ -0,0 +1,87 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 列运算（applyColumnCalculations）
+ * 列运算在基准开始前编译一次，每次调用对主表的 10000 行逐行求值并写回单元格，结果为每行的平均耗时；
+ * 分别测试两列的二元运算和引用其他运算结果的公式。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ColumnCalculationBenchmark {
+
+    @Param({"binary", "expression"})
+    public String calculations;
+
+    private final ExcelService excelService = new ExcelService();
+    private XSSFWorkbook workbook;
+    private Row[] rows;
+    private ExcelService.CompiledCalculations compiled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workbook = BenchmarkData.table1Workbook(BenchmarkData.MICRO_ROWS);
+        rows = BenchmarkData.dataRows(workbook.getSheetAt(0));
+        if (rows.length != BenchmarkData.MICRO_DATA_ROWS) {
+            throw new IllegalStateException("行数应为 " + BenchmarkData.MICRO_DATA_ROWS + "，实际为 " + rows.length);
+        }
+
+        Row header = workbook.getSheetAt(0).getRow(0);
+        Map<String, Integer> columnMap = new HashMap<>();
+        for (Cell cell : header) {
+            columnMap.put(cell.getStringCellValue(), cell.getColumnIndex());
+        }
+        List<ExcelService.ColumnCalculation> columnCalculations = "binary".equals(calculations)
+                ? Arrays.asList(
+                        new ExcelService.ColumnCalculation("总价", "数量", "multiply", "金额"),
+                        new ExcelService.ColumnCalculation("差额", "金额", "subtract", "单价"))
+                : Arrays.asList(
+                        new ExcelService.ColumnCalculation("均价", "IF(数量 > 0, ROUND(总价 / 数量, 2), 0)"),
+                        new ExcelService.ColumnCalculation("总价", "[数量] * [金额]"));
+        compiled = excelService.compileColumnCalculations(header, columnMap, columnCalculations);
+        if (compiled == null) {
+            throw new IllegalStateException("列运算编译失败");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.MICRO_DATA_ROWS)
+    public void applyColumnCalculations() {
+        for (Row row : rows) {
+            excelService.applyColumnCalculations(row, compiled);
+        }
+    }
+}
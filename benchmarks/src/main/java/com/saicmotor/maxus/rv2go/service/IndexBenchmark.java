@@ -0,0 +1,58 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表2索引的建立（buildSheet2Index）
+ * 表2先流式读取为查找表（不计时），每次调用对整个查找表建立一次索引。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    // 关联列，见 BenchmarkData.keyColumns
+    @Param({"id", "name_date"})
+    public String key;
+
+    private final ExcelService excelService = new ExcelService();
+    private LookupTable table2;
+    private String[] joinKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData data = BenchmarkData.generate(rows);
+        joinKeys = BenchmarkData.keyColumns(key);
+        LookupTable.Builder builder = new LookupTable.Builder(0, Arrays.asList(joinKeys));
+        if (!StreamingSheetReader.readSheet(data.table2, 0, builder) || !builder.isHeaderFound()) {
+            throw new IllegalStateException("无法读取表2: " + data.table2.getAbsolutePath());
+        }
+        table2 = builder.build();
+    }
+
+    @Benchmark
+    public Object buildSheet2Index() {
+        return excelService.buildSheet2Index(table2, joinKeys);
+    }
+}
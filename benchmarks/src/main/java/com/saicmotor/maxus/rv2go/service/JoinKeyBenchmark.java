@@ -0,0 +1,83 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主表关联键的构建（与合并时的探测相同的路径）
+ * extractTable1Columns：按行从主表 sheet 页取出关联列（探测前在调用线程执行一次）；
+ * buildTable1Key：从取出的查找表逐行构建关联键（并行探测中每行执行）。
+ * 都在主表的 10000 行上执行，结果为每行的平均耗时；
+ * 关联列分别为数字编号（单列）和 名称+日期（文本和日期两列）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JoinKeyBenchmark {
+
+    // 关联列，见 BenchmarkData.keyColumns
+    @Param({"id", "name_date"})
+    public String key;
+
+    private final ExcelService excelService = new ExcelService();
+    private final ProgressTracker progress = new ProgressTracker("基准测试", null, null);
+    private final JoinIndex.Key joinKey = new JoinIndex.Key();
+    private XSSFWorkbook workbook;
+    private Sheet sheet;
+    private String[] columns;
+    private LookupTable rows1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workbook = BenchmarkData.table1Workbook(BenchmarkData.MICRO_ROWS);
+        sheet = workbook.getSheetAt(0);
+        columns = BenchmarkData.keyColumns(key);
+        rows1 = extractTable1Columns();
+        if (rows1.getRowCount() != BenchmarkData.MICRO_DATA_ROWS) {
+            throw new IllegalStateException("行数应为 " + BenchmarkData.MICRO_DATA_ROWS
+                    + "，实际为 " + rows1.getRowCount());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.MICRO_DATA_ROWS)
+    public LookupTable extractTable1Columns() {
+        return excelService.extractTable1Columns(sheet, 0, Arrays.asList(columns), progress);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.MICRO_DATA_ROWS)
+    public void buildTable1Key(Blackhole blackhole) {
+        for (int rowId = 0; rowId < BenchmarkData.MICRO_DATA_ROWS; rowId++) {
+            excelService.buildTable1Key(columns, rows1, rowId, joinKey);
+            blackhole.consume(joinKey);
+        }
+    }
+}
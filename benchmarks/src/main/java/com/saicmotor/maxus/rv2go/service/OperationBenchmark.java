@@ -0,0 +1,107 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelService 各操作的整体耗时（读取、匹配、写出和保存）
+ * 每次调用是一次完整的操作，按单次耗时统计；每次调用前清空解析结果缓存，表2、排除表都重新读取。
+ * 100 万行的主表以 DOM 方式读取，需要较大的堆（见 @Fork 的参数），只测部分行数时用 -p rows=10000。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class OperationBenchmark {
+
+    private static final List<String> JOIN_KEY_GROUPS = Arrays.asList("编号=编号", "名称,日期=名称,日期");
+    private static final String[] COLUMNS_TO_MERGE = {"单价", "日期", "备注"};
+    private static final List<ExcelService.ColumnCalculation> CALCULATIONS = Arrays.asList(
+            new ExcelService.ColumnCalculation("总价", "数量", "multiply", "单价"),
+            new ExcelService.ColumnCalculation("差额", "金额", "subtract", "单价"));
+    private static final Map<String, String> SUBTRACT_MAP = Collections.singletonMap("数量", "数量");
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private BenchmarkData data;
+    private ExcelService excelService;
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = BenchmarkData.generate(rows);
+        excelService = new ExcelService();
+        outputFile = File.createTempFile("benchmark-output-", ".xlsx");
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCache() {
+        ParsedDataCache.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() {
+        outputFile.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public boolean mergeWithMultipleJoinGroups() {
+        return check(excelService.mergeExcelFilesWithMultipleJoinGroups(data.table1, data.table2, 0, 0, 0, 0,
+                JOIN_KEY_GROUPS, COLUMNS_TO_MERGE, new String[]{"数量"}, outputFile, true, CALCULATIONS));
+    }
+
+    @Benchmark
+    public boolean mergeWithExclude() {
+        return check(excelService.mergeExcelFilesWithExclude(data.table1, data.table2, data.table3,
+                new String[]{"编号"}, COLUMNS_TO_MERGE, new String[]{"编号=编号"}, new String[]{"名称=名称"},
+                new String[]{"名称"}, SUBTRACT_MAP, outputFile));
+    }
+
+    @Benchmark
+    public boolean exportSelectedColumns() {
+        return check(excelService.exportSelectedColumns(data.table1, Arrays.asList("名称", "编号", "日期", "备注"),
+                outputFile));
+    }
+
+    @Benchmark
+    public boolean processElectronicInvoice() {
+        return check(excelService.processElectronicInvoice(data.template, data.outbound, outputFile, 2, 0, "3070101"));
+    }
+
+    /**
+     * 操作失败时中止基准测试，避免把失败的快速返回当作结果
+     */
+    private static boolean check(boolean success) {
+        if (!success) {
+            throw new IllegalStateException("操作失败，详见错误输出");
+        }
+        return true;
+    }
+}
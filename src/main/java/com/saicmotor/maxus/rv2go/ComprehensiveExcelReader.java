@@ -1,9 +1,9 @@
 package com.saicmotor.maxus.rv2go;
 
+import com.saicmotor.maxus.rv2go.service.ParallelSheetLoader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,8 +26,7 @@ public class ComprehensiveExcelReader {
         System.out.println("# 文件: " + filePath);
         System.out.println("######################################################################");
 
-        try (FileInputStream fis = new FileInputStream(filePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (Workbook workbook = ParallelSheetLoader.open(new File(filePath))) {
 
             // 获取所有sheet名称
             int numberOfSheets = workbook.getNumberOfSheets();
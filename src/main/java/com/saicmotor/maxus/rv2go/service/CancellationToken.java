@@ -0,0 +1,26 @@
+package com.saicmotor.maxus.rv2go.service;
+
+/**
+ * 取消标记
+ * 界面在用户点击"取消"时调用 cancel()（可在任意线程中调用），ExcelService 在读取、建立索引、匹配和写入的
+ * 逐行循环中检查：检查到取消后停止处理，释放工作簿，删除未写完的输出文件，操作返回 false。
+ * 标记取消后不能恢复，每次执行使用一个新的标记。
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * 请求取消
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 是否已请求取消
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
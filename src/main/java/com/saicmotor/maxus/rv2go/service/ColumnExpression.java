@@ -0,0 +1,435 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * 列运算表达式
+ * 公式按列名引用同一行的其他列，解析一次后编译为基本类型（double）的求值树，每行求值时不创建对象。
+ * <p>
+ * 语法（与 Excel 公式相近，开头的 "=" 可省略）：
+ * <ul>
+ *     <li>数字：12、3.5、1E3</li>
+ *     <li>列引用：[列名]，或不含空格和运算符的列名直接书写（如 数量、单价）</li>
+ *     <li>运算：+ - * /、括号、一元负号；比较 = &lt;&gt; &lt; &gt; &lt;= &gt;=（结果为 1 或 0）</li>
+ *     <li>函数（不区分大小写）：ROUND(值[, 小数位])、IF(条件, 值1[, 值2])、MIN(...)、MAX(...)、ABS(值)</li>
+ * </ul>
+ * 空值规则与原来的二元列运算一致：引用的单元格为空或不是数字、除数为 0、IF 条件为空或缺少的分支，
+ * 结果都为空（用 NaN 表示），空结果不写入目标单元格。
+ */
+final class ColumnExpression {
+
+    /**
+     * 编译后的求值节点
+     */
+    interface Node {
+        /**
+         * @param values 按列槽位保存的本行数值（空值为 NaN）
+         */
+        double evaluate(double[] values);
+    }
+
+    private final Node root;
+    private final Set<String> columns;
+
+    private ColumnExpression(Node root, Set<String> columns) {
+        this.root = root;
+        this.columns = columns;
+    }
+
+    /**
+     * 解析并编译公式
+     *
+     * @param formula 公式文本
+     * @param slotOf  列名 -> 列槽位（values 数组下标），列不存在时返回 -1
+     * @throws IllegalArgumentException 公式语法错误或引用的列不存在
+     */
+    static ColumnExpression compile(String formula, ToIntFunction<String> slotOf) {
+        Parser parser = new Parser(formula, slotOf);
+        Node root = parser.parse();
+        return new ColumnExpression(root, parser.columns);
+    }
+
+    /**
+     * 编译原来的二元列运算（add, subtract, multiply, divide），运算符不支持时返回 null
+     */
+    static ColumnExpression binary(String column1, String operator, String column2, ToIntFunction<String> slotOf) {
+        if (operator == null) {
+            return null;
+        }
+        Node left = reference(column1, slotOf);
+        Node right = reference(column2, slotOf);
+        Set<String> columns = new LinkedHashSet<>();
+        columns.add(column1);
+        columns.add(column2);
+        switch (operator) {
+            case "add":
+                return new ColumnExpression(arithmetic('+', left, right), columns);
+            case "subtract":
+                return new ColumnExpression(arithmetic('-', left, right), columns);
+            case "multiply":
+                return new ColumnExpression(arithmetic('*', left, right), columns);
+            case "divide":
+                return new ColumnExpression(arithmetic('/', left, right), columns);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 引用的列名
+     */
+    Set<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 求值，结果为空时返回 NaN
+     */
+    double evaluate(double[] values) {
+        return root.evaluate(values);
+    }
+
+    private static Node reference(String column, ToIntFunction<String> slotOf) {
+        int slot = slotOf.applyAsInt(column);
+        if (slot < 0) {
+            throw new IllegalArgumentException("引用的列不存在: " + column);
+        }
+        return values -> values[slot];
+    }
+
+    private static Node arithmetic(char operator, Node left, Node right) {
+        switch (operator) {
+            case '+':
+                return values -> left.evaluate(values) + right.evaluate(values);
+            case '-':
+                return values -> left.evaluate(values) - right.evaluate(values);
+            case '*':
+                return values -> left.evaluate(values) * right.evaluate(values);
+            default:
+                return values -> {
+                    double divisor = right.evaluate(values);
+                    // 避免除以零
+                    return divisor == 0.0 ? Double.NaN : left.evaluate(values) / divisor;
+                };
+        }
+    }
+
+    /**
+     * 比较运算：任一侧为空时结果为空
+     */
+    private static Node comparison(String operator, Node left, Node right) {
+        return values -> {
+            double a = left.evaluate(values);
+            double b = right.evaluate(values);
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                return Double.NaN;
+            }
+            boolean result;
+            switch (operator) {
+                case "=":
+                    result = a == b;
+                    break;
+                case "<>":
+                    result = a != b;
+                    break;
+                case "<":
+                    result = a < b;
+                    break;
+                case ">":
+                    result = a > b;
+                    break;
+                case "<=":
+                    result = a <= b;
+                    break;
+                default:
+                    result = a >= b;
+                    break;
+            }
+            return result ? 1 : 0;
+        };
+    }
+
+    /**
+     * 四舍五入（与 Excel ROUND 一致，.5 远离零）
+     */
+    private static double round(double value, double digits) {
+        if (Double.isNaN(value) || Double.isNaN(digits) || Double.isInfinite(value)) {
+            return Double.NaN;
+        }
+        return BigDecimal.valueOf(value).setScale((int) digits, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    /**
+     * 递归下降解析器
+     * 表达式 := 加减式 [比较运算符 加减式]
+     * 加减式 := 乘除式 {(+|-) 乘除式}
+     * 乘除式 := 一元式 {(*|/) 一元式}
+     * 一元式 := [-|+] 一元式 | 基本式
+     * 基本式 := 数字 | 列引用 | 函数(参数, ...) | (表达式)
+     */
+    private static final class Parser {
+        private final String text;
+        private final ToIntFunction<String> slotOf;
+        private final Set<String> columns = new LinkedHashSet<>();
+        private int position;
+
+        Parser(String formula, ToIntFunction<String> slotOf) {
+            String trimmed = formula != null ? formula.trim() : "";
+            this.text = trimmed.startsWith("=") ? trimmed.substring(1) : trimmed;
+            this.slotOf = slotOf;
+        }
+
+        Node parse() {
+            if (text.trim().isEmpty()) {
+                throw error("公式为空");
+            }
+            Node node = parseExpression();
+            skipSpaces();
+            if (position < text.length()) {
+                throw error("无法识别的内容 '" + text.substring(position) + "'");
+            }
+            return node;
+        }
+
+        private Node parseExpression() {
+            Node left = parseAdditive();
+            skipSpaces();
+            String operator = null;
+            for (String candidate : new String[]{"<=", ">=", "<>", "=", "<", ">"}) {
+                if (text.startsWith(candidate, position)) {
+                    operator = candidate;
+                    break;
+                }
+            }
+            if (operator == null) {
+                return left;
+            }
+            position += operator.length();
+            return comparison(operator, left, parseAdditive());
+        }
+
+        private Node parseAdditive() {
+            Node node = parseMultiplicative();
+            while (true) {
+                skipSpaces();
+                char c = peek();
+                if (c != '+' && c != '-') {
+                    return node;
+                }
+                position++;
+                node = arithmetic(c, node, parseMultiplicative());
+            }
+        }
+
+        private Node parseMultiplicative() {
+            Node node = parseUnary();
+            while (true) {
+                skipSpaces();
+                char c = peek();
+                if (c != '*' && c != '/') {
+                    return node;
+                }
+                position++;
+                node = arithmetic(c, node, parseUnary());
+            }
+        }
+
+        private Node parseUnary() {
+            skipSpaces();
+            char c = peek();
+            if (c == '-') {
+                position++;
+                Node operand = parseUnary();
+                return values -> -operand.evaluate(values);
+            }
+            if (c == '+') {
+                position++;
+                return parseUnary();
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            skipSpaces();
+            char c = peek();
+            if (c == '(') {
+                position++;
+                Node node = parseExpression();
+                expect(')');
+                return node;
+            }
+            if (c == '[') {
+                int end = text.indexOf(']', position + 1);
+                if (end < 0) {
+                    throw error("列引用缺少 ']'");
+                }
+                String column = text.substring(position + 1, end).trim();
+                position = end + 1;
+                return columnReference(column);
+            }
+            if (isDigit(c) || c == '.') {
+                return parseNumber();
+            }
+            if (isNameChar(c)) {
+                int start = position;
+                while (position < text.length() && isNameChar(text.charAt(position))) {
+                    position++;
+                }
+                String name = text.substring(start, position);
+                skipSpaces();
+                if (peek() == '(') {
+                    position++;
+                    return parseFunction(name);
+                }
+                return columnReference(name);
+            }
+            if (c == 0) {
+                throw error("公式不完整");
+            }
+            throw error("无法识别的字符 '" + c + "'");
+        }
+
+        private Node parseNumber() {
+            int start = position;
+            while (position < text.length() && (isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                position++;
+            }
+            if (position < text.length() && (text.charAt(position) == 'E' || text.charAt(position) == 'e')) {
+                int exponent = position + 1;
+                if (exponent < text.length() && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+                if (exponent < text.length() && isDigit(text.charAt(exponent))) {
+                    position = exponent;
+                    while (position < text.length() && isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                }
+            }
+            double value;
+            try {
+                value = Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("无效的数字 '" + text.substring(start, position) + "'");
+            }
+            return values -> value;
+        }
+
+        private Node parseFunction(String name) {
+            List<Node> args = new ArrayList<>();
+            skipSpaces();
+            if (peek() != ')') {
+                do {
+                    args.add(parseExpression());
+                    skipSpaces();
+                } while (consume(','));
+            }
+            expect(')');
+
+            String function = name.toUpperCase(Locale.ROOT);
+            switch (function) {
+                case "ROUND": {
+                    checkArgs(function, args, 1, 2);
+                    Node value = args.get(0);
+                    Node digits = args.size() > 1 ? args.get(1) : v -> 0;
+                    return values -> round(value.evaluate(values), digits.evaluate(values));
+                }
+                case "IF": {
+                    checkArgs(function, args, 2, 3);
+                    Node condition = args.get(0);
+                    Node then = args.get(1);
+                    Node otherwise = args.size() > 2 ? args.get(2) : v -> Double.NaN;
+                    return values -> {
+                        double test = condition.evaluate(values);
+                        if (Double.isNaN(test)) {
+                            return Double.NaN;
+                        }
+                        return test != 0 ? then.evaluate(values) : otherwise.evaluate(values);
+                    };
+                }
+                case "MIN":
+                case "MAX": {
+                    checkArgs(function, args, 1, Integer.MAX_VALUE);
+                    Node[] operands = args.toArray(new Node[0]);
+                    boolean min = function.equals("MIN");
+                    return values -> {
+                        double result = operands[0].evaluate(values);
+                        for (int i = 1; i < operands.length; i++) {
+                            double operand = operands[i].evaluate(values);
+                            result = min ? Math.min(result, operand) : Math.max(result, operand);
+                        }
+                        return result;
+                    };
+                }
+                case "ABS": {
+                    checkArgs(function, args, 1, 1);
+                    Node value = args.get(0);
+                    return values -> Math.abs(value.evaluate(values));
+                }
+                default:
+                    throw error("不支持的函数 " + name);
+            }
+        }
+
+        private Node columnReference(String column) {
+            if (column.isEmpty()) {
+                throw error("列名为空");
+            }
+            columns.add(column);
+            return reference(column, slotOf);
+        }
+
+        private void checkArgs(String function, List<Node> args, int min, int max) {
+            if (args.size() < min || args.size() > max) {
+                throw error(function + " 的参数个数不正确");
+            }
+        }
+
+        private void expect(char c) {
+            skipSpaces();
+            if (!consume(c)) {
+                throw error("缺少 '" + c + "'");
+            }
+        }
+
+        private boolean consume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + "（位置 " + (position + 1) + "）: " + text);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        /**
+         * 列名和函数名可使用的字符：字母（含中文）、数字、下划线
+         */
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.Arrays;
+
+/**
+ * 列宽估算器（替代 Sheet#autoSizeColumn）
+ * 在写入行时记录每列显示文本的最大宽度，全部写完后一次性设置列宽。
+ * 不使用 AWT 字体测量，也不需要回头遍历已写入的行，因此可以配合流式写出使用。
+ * 宽度按字符计算：中日韩文字和全角字符按 2 个字符宽度计算，其余按 1 个；
+ * 数值和日期按单元格的数据格式格式化后计算，公式按缓存的计算结果计算，多行文本取最长的一行。
+ */
+final class ColumnWidthEstimator {
+
+    // Excel 允许的最大列宽（单位：1/256 字符）
+    private static final int MAX_WIDTH = 255 * 256;
+    // 文本两侧的留白（字符数）
+    private static final int PADDING = 2;
+
+    private final DataFormatter formatter = new DataFormatter();
+    private int[] maxUnits = new int[16];
+
+    /**
+     * 记录一行中所有单元格的宽度（应在该行写完、尚未被流式写出前调用）
+     */
+    void trackRow(Row row) {
+        if (row == null) {
+            return;
+        }
+        for (Cell cell : row) {
+            track(cell);
+        }
+    }
+
+    /**
+     * 记录单元格的宽度
+     */
+    void track(Cell cell) {
+        int units = displayUnits(displayText(cell));
+        if (units == 0) {
+            return;
+        }
+        int column = cell.getColumnIndex();
+        if (column >= maxUnits.length) {
+            maxUnits = Arrays.copyOf(maxUnits, Math.max(maxUnits.length * 2, column + 1));
+        }
+        if (units > maxUnits[column]) {
+            maxUnits[column] = units;
+        }
+    }
+
+    /**
+     * 按记录的最大宽度设置前 columnCount 列的列宽，没有内容的列保持默认宽度
+     */
+    void applyTo(Sheet sheet, int columnCount) {
+        for (int column = 0; column < columnCount && column < maxUnits.length; column++) {
+            if (maxUnits[column] > 0) {
+                sheet.setColumnWidth(column, Math.min(MAX_WIDTH, (maxUnits[column] + PADDING) * 256));
+            }
+        }
+    }
+
+    private String displayText(Cell cell) {
+        CellType type = cell.getCellType();
+        if (type == CellType.FORMULA) {
+            // 公式按缓存的计算结果显示（而不是公式文本），数值和日期按数据格式格式化
+            type = cell.getCachedFormulaResultType();
+            if (type == CellType.NUMERIC) {
+                CellStyle style = cell.getCellStyle();
+                return formatter.formatRawCellContents(cell.getNumericCellValue(),
+                        style.getDataFormat(), style.getDataFormatString());
+            }
+            if (type == CellType.ERROR) {
+                return "";
+            }
+        }
+        if (type == CellType.STRING) {
+            return cell.getStringCellValue();
+        }
+        if (type == CellType.BOOLEAN) {
+            return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+        }
+        if (type == CellType.BLANK) {
+            return "";
+        }
+        // 数值、日期、错误值按显示格式格式化
+        return formatter.formatCellValue(cell);
+    }
+
+    /**
+     * 计算文本的显示宽度（字符数），多行文本取最长的一行
+     */
+    static int displayUnits(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int max = 0;
+        int line = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint == '\n' || codePoint == '\r') {
+                max = Math.max(max, line);
+                line = 0;
+            } else {
+                line += isWide(codePoint) ? 2 : 1;
+            }
+        }
+        return Math.max(max, line);
+    }
+
+    /**
+     * 是否为双宽字符（中日韩文字、假名、谚文、全角符号等）
+     */
+    private static boolean isWide(int codePoint) {
+        return (codePoint >= 0x1100 && codePoint <= 0x115F)      // 谚文字母
+                || (codePoint >= 0x2E80 && codePoint <= 0x303E)  // 中日韩部首、标点
+                || (codePoint >= 0x3041 && codePoint <= 0x33FF)  // 假名、注音、中日韩兼容字符
+                || (codePoint >= 0x3400 && codePoint <= 0x4DBF)  // 中日韩统一表意文字扩展A
+                || (codePoint >= 0x4E00 && codePoint <= 0x9FFF)  // 中日韩统一表意文字
+                || (codePoint >= 0xA000 && codePoint <= 0xA4CF)  // 彝文
+                || (codePoint >= 0xAC00 && codePoint <= 0xD7A3)  // 谚文音节
+                || (codePoint >= 0xF900 && codePoint <= 0xFAFF)  // 中日韩兼容表意文字
+                || (codePoint >= 0xFE30 && codePoint <= 0xFE4F)  // 中日韩兼容形式
+                || (codePoint >= 0xFF00 && codePoint <= 0xFF60)  // 全角字符
+                || (codePoint >= 0xFFE0 && codePoint <= 0xFFE6)  // 全角符号
+                || (codePoint >= 0x20000 && codePoint <= 0x3FFFD); // 中日韩扩展B及以后
+    }
+}
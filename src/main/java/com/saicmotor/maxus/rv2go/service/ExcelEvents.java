@@ -0,0 +1,371 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.File;
+
+/**
+ * JFR（Java Flight Recorder）自定义事件
+ * 在处理阶段、读取工作簿、解析 sheet 页、流式读取、创建样式和写出 xlsx 包部件时记录事件，
+ * 事件字段包含行数、文件大小、sheet 页名称等，用户机器上录制（jcmd &lt;pid&gt; JFR.start）后可在 JMC 中查看。
+ * <p>
+ * 所有事件都通过本类的工厂方法创建：没有开始录制（或录制中未启用该事件）时返回 null，调用方不做任何记录；
+ * 运行时没有 jdk.jfr 模块时也返回 null，不会加载事件类。
+ * 事件只在阶段和文件级别产生（样式按缓存只在首次创建时产生），不在逐行循环中产生。
+ */
+final class ExcelEvents {
+
+    private static final String CATEGORY = "数据处理工具";
+
+    // 运行时是否有 jdk.jfr 模块
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private ExcelEvents() {
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * 开始一个处理阶段
+     *
+     * @param operation 操作名称
+     * @param phase     阶段
+     * @param total     总数量，未知时为 -1
+     */
+    static PhaseEvent phase(String operation, ProgressListener.Phase phase, long total) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = operation;
+        event.phase = phase.getDisplayName();
+        event.total = total;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始读取工作簿（DOM）
+     */
+    static WorkbookLoadEvent workbookLoad(File file, boolean writable) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        WorkbookLoadEvent event = new WorkbookLoadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getName();
+        event.fileSize = file.length();
+        event.writable = writable;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始解析一个 sheet 页（xlsx 读取工作簿时）
+     *
+     * @param parallel 是否在线程池中与其他 sheet 页并行解析
+     */
+    static SheetParseEvent sheetParse(String sheetName, boolean parallel) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        SheetParseEvent event = new SheetParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.sheetName = sheetName;
+        event.parallel = parallel;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始流式读取一个 sheet 页
+     */
+    static SheetReadEvent sheetRead(File file) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        SheetReadEvent event = new SheetReadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getName();
+        event.fileSize = file.length();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始创建单元格样式（样式缓存未命中时）
+     *
+     * @param kind 样式种类（复制、派生、共用）
+     */
+    static StyleCreateEvent styleCreate(String kind) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        StyleCreateEvent event = new StyleCreateEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.kind = kind;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始写出一个 xlsx 包部件（zip 条目）
+     */
+    static PackagePartWriteEvent packagePartWrite(String part) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        PackagePartWriteEvent event = new PackagePartWriteEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.part = part;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 开始写出工作簿
+     *
+     * @param mode             写出方式
+     * @param compressionLevel xlsx 压缩级别
+     */
+    static WorkbookWriteEvent workbookWrite(File file, String mode, int compressionLevel) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        WorkbookWriteEvent event = new WorkbookWriteEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getName();
+        event.mode = mode;
+        event.compressionLevel = compressionLevel;
+        event.begin();
+        return event;
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.Phase")
+    @Label("处理阶段")
+    @Description("一次操作中的读取、建立索引、匹配、写入、保存阶段")
+    @Category(CATEGORY)
+    static final class PhaseEvent extends Event {
+        @Label("操作")
+        String operation;
+
+        @Label("阶段")
+        String phase;
+
+        @Label("完成数量")
+        long done;
+
+        @Label("总数量")
+        long total;
+
+        @Label("正常结束")
+        @Description("为 false 时阶段因取消或异常中断")
+        boolean completed;
+
+        void end(long done, boolean completed) {
+            this.done = done;
+            this.completed = completed;
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.WorkbookLoad")
+    @Label("读取工作簿")
+    @Category(CATEGORY)
+    static final class WorkbookLoadEvent extends Event {
+        @Label("文件")
+        String file;
+
+        @Label("文件大小")
+        @DataAmount
+        long fileSize;
+
+        @Label("可写出")
+        boolean writable;
+
+        @Label("sheet 页数")
+        int sheetCount;
+
+        @Label("sheet 页名称")
+        String sheetNames;
+
+        @Label("行数")
+        long rows;
+
+        @Label("读取成功")
+        boolean succeeded;
+
+        /**
+         * @param workbook 读取的工作簿，读取失败时为 null（sheet 页信息为空）
+         */
+        void end(Workbook workbook) {
+            succeeded = workbook != null;
+            if (workbook != null) {
+                StringBuilder names = new StringBuilder();
+                long rowCount = 0;
+                for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                    if (i > 0) {
+                        names.append(", ");
+                    }
+                    names.append(workbook.getSheetName(i));
+                    rowCount += workbook.getSheetAt(i).getPhysicalNumberOfRows();
+                }
+                sheetCount = workbook.getNumberOfSheets();
+                sheetNames = names.toString();
+                rows = rowCount;
+            }
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.SheetParse")
+    @Label("解析 sheet 页")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class SheetParseEvent extends Event {
+        @Label("sheet 页名称")
+        String sheetName;
+
+        @Label("并行解析")
+        boolean parallel;
+
+        @Label("行数")
+        long rows;
+
+        void end(Sheet sheet) {
+            rows = sheet.getPhysicalNumberOfRows();
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.SheetRead")
+    @Label("流式读取 sheet 页")
+    @Category(CATEGORY)
+    static final class SheetReadEvent extends Event {
+        @Label("文件")
+        String file;
+
+        @Label("文件大小")
+        @DataAmount
+        long fileSize;
+
+        @Label("sheet 页名称")
+        String sheetName;
+
+        @Label("行数")
+        long rows;
+
+        @Label("读取成功")
+        boolean succeeded;
+
+        /**
+         * @param sheetName sheet 页名称，sheet 页不存在时为 null
+         * @param rows      已读取的行数（读取失败时为失败前读取的行数）
+         * @param succeeded 是否读取完成
+         */
+        void end(String sheetName, long rows, boolean succeeded) {
+            this.sheetName = sheetName;
+            this.rows = rows;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.StyleCreate")
+    @Label("创建单元格样式")
+    @Category(CATEGORY)
+    static final class StyleCreateEvent extends Event {
+        @Label("种类")
+        String kind;
+
+        @Label("工作簿样式数")
+        int styleCount;
+
+        void end(int styleCount) {
+            this.styleCount = styleCount;
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.PackagePartWrite")
+    @Label("写出包部件")
+    @Description("xlsx 的一个 zip 条目（sheet XML、共享字符串表、样式表等）")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class PackagePartWriteEvent extends Event {
+        @Label("部件")
+        String part;
+
+        @Label("原始大小")
+        @DataAmount
+        long size;
+
+        @Label("压缩后大小")
+        @DataAmount
+        long compressedSize;
+
+        @Label("并行压缩块数")
+        @Description("为 0 时按普通方式压缩")
+        int blocks;
+
+        void end(long size, long compressedSize, int blocks) {
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.blocks = blocks;
+            commit();
+        }
+    }
+
+    @Name("com.saicmotor.maxus.rv2go.WorkbookWrite")
+    @Label("写出工作簿")
+    @Category(CATEGORY)
+    static final class WorkbookWriteEvent extends Event {
+        @Label("文件")
+        String file;
+
+        @Label("写出方式")
+        String mode;
+
+        @Label("压缩级别")
+        int compressionLevel;
+
+        @Label("文件大小")
+        @DataAmount
+        long fileSize;
+
+        void end(File file) {
+            fileSize = file.length();
+            commit();
+        }
+    }
+}
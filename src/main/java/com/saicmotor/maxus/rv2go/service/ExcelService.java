@@ -1,16 +1,32 @@
 package com.saicmotor.maxus.rv2go.service;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
 import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder;
+import org.apache.poi.xssf.model.CalculationChain;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.xmlbeans.XmlOptions;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTColor;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTConditionalFormatting;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
 
 /**
  * Excel 处理服务
@@ -18,14 +34,71 @@ import java.util.*;
  */
 public class ExcelService {
 
+    // 流式输出时内存中保留的行数
+    private static final int OUTPUT_WINDOW_SIZE = 200;
+
+    // 表1行的匹配结果：没有匹配、被空值过滤（其他值为匹配的表2行 id）
+    private static final int NO_MATCH = -1;
+    private static final int FILTERED_ROW = -2;
+    // 候选表2行尚未探测
+    private static final int NOT_PROBED = -2;
+
+    // 高亮匹配行时使用条件格式，而不是修改单元格样式
+    private boolean highlightWithConditionalFormatting = false;
+
+    // 表2估算内存占用超过此预算（字节）时，多组关联合并改用外部排序归并关联，排除合并改用内存映射查找存储
+    private long mergeMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    // 多组关联合并结果的输出方式
+    private MergeOutputMode mergeOutputMode = MergeOutputMode.COPY;
+
+    // 输出 xlsx 的压缩级别（0 只存储，1-9，-1 为默认级别）
+    private int outputCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    // 处理进度监听器（为 null 时不上报进度）
+    private ProgressListener progressListener;
+
+    // 下一次操作的取消标记（为 null 时不能取消）
+    private CancellationToken cancellationToken;
+
+    // 是否在输出文件旁保存性能报告（JSON）
+    private boolean savePerformanceReport;
+
+    // 最近一次操作的性能报告
+    private volatile PerformanceReport lastPerformanceReport;
+
+    /**
+     * 合并结果的输出方式
+     */
+    public enum MergeOutputMode {
+        /**
+         * 把主表整个工作簿复制到新工作簿后写出（默认）
+         */
+        COPY,
+        /**
+         * xlsx 直通输出：只流式改写主表 sheet 页，其他 sheet 页、图片、透视表缓存等部件从源文件原样复制；
+         * 主表或输出文件不是 xlsx 时按 COPY 输出。
+         * 主表工作簿仍整体读取（所有 sheet 页都解析，用于提供原值和样式），节省的是复制和写出的时间和内存
+         */
+        PASSTHROUGH,
+        /**
+         * 原地合并：合并列、高亮和列运算直接修改在已加载的主表工作簿上，再写出到输出文件；
+         * 不复制工作簿（内存中只有一份主表），主表的条件格式、数据验证、行分组等原样保留
+         */
+        IN_PLACE
+    }
+
     /**
      * 列运算规则
+     * 可以是两列的二元运算，也可以是公式（语法见 ColumnExpression），例如 "ROUND([金额] / 数量, 2)"。
+     * 公式可以引用其他运算的目标列，引用的运算先执行（不允许循环引用）；二元运算按列表中的顺序执行
      */
     public static class ColumnCalculation {
         public String targetColumn;  // 目标列
         public String column1;       // 第一列
         public String operator;      // 运算符：add, subtract, multiply, divide
         public String column2;       // 第二列
+        public String expression;    // 公式（设置后忽略 column1、operator、column2）
 
         public ColumnCalculation(String targetColumn, String column1, String operator, String column2) {
             this.targetColumn = targetColumn;
@@ -33,6 +106,78 @@ public class ExcelService {
             this.operator = operator;
             this.column2 = column2;
         }
+
+        public ColumnCalculation(String targetColumn, String expression) {
+            this.targetColumn = targetColumn;
+            this.expression = expression;
+        }
+    }
+
+    /**
+     * 设置匹配行的高亮方式
+     * 为 true 时，对所有匹配行只写入一条条件格式规则（橙色背景），不修改任何单元格样式，
+     * 适合匹配行很多的大文件；为 false 时（默认）直接修改匹配行单元格的背景色
+     */
+    public void setHighlightWithConditionalFormatting(boolean highlightWithConditionalFormatting) {
+        this.highlightWithConditionalFormatting = highlightWithConditionalFormatting;
+    }
+
+    /**
+     * 设置多组关联合并的内存预算（字节）
+     * 表2的估算内存占用超过预算时，表2不再整体加载到内存，而是写入临时文件后外部排序归并关联，
+     * 结果与内存中关联相同；默认为最大堆内存的 1/4
+     */
+    public void setMergeMemoryBudget(long mergeMemoryBudget) {
+        this.mergeMemoryBudget = mergeMemoryBudget;
+    }
+
+    /**
+     * 设置多组关联合并结果的输出方式，默认为 COPY
+     */
+    public void setMergeOutputMode(MergeOutputMode mergeOutputMode) {
+        this.mergeOutputMode = mergeOutputMode;
+    }
+
+    /**
+     * 设置输出 xlsx 的压缩级别
+     * 0 为只存储（不压缩，适合作为中间文件再次处理），1-9 压缩率依次提高，-1 为默认级别（6）；
+     * 大的包部件（sheet XML）按块在多个线程中并行压缩，输出仍是标准的 zip
+     */
+    public void setOutputCompressionLevel(int outputCompressionLevel) {
+        this.outputCompressionLevel = outputCompressionLevel;
+    }
+
+    /**
+     * 设置处理进度监听器
+     * 多组关联合并、排除合并、导出和电子发票处理按阶段上报已处理的行数和速度，为 null 时（默认）不上报
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 设置下一次操作的取消标记
+     * 多组关联合并、排除合并、导出和电子发票处理在各阶段的逐行循环中检查，取消后释放工作簿、
+     * 删除未写完的输出文件并返回 false；每次执行前设置新的标记，为 null 时不能取消
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * 设置是否保存性能报告
+     * 为 true 时，操作成功后在输出文件旁写出 输出文件名.perf.json（各阶段耗时、分配的内存、堆内存峰值和行数），
+     * 便于比较不同版本的性能；默认为 false
+     */
+    public void setSavePerformanceReport(boolean savePerformanceReport) {
+        this.savePerformanceReport = savePerformanceReport;
+    }
+
+    /**
+     * 最近一次多组关联合并、排除合并、导出或电子发票处理的性能报告（成功、失败和取消都有），没有时返回 null
+     */
+    public PerformanceReport getLastPerformanceReport() {
+        return lastPerformanceReport;
     }
 
     /**
@@ -123,54 +268,82 @@ public class ExcelService {
                                                         boolean highlightMatches,
                                                         List<ColumnCalculation> columnCalculations) {
         Workbook workbook1 = null;
-        Workbook workbook2 = null;
         Workbook outputWorkbook = null;
+        ExternalJoin externalJoin = null;
+        ProgressTracker progress = new ProgressTracker("多组关联合并", progressListener, cancellationToken);
 
         try {
-            // 读取工作簿
-            workbook1 = readWorkbook(file1);
-            workbook2 = readWorkbook(file2);
-            if (workbook1 == null || workbook2 == null) {
+            progress.begin(ProgressListener.Phase.LOAD, -1);
+
+            // 并行读取工作簿（表2只读，流式读取关联列和合并列，不加载整个工作簿）
+            // 表2估算占用超过内存预算时，表2只写入临时文件，之后外部排序归并关联
+            // 只有原地合并直接写出主表工作簿，以读写方式读取（直通输出从源文件改写，主表工作簿只读）
+            boolean useExternalJoin = estimateTableBytes(file2) > mergeMemoryBudget;
+            Future<Workbook> workbook1Future = InputLoader.submit(
+                    () -> readWorkbook(file1, mergeOutputMode == MergeOutputMode.IN_PLACE));
+            Future<LookupTable> table2Future = useExternalJoin ? null
+                    : InputLoader.submit(() -> loadLookupTable(file2, sheetIndex2, headerRow2,
+                    collectTable2Columns(joinKeyGroups, columnsToMerge), progress));
+            Future<ExternalJoin> externalJoinFuture = useExternalJoin
+                    ? InputLoader.submit(() -> spillTable2(file2, sheetIndex2, headerRow2, joinKeyGroups, columnsToMerge, progress))
+                    : null;
+            workbook1 = InputLoader.await(workbook1Future, file1, progress);
+            LookupTable table2 = table2Future != null ? InputLoader.await(table2Future, file2, progress) : null;
+            externalJoin = externalJoinFuture != null ? InputLoader.await(externalJoinFuture, file2, progress) : null;
+            progress.checkCancelled();
+            if (workbook1 == null) {
                 System.err.println("无法读取 Excel 文件");
                 return false;
             }
+            if (table2 == null && externalJoin == null) {
+                System.err.println("无法读取表 2（请检查sheet页和表头行设置）");
+                return false;
+            }
 
-            outputWorkbook = workbook1.getClass().newInstance();
+            // 直通输出和原地合并都不复制工作簿，修改直接应用在主表工作簿上（直通输出写出时只改写主表 sheet 页）
+            boolean passthrough = mergeOutputMode == MergeOutputMode.PASSTHROUGH
+                    && canWritePassthrough(workbook1, file1, outputFile);
+            boolean inPlace = passthrough || mergeOutputMode == MergeOutputMode.IN_PLACE;
+            if (!inPlace) {
+                outputWorkbook = workbook1.getClass().newInstance();
+            }
 
             // 验证sheet索引
             if (sheetIndex1 < 0 || sheetIndex1 >= workbook1.getNumberOfSheets()) {
                 System.err.println("表1的sheet索引超出范围: " + sheetIndex1);
                 return false;
             }
-            if (sheetIndex2 < 0 || sheetIndex2 >= workbook2.getNumberOfSheets()) {
-                System.err.println("表2的sheet索引超出范围: " + sheetIndex2);
-                return false;
-            }
 
             Sheet sheet1 = workbook1.getSheetAt(sheetIndex1);
-            Sheet sheet2 = workbook2.getSheetAt(sheetIndex2);
 
             // 复制主表整个工作簿到输出workbook（保持所有格式和所有sheet页）
-            copyWorkbook(workbook1, outputWorkbook);
+            StyleCache styleCache = new StyleCache(inPlace ? workbook1 : outputWorkbook);
+            if (!inPlace) {
+                PerformanceReport.Timing copyTiming = progress.report().start("COPY_WORKBOOK", "复制工作簿", true);
+                copyWorkbook(workbook1, outputWorkbook, styleCache, progress);
+                progress.report().stop(copyTiming);
+            }
+            progress.end(2);
+            progress.report().setCount(PerformanceReport.Count.TABLE2_ROWS,
+                    table2 != null ? table2.getRowCount() : externalJoin.getTable2RowCount());
 
             // 获取主表sheet页名称
             String sheet1Name = workbook1.getSheetName(sheetIndex1);
 
             // 获取复制后的sheet页进行合并操作
-            Sheet outputSheet = outputWorkbook.getSheet(sheet1Name);
+            Sheet outputSheet = inPlace ? sheet1 : outputWorkbook.getSheet(sheet1Name);
 
             // 读取表头（从复制的sheet中获取，使用指定的表头行）
             Row outputHeader = outputSheet.getRow(headerRow1);
             Row header1 = sheet1.getRow(headerRow1);
-            Row header2 = sheet2.getRow(headerRow2);
-            if (header1 == null || header2 == null) {
+            if (header1 == null) {
                 System.err.println("Excel 文件没有表头（请检查表头行设置）");
                 return false;
             }
 
             // 获取列名映射
             Map<String, Integer> columnMap1 = getColumnMapping(header1);
-            Map<String, Integer> columnMap2 = getColumnMapping(header2);
+            Map<String, Integer> columnMap2 = table2 != null ? table2.getColumnMap() : externalJoin.getColumnMap();
 
             // 添加表2中要合并的列（跳过已存在的列）
             Set<String> existingColumns = new HashSet<>();
@@ -181,7 +354,8 @@ public class ExcelService {
                 }
             }
 
-            int nextColIndex = outputHeader.getLastCellNum();
+            int sourceHeaderCells = outputHeader.getLastCellNum();  // 添加列之前的表头列数
+            int nextColIndex = sourceHeaderCells;
             for (String colName : columnsToMerge) {
                 if (!existingColumns.contains(colName)) {
                     Cell newCell = outputHeader.createCell(nextColIndex++);
@@ -221,258 +395,624 @@ public class ExcelService {
                 }
             }
 
-            // 为所有关联列组构建表2的索引（包含行号信息）
-            List<Map<String, Integer>> sheet2KeyToRowMap = new ArrayList<>();
-            List<Map<Integer, Map<String, Object>>> sheet2RowDataMap = new ArrayList<>();
-            for (JoinKeyGroup group : parsedGroups) {
-                String[] table2KeysArray = group.table2Keys.toArray(new String[0]);
-                Map<String, Integer> keyToRow = new HashMap<>();
-                Map<Integer, Map<String, Object>> rowData = new HashMap<>();
-
-                // 数据行从表头行的下一行开始
-                int dataStartRow2 = headerRow2 + 1;
-
-                for (int i = dataStartRow2; i <= sheet2.getLastRowNum(); i++) {
-                    Row row = sheet2.getRow(i);
-                    if (row == null) continue;
-
-                    // 构建关联键
-                    StringBuilder keyBuilder = new StringBuilder();
-                    for (String key : table2KeysArray) {
-                        Integer colIndex = columnMap2.get(key);
-                        if (colIndex != null) {
-                            Cell cell = row.getCell(colIndex);
-                            String value = getCellValueAsString(cell);
-                            keyBuilder.append(value).append("|||");
-                        }
-                    }
-                    String key = keyBuilder.toString();
-
-                    // 存储键到行号的映射（如果重复键，保留第一个）
-                    if (!keyToRow.containsKey(key)) {
-                        keyToRow.put(key, i);
-                    }
-
-                    // 存储行数据
-                    Map<String, Object> cellData = new HashMap<>();
-                    for (Cell cell : row) {
-                        String colName = getColumnName(header2, cell.getColumnIndex());
-                        if (colName != null) {
-                            cellData.put(colName, getCellValue(cell));
-                        }
-                    }
-                    rowData.put(i, cellData);
-                }
-
-                sheet2KeyToRowMap.add(keyToRow);
-                sheet2RowDataMap.add(rowData);
-            }
-
-            // 两阶段匹配：记录已使用的表2行号和已匹配的表1行号
-            Set<Integer> usedSheet2Rows = new HashSet<>();  // 已使用的表2行号
-            Set<Integer> matchedSheet1Rows = new HashSet<>();  // 已匹配的表1行号
-            Map<Integer, Map<String, Object>> sheet1Matches = new HashMap<>();  // 表1行号 -> 匹配的表2数据
-
-            // 第一阶段：用组1匹配
-            if (parsedGroups.size() > 0) {
-                JoinKeyGroup group = parsedGroups.get(0);
-                Map<String, Integer> keyToRow = sheet2KeyToRowMap.get(0);
-
-                // 数据行从表头行的下一行开始
-                int dataStartRow1 = headerRow1 + 1;
-
-                for (int i = dataStartRow1; i <= sheet1.getLastRowNum(); i++) {
-                    Row row1 = sheet1.getRow(i);
-                    if (row1 == null) continue;
-
-                    // 检查空值过滤
-                    if (filterEmptyColumns != null && filterEmptyColumns.length > 0) {
-                        boolean hasEmptyValue = false;
-                        for (String colName : filterEmptyColumns) {
-                            Integer colIndex = columnMap1.get(colName);
-                            if (colIndex != null) {
-                                Cell cell = row1.getCell(colIndex);
-                                String value = getCellValueAsString(cell);
-                                if (value == null || value.trim().isEmpty()) {
-                                    hasEmptyValue = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (hasEmptyValue) {
-                            continue;
-                        }
-                    }
-
-                    // 构建表1的关联键
-                    StringBuilder keyBuilder = new StringBuilder();
-                    for (String key : group.table1Keys) {
-                        Integer colIndex = columnMap1.get(key);
-                        if (colIndex != null) {
-                            Cell cell = row1.getCell(colIndex);
-                            String value = getCellValueAsString(cell);
-                            keyBuilder.append(value).append("|||");
-                        }
-                    }
-                    String key = keyBuilder.toString();
-
-                    // 查找匹配的表2数据
-                    Integer sheet2Row = keyToRow.get(key);
-                    if (sheet2Row != null && !usedSheet2Rows.contains(sheet2Row)) {
-                        matchedSheet1Rows.add(i);
-                        usedSheet2Rows.add(sheet2Row);
-                        sheet1Matches.put(i, sheet2RowDataMap.get(0).get(sheet2Row));
-                    }
+            // 编译列运算（目标列添加到表头），运算在输出每行时直接执行
+            int lastMergedColumn = outputHeader.getLastCellNum() - 1;
+            CompiledCalculations calculations = null;
+            if (columnCalculations != null && !columnCalculations.isEmpty()) {
+                calculations = compileColumnCalculations(outputHeader, outputColumnMap, columnCalculations);
+                if (calculations == null) {
+                    return false;
                 }
             }
 
-            // 第二阶段：用组2匹配未匹配的表1行（排除已使用的表2行）
-            if (parsedGroups.size() > 1) {
-                JoinKeyGroup group = parsedGroups.get(1);
-                Map<String, Integer> keyToRow = sheet2KeyToRowMap.get(1);
-
-                // 数据行从表头行的下一行开始
-                int dataStartRow1 = headerRow1 + 1;
+            // 多阶段匹配：组1优先，未匹配的表1行依次尝试组2、组3……，每个表2行只能被使用一次
+            int dataStartRow1 = headerRow1 + 1;  // 数据行从表头行的下一行开始
+            int[] sheet1Matches = externalJoin != null  // 下标为 表1行号 - 数据起始行
+                    ? matchJoinGroupsExternally(sheet1, dataStartRow1, filterEmptyColumns, columnMap1,
+                    parsedGroups, externalJoin, progress)
+                    : matchJoinGroups(sheet1, dataStartRow1, filterEmptyColumns, columnMap1, parsedGroups, table2,
+                    progress);
+            countMatches(sheet1Matches, progress.report());
 
-                for (int i = dataStartRow1; i <= sheet1.getLastRowNum(); i++) {
-                    // 跳过已匹配的表1行
-                    if (matchedSheet1Rows.contains(i)) {
-                        continue;
-                    }
-
-                    Row row1 = sheet1.getRow(i);
-                    if (row1 == null) continue;
-
-                    // 检查空值过滤
-                    if (filterEmptyColumns != null && filterEmptyColumns.length > 0) {
-                        boolean hasEmptyValue = false;
-                        for (String colName : filterEmptyColumns) {
-                            Integer colIndex = columnMap1.get(colName);
-                            if (colIndex != null) {
-                                Cell cell = row1.getCell(colIndex);
-                                String value = getCellValueAsString(cell);
-                                if (value == null || value.trim().isEmpty()) {
-                                    hasEmptyValue = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (hasEmptyValue) {
-                            continue;
-                        }
-                    }
-
-                    // 构建表1的关联键
-                    StringBuilder keyBuilder = new StringBuilder();
-                    for (String key : group.table1Keys) {
-                        Integer colIndex = columnMap1.get(key);
-                        if (colIndex != null) {
-                            Cell cell = row1.getCell(colIndex);
-                            String value = getCellValueAsString(cell);
-                            keyBuilder.append(value).append("|||");
-                        }
-                    }
-                    String key = keyBuilder.toString();
-
-                    // 查找匹配的表2数据（排除已使用的行）
-                    Integer sheet2Row = keyToRow.get(key);
-                    if (sheet2Row != null && !usedSheet2Rows.contains(sheet2Row)) {
-                        matchedSheet1Rows.add(i);
-                        usedSheet2Rows.add(sheet2Row);
-                        sheet1Matches.put(i, sheet2RowDataMap.get(1).get(sheet2Row));
-                    }
-                }
+            if (passthrough) {
+                writeMergedSheetPassthrough(file1, outputFile, (XSSFSheet) sheet1, headerRow1, sourceHeaderCells,
+                        sheet1Matches, columnsToMerge, table2, externalJoin, outputColumnMap, highlightMatches,
+                        lastMergedColumn, calculations, styleCache, progress);
+                progress.report().markSucceeded();
+                return true;
             }
 
             // 输出结果 - 遍历已存在的行并添加匹配数据
-            // 数据行从表头行的下一行开始
-            int dataStartRow1 = headerRow1 + 1;
+            List<Integer> highlightedRows = new ArrayList<>();  // 条件格式模式下需要高亮的行
 
+            int outputRowCount = Math.max(0, outputSheet.getLastRowNum() - dataStartRow1 + 1);
+            long calculationNanos = 0;  // 列运算累计耗时
+            progress.begin(ProgressListener.Phase.WRITE, outputRowCount);
             for (int i = dataStartRow1; i <= outputSheet.getLastRowNum(); i++) {
+                progress.update(i - dataStartRow1);
                 Row outputRow = outputSheet.getRow(i);
                 if (outputRow == null) continue;
 
                 // 获取对应的表1行号（用于匹配）
                 int sheet1RowNum = i;
 
-                // 检查空值过滤
-                Row row1 = sheet1.getRow(sheet1RowNum);
-                if (row1 != null && filterEmptyColumns != null && filterEmptyColumns.length > 0) {
-                    boolean hasEmptyValue = false;
-                    for (String colName : filterEmptyColumns) {
-                        Integer colIndex = columnMap1.get(colName);
-                        if (colIndex != null) {
-                            Cell cell = row1.getCell(colIndex);
-                            String value = getCellValueAsString(cell);
-                            if (value == null || value.trim().isEmpty()) {
-                                hasEmptyValue = true;
-                                break;
-                            }
-                        }
-                    }
-                    if (hasEmptyValue) {
-                        // 清空这一行的数据（因为需要过滤空值行）
-                        for (Cell cell : outputRow) {
-                            cell.setBlank();
-                        }
-                        continue;
+                // 检查空值过滤（探测阶段已判断）
+                int match = sheet1RowNum - dataStartRow1 < sheet1Matches.length
+                        ? sheet1Matches[sheet1RowNum - dataStartRow1] : NO_MATCH;
+                if (match == FILTERED_ROW) {
+                    // 清空这一行的数据（因为需要过滤空值行）
+                    for (Cell cell : outputRow) {
+                        cell.setBlank();
                     }
+                    continue;
                 }
 
                 // 如果找到匹配，设置背景色并合并数据
-                Map<String, Object> matchedRow2 = sheet1Matches.get(sheet1RowNum);
-                if (matchedRow2 != null) {
+                if (match >= 0) {
                     // 根据参数决定是否设置整行背景色为橙色
-                    if (highlightMatches) {
+                    if (highlightMatches && highlightWithConditionalFormatting) {
+                        highlightedRows.add(i);
+                    } else if (highlightMatches) {
+                        // 每种原样式只派生一个高亮样式，所有同样式的单元格共用
                         for (Cell cell : outputRow) {
-                            CellStyle newStyle = outputWorkbook.createCellStyle();
-                            CellStyle originalStyle = cell.getCellStyle();
-                            cloneStyle(newStyle, originalStyle);
-                            newStyle.setFillForegroundColor(IndexedColors.LIGHT_ORANGE.getIndex());
-                            newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                            cell.setCellStyle(newStyle);
+                            cell.setCellStyle(highlightStyle(styleCache, cell.getCellStyle()));
                         }
                     }
 
                     // 合并表2的数据
                     for (String colName : columnsToMerge) {
                         if (outputColumnMap.containsKey(colName)) {
-                            Object value = matchedRow2.get(colName);
+                            Object value = table2 != null ? table2.getValue(match, colName)
+                                    : externalJoin.getValue(match, colName);
                             Cell targetCell = outputRow.getCell(outputColumnMap.get(colName));
                             if (targetCell == null) {
                                 targetCell = outputRow.createCell(outputColumnMap.get(colName));
                             }
-                            setCellValue(targetCell, value);
+                            setCellValue(targetCell, value, styleCache);
                         }
                     }
                 }
+
+                // 应用列运算
+                if (calculations != null) {
+                    long calculationStart = System.nanoTime();
+                    applyColumnCalculations(outputRow, calculations);
+                    calculationNanos += System.nanoTime() - calculationStart;
+                }
             }
 
-            // 应用列运算
-            if (columnCalculations != null && !columnCalculations.isEmpty()) {
-                applyColumnCalculations(outputSheet, outputColumnMap, columnCalculations, headerRow1);
+            progress.end(outputRowCount);
+            if (calculations != null) {
+                progress.report().addStep("COLUMN_CALCULATIONS", "列运算", calculationNanos);
+            }
+
+            // 条件格式模式：用一条条件格式规则覆盖所有匹配行（不含列运算添加的列），不修改单元格样式
+            if (!highlightedRows.isEmpty()) {
+                applyHighlightFormatting(outputSheet, highlightedRows, lastMergedColumn);
             }
 
             // 不再自动调整列宽，保持主表的原有列宽
 
-            // 写入输出文件
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                outputWorkbook.write(fos);
-            }
+            // 写入输出文件（原地合并时写出修改后的主表工作簿）
+            progress.begin(ProgressListener.Phase.SAVE, -1);
+            writeWorkbook(inPlace ? workbook1 : outputWorkbook, outputFile, progress);
+            progress.end(1);
+            progress.report().markSucceeded();
 
             return true;
 
         } catch (Exception e) {
+            if (progress.isCancelled()) {
+                System.err.println("合并 Excel 文件已取消");
+                return false;
+            }
             System.err.println("合并 Excel 文件时出错: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
             closeQuietly(workbook1);
-            closeQuietly(workbook2);
             closeQuietly(outputWorkbook);
+            if (externalJoin != null) {
+                externalJoin.close();
+            }
+            finishReport(progress, outputFile);
+        }
+    }
+
+    /**
+     * 结束操作的性能记录，需要时在输出文件旁保存 JSON
+     */
+    private void finishReport(ProgressTracker progress, File outputFile) {
+        PerformanceReport report = progress.finish(outputFile);
+        lastPerformanceReport = report;
+        if (savePerformanceReport && report.isSuccess()) {
+            File reportFile = PerformanceReport.jsonFileFor(outputFile);
+            try {
+                report.writeJson(reportFile);
+            } catch (IOException e) {
+                System.err.println("保存性能报告失败: " + reportFile.getAbsolutePath() + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 统计多组关联匹配结果的表1行数、匹配行数和过滤行数
+     */
+    private static void countMatches(int[] sheet1Matches, PerformanceReport report) {
+        int matched = 0;
+        int filtered = 0;
+        for (int match : sheet1Matches) {
+            if (match >= 0) {
+                matched++;
+            } else if (match == FILTERED_ROW) {
+                filtered++;
+            }
+        }
+        report.setCount(PerformanceReport.Count.TABLE1_ROWS, sheet1Matches.length);
+        report.setCount(PerformanceReport.Count.MATCHED_ROWS, matched);
+        report.setCount(PerformanceReport.Count.FILTERED_ROWS, filtered);
+    }
+
+    /**
+     * 主表和输出文件都是 xlsx（且不是同一个文件）时才能直通输出
+     */
+    private boolean canWritePassthrough(Workbook workbook1, File file1, File outputFile) {
+        return workbook1 instanceof XSSFWorkbook
+                && file1.getName().toLowerCase().endsWith(".xlsx")
+                && outputFile.getName().toLowerCase().endsWith(".xlsx")
+                && !file1.getAbsoluteFile().equals(outputFile.getAbsoluteFile());
+    }
+
+    /**
+     * 直通输出多组关联合并的结果
+     * 逐行执行与复制输出相同的修改（清空过滤行、高亮、写入合并列、列运算），
+     * 但修改应用在主表 sheet 页 XML 的流式改写上；主表工作簿只用于提供表头、原值和样式表，
+     * 新建了样式时样式表从主表工作簿重新写出（原有样式的索引不变）
+     */
+    private void writeMergedSheetPassthrough(File file1, File outputFile, XSSFSheet sheet1, int headerRow1,
+                                             int sourceHeaderCells, int[] sheet1Matches, String[] columnsToMerge,
+                                             LookupTable table2, ExternalJoin externalJoin,
+                                             Map<String, Integer> outputColumnMap, boolean highlightMatches,
+                                             int lastMergedColumn, CompiledCalculations calculations,
+                                             StyleCache styleCache, ProgressTracker progress) throws IOException {
+        XSSFWorkbook workbook = sheet1.getWorkbook();
+        StylesTable styles = workbook.getStylesSource();
+        String stylesBefore = stylesSignature(styles);
+        Row header1 = sheet1.getRow(headerRow1);
+        int dataStartRow1 = headerRow1 + 1;
+        List<Integer> highlightedRows = new ArrayList<>();  // 条件格式模式下需要高亮的行
+        long[] calculationNanos = new long[1];  // 列运算累计耗时
+
+        SheetPassthroughWriter.SheetEditor editor = new SheetPassthroughWriter.SheetEditor() {
+            @Override
+            public void editRow(SheetPassthroughWriter.XmlRow row) throws IOException {
+                int rowNum = row.getRowNum();
+                progress.update(rowNum);
+                if (rowNum == headerRow1) {
+                    // 表头：写入新添加的列名
+                    for (Cell cell : header1) {
+                        if (cell.getColumnIndex() >= sourceHeaderCells) {
+                            row.getOrCreateCell(cell.getColumnIndex()).setString(cell.getStringCellValue());
+                        }
+                    }
+                    return;
+                }
+                if (rowNum < dataStartRow1) {
+                    return;
+                }
+
+                int match = rowNum - dataStartRow1 < sheet1Matches.length
+                        ? sheet1Matches[rowNum - dataStartRow1] : NO_MATCH;
+                if (match == FILTERED_ROW) {
+                    // 清空这一行的数据（保留样式）
+                    for (SheetPassthroughWriter.XmlCell cell : row.getCells()) {
+                        cell.setBlank();
+                    }
+                    return;
+                }
+
+                if (match >= 0) {
+                    if (highlightMatches && highlightWithConditionalFormatting) {
+                        highlightedRows.add(rowNum);
+                    } else if (highlightMatches) {
+                        for (SheetPassthroughWriter.XmlCell cell : row.getCells()) {
+                            cell.setStyle(highlightStyle(styleCache, workbook.getCellStyleAt(cell.getStyle())).getIndex());
+                        }
+                    }
+
+                    // 合并表2的数据
+                    for (String colName : columnsToMerge) {
+                        Integer column = outputColumnMap.get(colName);
+                        if (column != null) {
+                            Object value = table2 != null ? table2.getValue(match, colName)
+                                    : externalJoin.getValue(match, colName);
+                            setXmlCellValue(row.getOrCreateCell(column), value, styleCache, workbook);
+                        }
+                    }
+                }
+
+                // 应用列运算
+                if (calculations != null) {
+                    long calculationStart = System.nanoTime();
+                    applyColumnCalculations(row, sheet1.getRow(rowNum), calculations);
+                    calculationNanos[0] += System.nanoTime() - calculationStart;
+                }
+            }
+
+            @Override
+            public String formulaAt(int rowNum, int column) {
+                return sheet1.getRow(rowNum).getCell(column).getCellFormula();
+            }
+
+            @Override
+            public List<String> conditionalFormattings() {
+                if (highlightedRows.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                // 在主表 sheet 页上生成条件格式规则，取出其 XML 插入改写后的 sheet 页
+                applyHighlightFormatting(sheet1, highlightedRows, lastMergedColumn);
+                CTWorksheet worksheet = sheet1.getCTWorksheet();
+                CTConditionalFormatting formatting = worksheet.getConditionalFormattingArray(
+                        worksheet.sizeOfConditionalFormattingArray() - 1);
+                XmlOptions options = new XmlOptions();
+                options.setSaveOuter();
+                options.setUseDefaultNamespace();
+                options.setSaveAggressiveNamespaces();
+                return Collections.singletonList(formatting.xmlText(options));
+            }
+
+            @Override
+            public Map<String, byte[]> replacedParts() throws IOException {
+                if (stylesSignature(styles).equals(stylesBefore)) {
+                    return Collections.emptyMap();
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                styles.writeTo(out);
+                return Collections.singletonMap(styles.getPackagePart().getPartName().getName(), out.toByteArray());
+            }
+        };
+
+        CalculationChain calcChain = workbook.getCalculationChain();
+        int rowCount = sheet1.getLastRowNum() + 1;
+        progress.begin(ProgressListener.Phase.WRITE, rowCount);
+        ExcelEvents.WorkbookWriteEvent writeEvent = ExcelEvents.workbookWrite(outputFile, "直通输出", outputCompressionLevel);
+        SheetPassthroughWriter.write(file1, outputFile, sheet1.getPackagePart().getPartName().getName(),
+                calcChain != null ? calcChain.getPackagePart().getPartName().getName() : null,
+                outputCompressionLevel, editor);
+        if (writeEvent != null) {
+            writeEvent.end(outputFile);
+        }
+        progress.end(rowCount);
+        if (calculations != null) {
+            progress.report().addStep("COLUMN_CALCULATIONS", "列运算", calculationNanos[0]);
+        }
+    }
+
+    /**
+     * 样式表中各类条目的数量，用于判断合并过程中是否新建了样式
+     */
+    private static String stylesSignature(StylesTable styles) {
+        return styles.getNumCellStyles() + ":" + styles.getFonts().size() + ":" + styles.getFills().size()
+                + ":" + styles.getBorders().size() + ":" + styles._getDXfsSize() + ":" + styles.getNumDataFormats();
+    }
+
+    /**
+     * 在内存中完成多组关联匹配
+     * 为每个关联列组构建表2的索引（关联键 -> 第一个表2行 id），表1各行按区间并行探测：
+     * 先用组1查找候选行，组1没有候选的行再查找其余各组的候选行；
+     * 探测结束后按组的顺序、行号的顺序逐组分配（前面的组先占用表2行），结果与顺序逐行匹配相同。
+     * 组1的候选行被前面的行占用时，该行的其余各组在分配组1后补充探测
+     *
+     * @return 下标为 表1行号 - dataStartRow1，值为匹配的表2行 id、NO_MATCH 或 FILTERED_ROW
+     */
+    private int[] matchJoinGroups(Sheet sheet1, int dataStartRow1, String[] filterEmptyColumns,
+                                  Map<String, Integer> columnMap1,
+                                  List<JoinKeyGroup> parsedGroups, LookupTable table2,
+                                  ProgressTracker progress) {
+        // 为所有关联列组构建表2的索引（关联键 -> 表2行 id）
+        JoinIndex.Key joinKey = new JoinIndex.Key();
+        List<JoinIndex> sheet2KeyToRowMap = new ArrayList<>();
+        long indexRows = (long) table2.getRowCount() * parsedGroups.size();
+        progress.begin(ProgressListener.Phase.INDEX, indexRows);
+        for (JoinKeyGroup group : parsedGroups) {
+            JoinIndex keyToRow = new JoinIndex(table2.getRowCount());
+            long indexedBefore = (long) table2.getRowCount() * sheet2KeyToRowMap.size();
+
+            for (int rowId = 0; rowId < table2.getRowCount(); rowId++) {
+                progress.update(indexedBefore + rowId);
+                // 构建关联键
+                joinKey.clear();
+                for (String key : group.table2Keys) {
+                    table2.appendKeyPart(rowId, key, joinKey);
+                }
+
+                // 存储键到行的映射（如果重复键，保留第一个）
+                keyToRow.put(joinKey, rowId, false);
+            }
+
+            sheet2KeyToRowMap.add(keyToRow);
+        }
+        progress.end(indexRows);
+
+        int rowCount = Math.max(0, sheet1.getLastRowNum() - dataStartRow1 + 1);
+        int groupCount = parsedGroups.size();
+        int[] matches = new int[rowCount];
+        int[][] candidates = new int[groupCount][rowCount];  // 每行在各组中的候选表2行 id
+        progress.begin(ProgressListener.Phase.PROBE, rowCount);
+
+        // 表1的关联列和空值过滤列先按行取出，并行探测只读取取出的值
+        List<String> probeColumns = new ArrayList<>();
+        for (JoinKeyGroup group : parsedGroups) {
+            probeColumns.addAll(group.table1Keys);
+        }
+        if (filterEmptyColumns != null) {
+            probeColumns.addAll(Arrays.asList(filterEmptyColumns));
+        }
+        LookupTable rows1 = extractTable1Columns(sheet1, dataStartRow1 - 1, probeColumns, progress);
+        int[] rowIds = rows1.rowIdsFrom(dataStartRow1, rowCount);
+
+        // 并行探测：空值过滤、组1候选，组1没有候选时探测其余各组
+        ProbePool.forEachRange(0, rowCount, (from, to) -> {
+            JoinIndex.Key key = new JoinIndex.Key();
+            for (int r = from; r < to; r++) {
+                int rowId = rowIds[r];
+                matches[r] = NO_MATCH;
+                if (rowId < 0 || hasEmptyValue(rows1, rowId, filterEmptyColumns, columnMap1)) {
+                    // 跳过空行和空值过滤的行
+                    if (rowId >= 0) {
+                        matches[r] = FILTERED_ROW;
+                    }
+                    for (int g = 0; g < groupCount; g++) {
+                        candidates[g][r] = NO_MATCH;
+                    }
+                    continue;
+                }
+                int candidate = probeJoinGroup(parsedGroups.get(0), sheet2KeyToRowMap.get(0), rows1, rowId,
+                        columnMap1, key);
+                candidates[0][r] = candidate;
+                for (int g = 1; g < groupCount; g++) {
+                    candidates[g][r] = candidate >= 0 ? NOT_PROBED
+                            : probeJoinGroup(parsedGroups.get(g), sheet2KeyToRowMap.get(g), rows1, rowId,
+                            columnMap1, key);
+                }
+            }
+            progress.add(to - from);
+        });
+
+        BitSet usedSheet2Rows = new BitSet(table2.getRowCount());  // 已使用的表2行 id
+        assignJoinGroup(candidates[0], matches, usedSheet2Rows);
+        if (groupCount == 1) {
+            progress.end(rowCount);
+            return matches;
+        }
+
+        // 组1候选行已被占用的行，补充探测其余各组
+        int[] pendingRows = new int[16];
+        int pendingCount = 0;
+        for (int r = 0; r < rowCount; r++) {
+            if (matches[r] == NO_MATCH && candidates[1][r] == NOT_PROBED) {
+                if (pendingCount == pendingRows.length) {
+                    pendingRows = Arrays.copyOf(pendingRows, pendingCount * 2);
+                }
+                pendingRows[pendingCount++] = r;
+            }
+        }
+        int[] rows = pendingRows;
+        ProbePool.forEachRange(0, pendingCount, (from, to) -> {
+            progress.checkCancelled();
+            JoinIndex.Key key = new JoinIndex.Key();
+            for (int p = from; p < to; p++) {
+                int rowId = rowIds[rows[p]];
+                for (int g = 1; g < groupCount; g++) {
+                    candidates[g][rows[p]] = probeJoinGroup(parsedGroups.get(g), sheet2KeyToRowMap.get(g), rows1,
+                            rowId, columnMap1, key);
+                }
+            }
+        });
+
+        // 按组的顺序分配组2..N的匹配（排除已使用的表2行和已匹配的表1行）
+        for (int g = 1; g < groupCount; g++) {
+            assignJoinGroup(candidates[g], matches, usedSheet2Rows);
+        }
+        progress.end(rowCount);
+
+        return matches;
+    }
+
+    /**
+     * 按行号顺序分配一个关联列组的候选表2行，每个表2行只能被使用一次，已匹配或被过滤的表1行跳过
+     */
+    private void assignJoinGroup(int[] groupCandidates, int[] matches, BitSet usedSheet2Rows) {
+        for (int r = 0; r < matches.length; r++) {
+            int candidate = groupCandidates[r];
+            if (candidate < 0 || matches[r] != NO_MATCH || usedSheet2Rows.get(candidate)) {
+                continue;
+            }
+            usedSheet2Rows.set(candidate);
+            matches[r] = candidate;
+        }
+    }
+
+    /**
+     * 用外部排序归并完成多组关联匹配（表2已由 spillTable2 写入临时文件）
+     * 表1各行在各组的关联键写入排序记录，归并后得到每行在各组中的候选表2行，
+     * 再按与 matchJoinGroups 相同的规则逐组分配
+     *
+     * @return 下标为 表1行号 - dataStartRow1，值为匹配的表2行 id、NO_MATCH 或 FILTERED_ROW
+     */
+    private int[] matchJoinGroupsExternally(Sheet sheet1, int dataStartRow1,
+                                            String[] filterEmptyColumns,
+                                            Map<String, Integer> columnMap1,
+                                            List<JoinKeyGroup> parsedGroups,
+                                            ExternalJoin externalJoin,
+                                            ProgressTracker progress) throws IOException {
+        JoinIndex.Key joinKey = new JoinIndex.Key();
+        int rowCount = Math.max(0, sheet1.getLastRowNum() - dataStartRow1 + 1);
+        int[] matches = new int[rowCount];
+        int[] rows = new int[16];  // 参与匹配的表1行下标，下标即排序记录中的表1行序号
+        int ordinalCount = 0;
+
+        // 表1关联键写入排序记录（外部排序的索引阶段）
+        progress.begin(ProgressListener.Phase.INDEX, rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            progress.update(r);
+            Row row1 = sheet1.getRow(dataStartRow1 + r);
+            matches[r] = NO_MATCH;
+            // 跳过空行和空值过滤的行
+            if (row1 == null) continue;
+            if (hasEmptyValue(row1, filterEmptyColumns, columnMap1)) {
+                matches[r] = FILTERED_ROW;
+                continue;
+            }
+
+            if (ordinalCount == rows.length) {
+                rows = Arrays.copyOf(rows, ordinalCount * 2);
+            }
+            rows[ordinalCount] = r;
+            for (JoinKeyGroup group : parsedGroups) {
+                buildTable1Key(group, row1, columnMap1, joinKey);
+                externalJoin.addTable1Key(group.index, joinKey, ordinalCount);
+            }
+            ordinalCount++;
+        }
+
+        progress.end(rowCount);
+
+        progress.begin(ProgressListener.Phase.PROBE, ordinalCount);
+        int[][] candidates = externalJoin.match(ordinalCount, progress);
+
+        // 按组的顺序分配，每个表2行只能被使用一次
+        BitSet usedSheet2Rows = new BitSet();
+        for (JoinKeyGroup group : parsedGroups) {
+            int[] groupCandidates = new int[rowCount];
+            Arrays.fill(groupCandidates, NO_MATCH);
+            for (int o = 0; o < ordinalCount; o++) {
+                groupCandidates[rows[o]] = candidates[group.index][o];
+            }
+            assignJoinGroup(groupCandidates, matches, usedSheet2Rows);
+        }
+        progress.end(ordinalCount);
+        return matches;
+    }
+
+    /**
+     * 按行顺序取出表1中并行探测需要的列（关联列、空值过滤列等），保存为列式查找表
+     * XSSF 单元格的读取在工作簿文档上同步，多个线程同时读取 POI 单元格基本是串行执行的；
+     * 在调用线程取出一次后，并行探测只读取查找表中的数组
+     */
+    LookupTable extractTable1Columns(Sheet sheet1, int headerRow, Collection<String> columns,
+                                     ProgressTracker progress) {
+        LookupTable.Builder builder = new LookupTable.Builder(headerRow, columns);
+        readRows(sheet1, progress.checking(builder));
+        return builder.build();
+    }
+
+    /**
+     * 表1行的空值过滤（读取 extractTable1Columns 取出的值），规则与 hasEmptyValue(Row, ...) 相同
+     */
+    private boolean hasEmptyValue(LookupTable rows1, int rowId, String[] filterEmptyColumns,
+                                  Map<String, Integer> columnMap1) {
+        if (filterEmptyColumns == null || filterEmptyColumns.length == 0) {
+            return false;
+        }
+        for (String colName : filterEmptyColumns) {
+            if (columnMap1.containsKey(colName) && rows1.getValueAsString(rowId, colName).trim().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 表1行的空值过滤：指定列中有任一列为空时返回 true
+     */
+    private boolean hasEmptyValue(Row row1, String[] filterEmptyColumns, Map<String, Integer> columnMap1) {
+        if (filterEmptyColumns == null || filterEmptyColumns.length == 0) {
+            return false;
+        }
+        for (String colName : filterEmptyColumns) {
+            Integer colIndex = columnMap1.get(colName);
+            if (colIndex != null) {
+                Cell cell = row1.getCell(colIndex);
+                String value = getCellValueAsString(cell);
+                if (value == null || value.trim().isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将表2写入外部关联的临时文件（流式读取，不在内存中保留表2）
+     *
+     * @return 外部关联；读取失败时返回 null（临时文件已删除）
+     */
+    private ExternalJoin spillTable2(File file, int sheetIndex, int headerRow,
+                                     List<String> joinKeyGroups, String[] columnsToMerge,
+                                     ProgressTracker progress) throws IOException {
+        ExternalJoin externalJoin = new ExternalJoin(headerRow, collectTable2GroupColumns(joinKeyGroups),
+                columnsToMerge);
+        boolean success = false;
+        try {
+            if (!readSheetRows(file, sheetIndex, progress.checking(externalJoin))) {
+                return null;
+            }
+            if (!externalJoin.isHeaderFound()) {
+                System.err.println("表头行不存在: 第 " + (headerRow + 1) + " 行 - " + file.getName());
+                return null;
+            }
+            success = true;
+            return externalJoin;
+        } finally {
+            if (!success) {
+                externalJoin.close();
+            }
         }
     }
 
+    /**
+     * 估算表格文件解析后的内存占用（字节）
+     * xlsx 是压缩包，解压后的 XML 通常是文件大小的 5~10 倍；xls 按文件大小估算
+     */
+    private static long estimateTableBytes(File file) {
+        long length = file.length();
+        return StreamingSheetReader.supports(file) ? length * 8 : length * 2;
+    }
+
+    /**
+     * 收集表2需要读取的列：所有关联列组中的表2列和要合并的列
+     */
+    private List<String> collectTable2Columns(List<String> joinKeyGroups, String[] columnsToMerge) {
+        List<String> columns = new ArrayList<>();
+        for (List<String> groupColumns : collectTable2GroupColumns(joinKeyGroups)) {
+            columns.addAll(groupColumns);
+        }
+        columns.addAll(Arrays.asList(columnsToMerge));
+        return columns;
+    }
+
+    /**
+     * 按关联列组的顺序收集各组的表2列名（格式错误的组为空列表，保持下标与 joinKeyGroups 一致）
+     */
+    private List<List<String>> collectTable2GroupColumns(List<String> joinKeyGroups) {
+        List<List<String>> groups = new ArrayList<>();
+        for (String groupStr : joinKeyGroups) {
+            List<String> columns = new ArrayList<>();
+            String[] parts = groupStr.split("=");
+            if (parts.length == 2) {
+                for (String col : parts[1].split("[,，]")) {
+                    String trimmed = col.trim();
+                    if (!trimmed.isEmpty()) {
+                        columns.add(trimmed);
+                    }
+                }
+            }
+            groups.add(columns);
+        }
+        return groups;
+    }
+
     /**
      * 解析关联列组
      */
@@ -480,7 +1020,8 @@ public class ExcelService {
                                                    Map<String, Integer> columnMap1,
                                                    Map<String, Integer> columnMap2) {
         List<JoinKeyGroup> result = new ArrayList<>();
-        for (String groupStr : joinKeyGroups) {
+        for (int index = 0; index < joinKeyGroups.size(); index++) {
+            String groupStr = joinKeyGroups.get(index);
             String[] parts = groupStr.split("=");
             if (parts.length != 2) continue;
 
@@ -515,20 +1056,52 @@ public class ExcelService {
             }
 
             if (valid && !t1Keys.isEmpty() && !t2Keys.isEmpty() && t1Keys.size() == t2Keys.size()) {
-                result.add(new JoinKeyGroup(t1Keys, t2Keys));
+                result.add(new JoinKeyGroup(index, t1Keys, t2Keys));
             }
         }
         return result;
     }
 
+    /**
+     * 用一个关联列组在表2索引中查找表1行的匹配行
+     *
+     * @return 匹配的表2行 id，没有匹配时返回 -1
+     */
+    private int probeJoinGroup(JoinKeyGroup group, JoinIndex keyToRow, LookupTable rows1, int rowId,
+                               Map<String, Integer> columnMap1, JoinIndex.Key joinKey) {
+        joinKey.clear();
+        for (String key : group.table1Keys) {
+            if (columnMap1.containsKey(key)) {
+                rows1.appendKeyPart(rowId, key, joinKey);
+            }
+        }
+        return keyToRow.get(joinKey);
+    }
+
+    /**
+     * 构建表1行在一个关联列组中的关联键
+     */
+    private void buildTable1Key(JoinKeyGroup group, Row row1, Map<String, Integer> columnMap1,
+                                JoinIndex.Key joinKey) {
+        joinKey.clear();
+        for (String key : group.table1Keys) {
+            Integer colIndex = columnMap1.get(key);
+            if (colIndex != null) {
+                appendKeyPart(joinKey, row1.getCell(colIndex));
+            }
+        }
+    }
+
     /**
      * 关联列组内部类
      */
     private static class JoinKeyGroup {
+        int index;  // 在 joinKeyGroups 中的下标
         List<String> table1Keys;
         List<String> table2Keys;
 
-        JoinKeyGroup(List<String> table1Keys, List<String> table2Keys) {
+        JoinKeyGroup(int index, List<String> table1Keys, List<String> table2Keys) {
+            this.index = index;
             this.table1Keys = table1Keys;
             this.table2Keys = table2Keys;
         }
@@ -558,59 +1131,75 @@ public class ExcelService {
                                               Map<String, String> subtractMap,
                                               File outputFile) {
         Workbook workbook1 = null;
-        Workbook workbook2 = null;
-        Workbook workbook3 = null;
         Workbook outputWorkbook = null;
+        ProgressTracker progress = new ProgressTracker("排除合并", progressListener, cancellationToken);
 
         try {
-            // 读取 Excel 文件
-            workbook1 = readWorkbook(file1);
-            workbook2 = readWorkbook(file2);
+            progress.begin(ProgressListener.Phase.LOAD, -1);
 
-            if (workbook1 == null || workbook2 == null) {
+            // 并行读取 Excel 文件（表2、表3只读，流式读取需要的列）
+            List<String> table2Columns = new ArrayList<>(Arrays.asList(joinKeys));
+            table2Columns.addAll(Arrays.asList(columnsToMerge));
+            boolean enableExclude = file3 != null && excludeKeys != null && excludeKeys.length > 0;
+
+            // 表2估算占用超过内存预算时，表2写入内存映射的查找存储，不在堆上保存
+            boolean useMappedStore = estimateTableBytes(file2) > mergeMemoryBudget;
+            Future<Workbook> workbook1Future = InputLoader.submit(() -> readWorkbook(file1));
+            Future<LookupTable> table2Future = useMappedStore ? null
+                    : InputLoader.submit(() -> loadLookupTable(file2, 0, 0, table2Columns, progress));
+            Future<MappedLookupStore> mappedStoreFuture = useMappedStore
+                    ? InputLoader.submit(() -> openMappedStore(file2, 0, 0, joinKeys, table2Columns, progress))
+                    : null;
+            Future<LookupTable> table3Future = enableExclude
+                    ? InputLoader.submit(() -> loadLookupTable(file3, 0, 0,
+                            collectTable3Columns(excludeKeys, excludeKeys2, subtractMap), progress))
+                    : null;
+            workbook1 = InputLoader.await(workbook1Future, file1, progress);
+            LookupTable table2 = table2Future != null ? InputLoader.await(table2Future, file2, progress) : null;
+            MappedLookupStore mappedStore = mappedStoreFuture != null ? InputLoader.await(mappedStoreFuture, file2, progress) : null;
+            LookupTable table3 = table3Future != null ? InputLoader.await(table3Future, file3, progress) : null;
+            progress.checkCancelled();
+            if (useMappedStore && mappedStore == null) {
+                // 查找存储不可用时退回堆内查找表
+                table2 = loadLookupTable(file2, 0, 0, table2Columns, progress);
+            }
+            progress.end(enableExclude ? 3 : 2);
+
+            if (workbook1 == null || (table2 == null && mappedStore == null)) {
                 System.err.println("无法读取 Excel 文件");
                 return false;
             }
 
-            // 如果有表3，也读取表3
-            boolean enableExclude = file3 != null && excludeKeys != null && excludeKeys.length > 0;
-            if (enableExclude) {
-                workbook3 = readWorkbook(file3);
-                if (workbook3 == null) {
-                    System.err.println("无法读取表 3 文件");
-                    return false;
-                }
+            // 如果有表3，检查表3是否读取成功
+            if (enableExclude && table3 == null) {
+                System.err.println("无法读取表 3 文件");
+                return false;
+            }
+            progress.report().setCount(PerformanceReport.Count.TABLE2_ROWS,
+                    mappedStore != null ? mappedStore.getRowCount() : table2.getRowCount());
+            if (table3 != null) {
+                progress.report().setCount(PerformanceReport.Count.TABLE3_ROWS, table3.getRowCount());
             }
 
             // 获取第一个工作表
             Sheet sheet1 = workbook1.getSheetAt(0);
-            Sheet sheet2 = workbook2.getSheetAt(0);
-            Sheet sheet3 = null;
-            Row header3 = null;
             Map<String, Integer> columnMap3 = null;
 
             // 读取表头
             Row header1 = sheet1.getRow(0);
-            Row header2 = sheet2.getRow(0);
 
-            if (header1 == null || header2 == null) {
+            if (header1 == null) {
                 System.err.println("Excel 文件没有表头");
                 return false;
             }
 
             // 获取列名映射
             Map<String, Integer> columnMap1 = getColumnMapping(header1);
-            Map<String, Integer> columnMap2 = getColumnMapping(header2);
+            Map<String, Integer> columnMap2 = mappedStore != null ? mappedStore.getColumnMap() : table2.getColumnMap();
 
-            // 如果启用表3排除，读取并验证表3
+            // 如果启用表3排除，验证表3
             if (enableExclude) {
-                sheet3 = workbook3.getSheetAt(0);
-                header3 = sheet3.getRow(0);
-                if (header3 == null) {
-                    System.err.println("表 3 文件没有表头");
-                    return false;
-                }
-                columnMap3 = getColumnMapping(header3);
+                columnMap3 = table3.getColumnMap();
 
                 // 验证排除关联列（条件1）是否存在
                 for (String keyPair : excludeKeys) {
@@ -697,88 +1286,234 @@ public class ExcelService {
                 }
             }
 
-            // 创建输出工作簿
-            outputWorkbook = new XSSFWorkbook();
+            // 创建输出工作簿（流式写出，内存中只保留最近的行）
+            outputWorkbook = createStreamingWorkbook();
             Sheet outputSheet = outputWorkbook.createSheet("MergedData");
 
             // 创建输出表头
-            int outputColCount = createOutputHeader(header1, header2, outputSheet,
+            int outputColCount = createOutputHeader(header1, outputSheet,
                     columnMap1, columnsToMerge);
 
             // 构建表 2 的索引（基于关联列）
-            Map<String, Map<String, Object>> sheet2Index = buildSheet2Index(sheet2, joinKeys, columnMap2);
+            int table3Indexes = !enableExclude ? 0 : 1 + (excludeKeys2 != null && excludeKeys2.length > 0 ? 1 : 0)
+                    + (subtractMap != null && !subtractMap.isEmpty() ? 1 : 0);
+            long indexRows = (mappedStore != null ? 0 : table2.getRowCount())
+                    + (table3Indexes > 0 ? (long) table3.getRowCount() * table3Indexes : 0);
+            progress.begin(ProgressListener.Phase.INDEX, indexRows);
+            RowLookup table2Lookup = mappedStore != null ? mappedStore : buildSheet2Index(table2, joinKeys);
 
             // 构建表 3 的排除索引（基于排除关联列 - 两层条件）
-            Set<String> sheet3ExcludeKeys1 = null;
-            Set<String> sheet3ExcludeKeys2 = null;
-            Map<String, Map<String, Object>> sheet3DataIndex = null;
+            JoinIndex sheet3ExcludeKeys1 = null;
+            JoinIndex sheet3ExcludeKeys2 = null;
+            JoinIndex sheet3DataIndex = null;
             if (enableExclude) {
-                sheet3ExcludeKeys1 = buildSheet3ExcludeIndex(sheet3, excludeKeys, columnMap3);
+                sheet3ExcludeKeys1 = buildSheet3ExcludeIndex(table3, excludeKeys, columnMap3);
                 // 构建条件2的索引
                 if (excludeKeys2 != null && excludeKeys2.length > 0) {
-                    sheet3ExcludeKeys2 = buildSheet3ExcludeIndex(sheet3, excludeKeys2, columnMap3);
+                    sheet3ExcludeKeys2 = buildSheet3ExcludeIndex(table3, excludeKeys2, columnMap3);
                 }
                 // 如果需要减法运算，构建表3的数据索引
                 if (subtractMap != null && !subtractMap.isEmpty()) {
-                    sheet3DataIndex = buildSheet3DataIndex(sheet3, excludeKeys, excludeKeys2, columnMap3);
+                    sheet3DataIndex = buildSheet3DataIndex(table3, excludeKeys, excludeKeys2, columnMap3);
                 }
             }
+            progress.end(indexRows);
 
-            // 合并数据（排除表3中存在的数据，过滤空值行，执行减法运算）
+            // 合并数据（排除表3中存在的数据，过滤空值行，执行减法运算），写入时记录列宽
+            ColumnWidthEstimator widthEstimator = new ColumnWidthEstimator();
+            widthEstimator.trackRow(outputSheet.getRow(0));
             mergeDataWithExclude(sheet1, outputSheet, joinKeys, columnsToMerge, columnMap1,
-                    sheet2Index, excludeKeys, sheet3ExcludeKeys1, excludeKeys2, sheet3ExcludeKeys2,
-                    filterEmptyColumns, subtractMap, sheet3DataIndex);
+                    table2Lookup, excludeKeys, sheet3ExcludeKeys1, excludeKeys2, sheet3ExcludeKeys2,
+                    filterEmptyColumns, subtractMap, table3, sheet3DataIndex, new StyleCache(outputWorkbook),
+                    widthEstimator, progress);
 
-            // 自动调整列宽
-            for (int i = 0; i < outputColCount; i++) {
-                outputSheet.autoSizeColumn(i);
-            }
+            // 按记录的宽度调整列宽
+            widthEstimator.applyTo(outputSheet, outputColCount);
 
             // 写入输出文件
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                outputWorkbook.write(fos);
-            }
+            progress.begin(ProgressListener.Phase.SAVE, -1);
+            writeWorkbook(outputWorkbook, outputFile, progress);
+            progress.end(1);
+            progress.report().markSucceeded();
 
             return true;
 
         } catch (Exception e) {
+            if (progress.isCancelled()) {
+                System.err.println("合并 Excel 文件已取消");
+                return false;
+            }
             System.err.println("合并 Excel 文件时出错: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
             closeQuietly(workbook1);
-            closeQuietly(workbook2);
-            closeQuietly(workbook3);
             closeQuietly(outputWorkbook);
+            finishReport(progress, outputFile);
         }
     }
 
     /**
-     * 读取 Excel 工作簿
+     * 收集表3需要读取的列：两组排除关联列中的表3列和减法运算用到的表3列
+     */
+    private List<String> collectTable3Columns(String[] excludeKeys, String[] excludeKeys2,
+                                              Map<String, String> subtractMap) {
+        List<String> columns = new ArrayList<>();
+        for (String[] keyPairs : new String[][]{excludeKeys, excludeKeys2}) {
+            if (keyPairs == null) continue;
+            for (String keyPair : keyPairs) {
+                String[] parts = keyPair.split("=");
+                if (parts.length == 2) {
+                    columns.add(parts[1].trim());
+                }
+            }
+        }
+        if (subtractMap != null) {
+            columns.addAll(subtractMap.values());
+        }
+        return columns;
+    }
+
+    /**
+     * 读取 Excel 工作簿（只读，不写回原工作簿）
      * 使用安全的方式避免 Windows 上的 KERNELBASE.dll 错误
      */
     private Workbook readWorkbook(File file) {
+        return readWorkbook(file, false);
+    }
+
+    /**
+     * 读取 Excel 工作簿
+     * 使用安全的方式避免 Windows 上的 KERNELBASE.dll 错误
+     *
+     * @param writable 工作簿是否会直接写出（原地合并）
+     */
+    private Workbook readWorkbook(File file, boolean writable) {
+        ExcelEvents.WorkbookLoadEvent event = ExcelEvents.workbookLoad(file, writable);
+        Workbook workbook = null;
         try {
             String fileName = file.getName().toLowerCase();
             if (fileName.endsWith(".xlsx")) {
-                // 使用 FileInputStream 读取 xlsx，然后立即关闭流
-                // XSSFWorkbook 会将所有数据读取到内存中
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    return new XSSFWorkbook(fis);
-                }
+                // 只读时按需从文件读取各部件（关闭工作簿时关闭文件），多个 sheet 页并行解析
+                workbook = ParallelSheetLoader.open(file, writable);
             } else if (fileName.endsWith(".xls")) {
                 try (FileInputStream fis = new FileInputStream(file)) {
-                    return WorkbookFactory.create(fis);
+                    workbook = WorkbookFactory.create(fis);
                 }
             }
+            return workbook;
         } catch (IOException e) {
             System.err.println("读取文件失败: " + file.getAbsolutePath() + " - " + e.getMessage());
         } catch (Exception e) {
-            System.err.println("读取文件失败: " + file.getAbsolutePath() + " - " + e.getMessage());
+            // 读取被取消（加载线程被中断）时由操作统一处理，不输出错误信息
+            if (!Thread.currentThread().isInterrupted()) {
+                System.err.println("读取文件失败: " + file.getAbsolutePath() + " - " + e.getMessage());
+            }
+        } finally {
+            // 读取失败的事件同样提交（sheet 页信息为空）
+            if (event != null) {
+                event.end(workbook);
+            }
         }
         return null;
     }
 
+    /**
+     * 读取只读输入的 sheet 页为查找表，只保留指定的列
+     * xlsx 走流式读取（不加载整个工作簿），xls 退回 DOM 读取；
+     * 结果按文件大小和修改时间缓存，同一文件重复运行时不再解析
+     *
+     * @param file       Excel 文件
+     * @param sheetIndex sheet 页索引（从0开始）
+     * @param headerRow  表头行索引（从0开始）
+     * @param columns    需要保留的列名
+     * @param progress   所属操作的进度（逐行检查取消，取消时读取失败，不缓存）
+     * @return 查找表；文件无法读取、sheet 页不存在或没有表头时返回 null
+     */
+    private LookupTable loadLookupTable(File file, int sheetIndex, int headerRow, Collection<String> columns,
+                                        ProgressTracker progress) {
+        String part = "table:" + sheetIndex + ":" + headerRow + ":" + String.join("\u0000", new TreeSet<>(columns));
+        return ParsedDataCache.get(file, part, LookupTable::getCellCount,
+                () -> readLookupTable(file, sheetIndex, headerRow, columns, progress));
+    }
+
+    /**
+     * 实际读取查找表（不经过缓存）
+     */
+    private LookupTable readLookupTable(File file, int sheetIndex, int headerRow, Collection<String> columns,
+                                        ProgressTracker progress) {
+        LookupTable.Builder builder = new LookupTable.Builder(headerRow, columns);
+        if (!readSheetRows(file, sheetIndex, progress.checking(builder))) {
+            return null;
+        }
+
+        if (!builder.isHeaderFound()) {
+            System.err.println("表头行不存在: 第 " + (headerRow + 1) + " 行 - " + file.getName());
+            return null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * 逐行读取 sheet 页并回调：xlsx 流式读取，其他格式遍历 DOM
+     *
+     * @return 是否读取成功（文件无法读取或 sheet 页不存在时输出错误信息并返回 false）
+     */
+    private boolean readSheetRows(File file, int sheetIndex, StreamingSheetReader.RowHandler handler) {
+        if (StreamingSheetReader.supports(file)) {
+            try {
+                if (!StreamingSheetReader.readSheet(file, sheetIndex, handler)) {
+                    System.err.println("sheet 索引超出范围: " + sheetIndex + " - " + file.getName());
+                    return false;
+                }
+            } catch (IOException e) {
+                if (!(e.getCause() instanceof CancellationException)) {
+                    System.err.println("读取文件失败: " + file.getAbsolutePath() + " - " + e.getMessage());
+                }
+                return false;
+            }
+            return true;
+        }
+
+        Workbook workbook = readWorkbook(file);
+        if (workbook == null) {
+            return false;
+        }
+        try {
+            if (sheetIndex < 0 || sheetIndex >= workbook.getNumberOfSheets()) {
+                System.err.println("sheet 索引超出范围: " + sheetIndex + " - " + file.getName());
+                return false;
+            }
+            readRows(workbook.getSheetAt(sheetIndex), handler);
+            return true;
+        } finally {
+            closeQuietly(workbook);
+        }
+    }
+
+    /**
+     * 按行遍历 DOM sheet，以与流式读取相同的方式回调（用于 xls 等不支持流式读取的格式）
+     */
+    private void readRows(Sheet sheet, StreamingSheetReader.RowHandler handler) {
+        StreamingSheetReader.RowValues values = new StreamingSheetReader.RowValues();
+        Workbook workbook = sheet.getWorkbook();
+        values.setDate1904(workbook instanceof Date1904Support && ((Date1904Support) workbook).isDate1904());
+        for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+            Row row = sheet.getRow(i);
+            if (row == null) continue;
+
+            values.clear();
+            for (Cell cell : row) {
+                if (values.wants(cell.getColumnIndex())) {
+                    values.set(cell.getColumnIndex(), getCellValue(cell), cell.getCellType() == CellType.FORMULA);
+                }
+            }
+            if (!handler.handleRow(i, values)) {
+                break;
+            }
+        }
+    }
+
     /**
      * 读取 Excel 文件的所有 sheet 页名称
      *
@@ -786,12 +1521,25 @@ public class ExcelService {
      * @return sheet 页名称列表
      */
     public List<String> readSheetNames(File file) {
+        List<String> sheetNames = ParsedDataCache.get(file, "sheetNames", List::size, () -> loadSheetNames(file));
+        return sheetNames != null ? new ArrayList<>(sheetNames) : new ArrayList<>();
+    }
+
+    /**
+     * 实际读取 sheet 页名称（不经过缓存），失败时返回 null
+     */
+    private List<String> loadSheetNames(File file) {
         List<String> sheetNames = new ArrayList<>();
         Workbook workbook = null;
         try {
+            // xlsx 只解析 workbook.xml
+            if (StreamingSheetReader.supports(file)) {
+                return StreamingSheetReader.readSheetNames(file);
+            }
+
             workbook = readWorkbook(file);
             if (workbook == null) {
-                return sheetNames;
+                return null;
             }
 
             int numberOfSheets = workbook.getNumberOfSheets();
@@ -800,6 +1548,7 @@ public class ExcelService {
             }
         } catch (Exception e) {
             System.err.println("读取 sheet 页名称失败: " + e.getMessage());
+            return null;
         } finally {
             closeQuietly(workbook);
         }
@@ -824,17 +1573,46 @@ public class ExcelService {
      * @return 表头列名列表
      */
     public List<String> readExcelHeaders(File file, int sheetIndex) {
+        List<String> headers = ParsedDataCache.get(file, "headers:" + sheetIndex, List::size,
+                () -> loadExcelHeaders(file, sheetIndex));
+        return headers != null ? new ArrayList<>(headers) : new ArrayList<>();
+    }
+
+    /**
+     * 实际读取表头列名（不经过缓存），失败时返回 null
+     */
+    private List<String> loadExcelHeaders(File file, int sheetIndex) {
         List<String> headers = new ArrayList<>();
         Workbook workbook = null;
         try {
+            // xlsx 只解析到表头行为止
+            if (StreamingSheetReader.supports(file)) {
+                if (!StreamingSheetReader.readSheet(file, sheetIndex, (rowNum, row) -> {
+                    if (rowNum == 0) {
+                        for (int col = 0; col < row.getLastCellNum(); col++) {
+                            if (!row.contains(col)) continue;
+                            String columnName = row.getAsString(col);
+                            if (!columnName.isEmpty()) {
+                                headers.add(columnName);
+                            }
+                        }
+                    }
+                    return false;
+                })) {
+                    System.err.println("sheet 索引超出范围: " + sheetIndex);
+                    return null;
+                }
+                return headers;
+            }
+
             workbook = readWorkbook(file);
             if (workbook == null) {
-                return headers;
+                return null;
             }
 
             if (sheetIndex < 0 || sheetIndex >= workbook.getNumberOfSheets()) {
                 System.err.println("sheet 索引超出范围: " + sheetIndex);
-                return headers;
+                return null;
             }
 
             Sheet sheet = workbook.getSheetAt(sheetIndex);
@@ -849,6 +1627,7 @@ public class ExcelService {
             }
         } catch (Exception e) {
             System.err.println("读取表头失败: " + e.getMessage());
+            return null;
         } finally {
             closeQuietly(workbook);
         }
@@ -872,7 +1651,7 @@ public class ExcelService {
     /**
      * 创建输出表头
      */
-    private int createOutputHeader(Row header1, Row header2, Sheet outputSheet,
+    private int createOutputHeader(Row header1, Sheet outputSheet,
                                    Map<String, Integer> columnMap1, String[] columnsToMerge) {
         Row outputHeader = outputSheet.createRow(0);
         int colIndex = 0;
@@ -899,52 +1678,73 @@ public class ExcelService {
 
     /**
      * 构建表 2 的索引，用于快速查找
-     * 返回：关联键值 -> {列名 -> 单元格值}
-     */
-    private Map<String, Map<String, Object>> buildSheet2Index(Sheet sheet2, String[] joinKeys,
-                                                               Map<String, Integer> columnMap2) {
-        Map<String, Map<String, Object>> index = new HashMap<>();
-
-        for (int i = 1; i <= sheet2.getLastRowNum(); i++) {
-            Row row = sheet2.getRow(i);
-            if (row == null) continue;
+     * 返回：按关联键查找表2行（重复键保留最后一行）
+     */
+    RowLookup buildSheet2Index(LookupTable table2, String[] joinKeys) {
+        JoinIndex index = new JoinIndex(table2.getRowCount());
+        JoinIndex.Key key = new JoinIndex.Key();
 
+        for (int rowId = 0; rowId < table2.getRowCount(); rowId++) {
             // 构建关联键
-            StringBuilder keyBuilder = new StringBuilder();
+            key.clear();
             for (String joinKey : joinKeys) {
-                int colIndex = columnMap2.get(joinKey);
-                Cell cell = row.getCell(colIndex);
-                String value = getCellValueAsString(cell);
-                keyBuilder.append(value).append("|||");
+                table2.appendKeyPart(rowId, joinKey, key);
             }
-            String key = keyBuilder.toString();
+            index.put(key, rowId, true);
+        }
 
-            // 存储该行的所有列数据
-            Map<String, Object> rowData = new HashMap<>();
-            for (Cell cell : row) {
-                String colName = getColumnName(sheet2.getRow(0), cell.getColumnIndex());
-                if (colName != null) {
-                    rowData.put(colName, getCellValue(cell));
-                }
+        return new RowLookup() {
+            @Override
+            public int find(JoinIndex.Key key) {
+                return index.get(key);
             }
-            index.put(key, rowData);
-        }
 
-        return index;
+            @Override
+            public boolean hasCell(int rowId, String columnName) {
+                return table2.hasCell(rowId, columnName);
+            }
+
+            @Override
+            public Object getValue(int rowId, String columnName) {
+                return table2.getValue(rowId, columnName);
+            }
+        };
+    }
+
+    /**
+     * 打开表2的内存映射查找存储（按关联列建索引），失败时输出错误信息并返回 null
+     */
+    private MappedLookupStore openMappedStore(File file, int sheetIndex, int headerRow,
+                                              String[] keyColumns, Collection<String> columns,
+                                              ProgressTracker progress) {
+        try {
+            MappedLookupStore store = MappedLookupStore.open(file, sheetIndex, headerRow, keyColumns, columns,
+                    estimateTableBytes(file), handler -> readSheetRows(file, sheetIndex, progress.checking(handler)));
+            if (store == null) {
+                System.err.println("无法生成查找存储: " + file.getName());
+            }
+            return store;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("无法生成查找存储，改为内存查找: " + file.getName() + " - " + e.getMessage());
+            return null;
+        }
     }
 
     /**
      * 合并数据到输出表（带两层条件排除、空值过滤和减法运算）
+     * 表1各行的过滤、排除判断、减法计算和表2查找按行区间并行探测，结果按行保存；
+     * 之后按行号顺序创建输出行并写入单元格，输出与顺序执行相同
      */
     private void mergeDataWithExclude(Sheet sheet1, Sheet outputSheet, String[] joinKeys,
                                       String[] columnsToMerge, Map<String, Integer> columnMap1,
-                                      Map<String, Map<String, Object>> sheet2Index,
-                                      String[] excludeKeys, Set<String> sheet3ExcludeKeys1,
-                                      String[] excludeKeys2, Set<String> sheet3ExcludeKeys2,
+                                      RowLookup table2,
+                                      String[] excludeKeys, JoinIndex sheet3ExcludeKeys1,
+                                      String[] excludeKeys2, JoinIndex sheet3ExcludeKeys2,
                                       String[] filterEmptyColumns,
                                       Map<String, String> subtractMap,
-                                      Map<String, Map<String, Object>> sheet3DataIndex) {
-        Row header1 = sheet1.getRow(0);
+                                      LookupTable table3, JoinIndex sheet3DataIndex,
+                                      StyleCache styleCache, ColumnWidthEstimator widthEstimator,
+                                      ProgressTracker progress) {
         Row outputHeader = outputSheet.getRow(0);
 
         // 获取输出表头中各列的索引
@@ -953,89 +1753,121 @@ public class ExcelService {
             outputColumnMap.put(getCellValueAsString(cell), cell.getColumnIndex());
         }
 
-        int outputRowIndex = 1;  // 从第1行开始，第0行是表头
-        for (int i = 1; i <= sheet1.getLastRowNum(); i++) {
-            Row row1 = sheet1.getRow(i);
-            if (row1 == null) continue;
-
-            // 检查空值过滤（如果指定列为空，跳过此行）
-            if (filterEmptyColumns != null && filterEmptyColumns.length > 0) {
-                boolean hasEmptyValue = false;
-                for (String colName : filterEmptyColumns) {
-                    Integer colIndex = columnMap1.get(colName);
-                    if (colIndex != null) {
-                        Cell cell = row1.getCell(colIndex);
-                        String value = getCellValueAsString(cell);
-                        if (value == null || value.trim().isEmpty()) {
-                            hasEmptyValue = true;
-                            break;
-                        }
-                    }
-                }
-                if (hasEmptyValue) {
-                    continue;  // 跳过有空值的行
+        // 各排除条件在表1中的列名（关联列和空值过滤列已验证存在）
+        String[] excludeColumns1 = excludeKeys != null && sheet3ExcludeKeys1 != null && sheet3DataIndex != null
+                ? getTable1ExcludeColumns(excludeKeys) : null;
+        String[] excludeColumns2 = excludeKeys2 != null && sheet3ExcludeKeys2 != null && sheet3DataIndex != null
+                ? getTable1ExcludeColumns(excludeKeys2) : null;
+        boolean needSubtract = subtractMap != null && !subtractMap.isEmpty();
+        List<Map.Entry<String, String>> subtractions = needSubtract
+                ? new ArrayList<>(subtractMap.entrySet()) : Collections.emptyList();
+
+        // 探测结果（下标为 表1行号 - 1）：表2匹配行 id（FILTERED_ROW 表示不输出此行）、减法结果
+        int rowCount = Math.max(0, sheet1.getLastRowNum());
+        int[] matchedRows = new int[rowCount];
+        Double[] differences = new Double[rowCount * subtractions.size()];
+
+        progress.begin(ProgressListener.Phase.PROBE, rowCount);
+
+        // 表1中探测需要的列先按行取出，并行探测只读取取出的值
+        List<String> probeColumns = new ArrayList<>(Arrays.asList(joinKeys));
+        if (excludeColumns1 != null) {
+            probeColumns.addAll(Arrays.asList(excludeColumns1));
+        }
+        if (excludeColumns2 != null) {
+            probeColumns.addAll(Arrays.asList(excludeColumns2));
+        }
+        if (filterEmptyColumns != null) {
+            probeColumns.addAll(Arrays.asList(filterEmptyColumns));
+        }
+        if (needSubtract) {
+            probeColumns.addAll(subtractMap.keySet());
+        }
+        LookupTable rows1 = extractTable1Columns(sheet1, 0, probeColumns, progress);
+        int[] rowIds = rows1.rowIdsFrom(1, rowCount);
+
+        ProbePool.forEachRange(0, rowCount, (from, to) -> {
+            JoinIndex.Key key = new JoinIndex.Key();  // 关联键缓冲区，每行复用
+            for (int r = from; r < to; r++) {
+                matchedRows[r] = FILTERED_ROW;
+                int rowId = rowIds[r];
+                if (rowId < 0) continue;
+
+                // 检查空值过滤（如果指定列为空，跳过此行）
+                if (hasEmptyValue(rows1, rowId, filterEmptyColumns, columnMap1)) {
+                    continue;
                 }
-            }
 
-            // 两层条件排除和匹配：先检查条件1，如果条件1不匹配，再检查条件2
-            boolean shouldExclude = false;
-            Map<String, Object> matchedRow3 = null;
-
-            // 条件1：检查是否在表3中
-            if (excludeKeys != null && sheet3ExcludeKeys1 != null && sheet3DataIndex != null) {
-                StringBuilder excludeKeyBuilder = new StringBuilder();
-                for (String keyPair : excludeKeys) {
-                    // 解析格式: "表1列名=表3列名"，只取表1列名
-                    String[] parts = keyPair.split("=");
-                    if (parts.length != 2) continue;
-                    String col1Name = parts[0].trim();  // 获取表1的列名
+                // 两层条件排除和匹配：先检查条件1，如果条件1不匹配，再检查条件2
+                boolean shouldExclude = false;
+                int matchedRow3 = NO_MATCH;
 
-                    int colIndex = columnMap1.get(col1Name);
-                    Cell cell = row1.getCell(colIndex);
-                    String value = getCellValueAsString(cell);
-                    excludeKeyBuilder.append(value).append("|||");
+                // 条件1：检查是否在表3中
+                if (excludeColumns1 != null) {
+                    buildTable1Key(excludeColumns1, rows1, rowId, key);
+                    if (sheet3ExcludeKeys1.contains(key)) {
+                        shouldExclude = true;
+                        matchedRow3 = sheet3DataIndex.get(key);
+                    }
                 }
-                String excludeKey = excludeKeyBuilder.toString();
-                if (sheet3ExcludeKeys1.contains(excludeKey)) {
-                    shouldExclude = true;
-                    matchedRow3 = sheet3DataIndex.get(excludeKey);
+
+                // 条件2：如果条件1不匹配，且有条件2，则检查条件2
+                if (!shouldExclude && excludeColumns2 != null) {
+                    buildTable1Key(excludeColumns2, rows1, rowId, key);
+                    if (sheet3ExcludeKeys2.contains(key)) {
+                        shouldExclude = true;
+                        matchedRow3 = sheet3DataIndex.get(key);
+                    }
                 }
-            }
 
-            // 条件2：如果条件1不匹配，且有条件2，则检查条件2
-            if (!shouldExclude && excludeKeys2 != null && sheet3ExcludeKeys2 != null && sheet3DataIndex != null) {
-                StringBuilder excludeKeyBuilder = new StringBuilder();
-                for (String keyPair : excludeKeys2) {
-                    // 解析格式: "表1列名=表3列名"，只取表1列名
-                    String[] parts = keyPair.split("=");
-                    if (parts.length != 2) continue;
-                    String col1Name = parts[0].trim();  // 获取表1的列名
+                // 如果需要减法运算但没有匹配到表3的数据，跳过此行（不进行减法）
+                if (needSubtract && matchedRow3 == NO_MATCH) {
+                    // 没有匹配到表3，不执行减法，直接复制原数据
+                } else if (shouldExclude && needSubtract) {
+                    // 匹配到表3且需要减法：不排除，而是执行减法运算
+                    shouldExclude = false;
+                }
 
-                    int colIndex = columnMap1.get(col1Name);
-                    Cell cell = row1.getCell(colIndex);
-                    String value = getCellValueAsString(cell);
-                    excludeKeyBuilder.append(value).append("|||");
+                // 如果确实需要排除（且不需要减法，或减法已处理），跳过此行
+                if (shouldExclude) {
+                    continue;
                 }
-                String excludeKey = excludeKeyBuilder.toString();
-                if (sheet3ExcludeKeys2.contains(excludeKey)) {
-                    shouldExclude = true;
-                    matchedRow3 = sheet3DataIndex.get(excludeKey);
+
+                // 计算减法结果
+                if (needSubtract && matchedRow3 != NO_MATCH) {
+                    for (int e = 0; e < subtractions.size(); e++) {
+                        String col1 = subtractions.get(e).getKey();    // 表1的列
+                        String col3 = subtractions.get(e).getValue();  // 表3的列
+
+                        if (columnMap1.containsKey(col1) && outputColumnMap.containsKey(col1)
+                                && table3.hasCell(matchedRow3, col3)) {
+                            Object val1 = rows1.getValue(rowId, col1);
+                            Object val3 = table3.getValue(matchedRow3, col3);
+                            differences[r * subtractions.size() + e] = performSubtraction(val1, val3);
+                        }
+                    }
                 }
-            }
 
-            // 如果需要减法运算但没有匹配到表3的数据，跳过此行（不进行减法）
-            boolean needSubtract = subtractMap != null && !subtractMap.isEmpty();
-            if (needSubtract && matchedRow3 == null) {
-                // 没有匹配到表3，不执行减法，直接复制原数据
-            } else if (shouldExclude && needSubtract) {
-                // 匹配到表3且需要减法：不排除，而是执行减法运算
-                shouldExclude = false;
+                // 构建关联键，从表 2 查找匹配的行
+                buildTable1Key(joinKeys, rows1, rowId, key);
+                matchedRows[r] = table2.find(key);
             }
+            progress.add(to - from);
+        });
+        progress.end(rowCount);
 
-            // 如果确实需要排除（且不需要减法，或减法已处理），跳过此行
-            if (shouldExclude) {
-                continue;
+        // 按行号顺序写入输出表
+        int outputRowIndex = 1;  // 从第1行开始，第0行是表头
+        int matchedCount = 0;
+        progress.begin(ProgressListener.Phase.WRITE, rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            progress.update(r);
+            int matchedRow = matchedRows[r];
+            if (matchedRow == FILTERED_ROW) continue;
+            if (matchedRow >= 0) {
+                matchedCount++;
             }
+            Row row1 = sheet1.getRow(r + 1);
 
             Row outputRow = outputSheet.createRow(outputRowIndex++);
 
@@ -1045,53 +1877,60 @@ public class ExcelService {
                 copyCellValue(cell, newCell);
             }
 
-            // 执行减法运算
-            if (needSubtract && matchedRow3 != null) {
-                for (Map.Entry<String, String> entry : subtractMap.entrySet()) {
-                    String col1 = entry.getKey();   // 表1的列
-                    String col3 = entry.getValue();  // 表3的列
-
-                    Integer colIndex1 = columnMap1.get(col1);
-                    Integer outputColIndex = outputColumnMap.get(col1);
-
-                    if (colIndex1 != null && outputColIndex != null && matchedRow3.containsKey(col3)) {
-                        Object val1 = getCellValue(row1.getCell(colIndex1));
-                        Object val3 = matchedRow3.get(col3);
-
-                        // 执行减法
-                        Double result = performSubtraction(val1, val3);
-                        if (result != null) {
-                            Cell newCell = outputRow.getCell(outputColIndex);
-                            if (newCell == null) {
-                                newCell = outputRow.createCell(outputColIndex);
-                            }
-                            newCell.setCellValue(result);
-                        }
+            // 写入减法结果
+            for (int e = 0; e < subtractions.size(); e++) {
+                Double result = differences[r * subtractions.size() + e];
+                if (result != null) {
+                    int outputColIndex = outputColumnMap.get(subtractions.get(e).getKey());
+                    Cell newCell = outputRow.getCell(outputColIndex);
+                    if (newCell == null) {
+                        newCell = outputRow.createCell(outputColIndex);
                     }
+                    newCell.setCellValue(result);
                 }
             }
 
-            // 构建关联键
-            StringBuilder keyBuilder = new StringBuilder();
-            for (String joinKey : joinKeys) {
-                int colIndex = columnMap1.get(joinKey);
-                Cell cell = row1.getCell(colIndex);
-                String value = getCellValueAsString(cell);
-                keyBuilder.append(value).append("|||");
-            }
-            String key = keyBuilder.toString();
-
-            // 从表 2 查找匹配的数据并合并
-            Map<String, Object> matchedRow = sheet2Index.get(key);
-            if (matchedRow != null) {
+            // 合并表 2 匹配行的数据
+            if (matchedRow >= 0) {
                 for (String colName : columnsToMerge) {
                     Integer outputColIndex = outputColumnMap.get(colName);
-                    if (outputColIndex != null && matchedRow.containsKey(colName)) {
+                    if (outputColIndex != null && table2.hasCell(matchedRow, colName)) {
                         Cell newCell = outputRow.createCell(outputColIndex);
-                        setCellValue(newCell, matchedRow.get(colName));
+                        setCellValue(newCell, table2.getValue(matchedRow, colName), styleCache);
                     }
                 }
             }
+
+            // 本行已写完，记录列宽（之后可能被流式写出）
+            widthEstimator.trackRow(outputRow);
+        }
+        progress.end(rowCount);
+        progress.report().setCount(PerformanceReport.Count.TABLE1_ROWS, rowCount);
+        progress.report().setCount(PerformanceReport.Count.MATCHED_ROWS, matchedCount);
+        progress.report().setCount(PerformanceReport.Count.OUTPUT_ROWS, outputRowIndex - 1);
+    }
+
+    /**
+     * 解析排除关联列（格式: "表1列名=表3列名"），返回表1的列名，格式不正确的条件跳过
+     */
+    private String[] getTable1ExcludeColumns(String[] keyPairs) {
+        String[] columns = new String[keyPairs.length];
+        int count = 0;
+        for (String keyPair : keyPairs) {
+            String[] parts = keyPair.split("=");
+            if (parts.length != 2) continue;
+            columns[count++] = parts[0].trim();  // 获取表1的列名
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * 按表1列名构建关联键（读取 extractTable1Columns 取出的值）
+     */
+    void buildTable1Key(String[] columns, LookupTable rows1, int rowId, JoinIndex.Key key) {
+        key.clear();
+        for (String column : columns) {
+            rows1.appendKeyPart(rowId, column, key);
         }
     }
 
@@ -1138,44 +1977,29 @@ public class ExcelService {
     /**
      * 构建表 3 的数据索引，用于减法运算
      * excludeKeys1/2 格式: "表1列名=表3列名"
-     * 返回：关联键值 -> {列名 -> 单元格值}
+     * 返回：关联键值 -> 表3行 id（重复键保留最后一行）
      */
-    private Map<String, Map<String, Object>> buildSheet3DataIndex(Sheet sheet3, String[] excludeKeys1,
-                                                                 String[] excludeKeys2,
-                                                                 Map<String, Integer> columnMap3) {
-        Map<String, Map<String, Object>> index = new HashMap<>();
+    private JoinIndex buildSheet3DataIndex(LookupTable table3, String[] excludeKeys1,
+                                           String[] excludeKeys2,
+                                           Map<String, Integer> columnMap3) {
+        JoinIndex index = new JoinIndex(table3.getRowCount());
+        JoinIndex.Key key = new JoinIndex.Key();
 
-        for (int i = 1; i <= sheet3.getLastRowNum(); i++) {
-            Row row = sheet3.getRow(i);
-            if (row == null) continue;
-
-            // 优先使用条件1构建键
-            StringBuilder keyBuilder = new StringBuilder();
-            String[] keysToUse = (excludeKeys1 != null && excludeKeys1.length > 0) ? excludeKeys1 : excludeKeys2;
+        // 优先使用条件1构建键
+        String[] keysToUse = (excludeKeys1 != null && excludeKeys1.length > 0) ? excludeKeys1 : excludeKeys2;
 
+        for (int rowId = 0; rowId < table3.getRowCount(); rowId++) {
+            key.clear();
             for (String keyPair : keysToUse) {
                 // 解析格式: "表1列名=表3列名"，只取表3列名
                 String[] parts = keyPair.split("=");
                 if (parts.length != 2) continue;
                 String col3Name = parts[1].trim();  // 获取表3的列名
 
-                Integer colIndex = columnMap3.get(col3Name);
-                if (colIndex == null) continue;
-                Cell cell = row.getCell(colIndex);
-                String value = getCellValueAsString(cell);
-                keyBuilder.append(value).append("|||");
-            }
-            String key = keyBuilder.toString();
-
-            // 存储该行的所有列数据
-            Map<String, Object> rowData = new HashMap<>();
-            for (Cell cell : row) {
-                String colName = getColumnName(sheet3.getRow(0), cell.getColumnIndex());
-                if (colName != null) {
-                    rowData.put(colName, getCellValue(cell));
-                }
+                if (!columnMap3.containsKey(col3Name)) continue;
+                table3.appendKeyPart(rowId, col3Name, key);
             }
-            index.put(key, rowData);
+            index.put(key, rowId, true);
         }
 
         return index;
@@ -1184,7 +2008,7 @@ public class ExcelService {
     /**
      * 获取单元格值作为字符串
      */
-    private String getCellValueAsString(Cell cell) {
+    String getCellValueAsString(Cell cell) {
         if (cell == null) {
             return "";
         }
@@ -1192,10 +2016,42 @@ public class ExcelService {
         return value != null ? value.toString() : "";
     }
 
+    /**
+     * 将单元格值作为关联键片段添加到 key（与 getCellValueAsString 的比较结果一致）
+     */
+    private void appendKeyPart(JoinIndex.Key key, Cell cell) {
+        if (cell == null) {
+            key.addText("");
+            return;
+        }
+
+        switch (cell.getCellType()) {
+            case STRING:
+                key.addText(cell.getStringCellValue().trim());
+                break;
+            case NUMERIC:
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    key.addDate(cell.getDateCellValue().getTime());
+                } else {
+                    key.addNumber(cell.getNumericCellValue());
+                }
+                break;
+            case BOOLEAN:
+                key.addBoolean(cell.getBooleanCellValue());
+                break;
+            case FORMULA:
+                key.addText(cell.getCellFormula());
+                break;
+            default:
+                key.addText("");
+                break;
+        }
+    }
+
     /**
      * 获取单元格值
      */
-    private Object getCellValue(Cell cell) {
+    Object getCellValue(Cell cell) {
         if (cell == null) {
             return null;
         }
@@ -1221,38 +2077,22 @@ public class ExcelService {
 
     /**
      * 设置单元格值（支持换行）
+     * 换行样式和日期样式从 styleCache 获取，同一个原样式只派生一次
      */
-    private void setCellValue(Cell cell, Object value) {
+    private void setCellValue(Cell cell, Object value, StyleCache styleCache) {
         if (value == null) {
             cell.setBlank();
             return;
         }
 
         Workbook workbook = cell.getSheet().getWorkbook();
-        CellStyle style = null;
 
         if (value instanceof String) {
             String stringValue = (String) value;
             // 检查字符串中是否包含换行符
             if (stringValue.contains("\n") || stringValue.contains("\r")) {
-                // 创建带换行的样式
-                style = workbook.createCellStyle();
-                // 获取当前单元格的样式作为基础（如果有的话）
-                CellStyle currentStyle = cell.getCellStyle();
-                if (currentStyle != null) {
-                    // 复制基本样式
-                    style.setAlignment(currentStyle.getAlignment());
-                    style.setVerticalAlignment(currentStyle.getVerticalAlignment());
-                    style.setBorderBottom(currentStyle.getBorderBottom());
-                    style.setBorderLeft(currentStyle.getBorderLeft());
-                    style.setBorderRight(currentStyle.getBorderRight());
-                    style.setBorderTop(currentStyle.getBorderTop());
-                    style.setFont(workbook.getFontAt(currentStyle.getFontIndex()));
-                    style.setDataFormat(currentStyle.getDataFormat());
-                }
-                // 设置换行
-                style.setWrapText(true);
-                cell.setCellStyle(style);
+                // 带换行的样式，以当前单元格的样式作为基础
+                cell.setCellStyle(wrapTextStyle(styleCache, workbook, cell.getCellStyle()));
             }
             cell.setCellValue(stringValue);
         } else if (value instanceof Number) {
@@ -1261,16 +2101,54 @@ public class ExcelService {
             cell.setCellValue((Boolean) value);
         } else if (value instanceof Date) {
             cell.setCellValue((Date) value);
-            // 设置日期格式
-            style = workbook.createCellStyle();
-            DataFormat dataFormat = workbook.createDataFormat();
-            style.setDataFormat(dataFormat.getFormat("yyyy-mm-dd"));
-            cell.setCellStyle(style);
+            // 设置日期格式（与原样式无关，整个工作簿共用一个）
+            cell.setCellStyle(dateStyle(styleCache, workbook));
         } else {
             cell.setCellValue(value.toString());
         }
     }
 
+    /**
+     * 以当前样式为基础的换行样式
+     */
+    private CellStyle wrapTextStyle(StyleCache styleCache, Workbook workbook, CellStyle cellStyle) {
+        return styleCache.derive("wrapText", cellStyle, (style, currentStyle) -> {
+            // 复制基本样式
+            style.setAlignment(currentStyle.getAlignment());
+            style.setVerticalAlignment(currentStyle.getVerticalAlignment());
+            style.setBorderBottom(currentStyle.getBorderBottom());
+            style.setBorderLeft(currentStyle.getBorderLeft());
+            style.setBorderRight(currentStyle.getBorderRight());
+            style.setBorderTop(currentStyle.getBorderTop());
+            style.setFont(workbook.getFontAt(currentStyle.getFontIndex()));
+            style.setDataFormat(currentStyle.getDataFormat());
+            // 设置换行
+            style.setWrapText(true);
+        });
+    }
+
+    /**
+     * 日期样式（yyyy-mm-dd）
+     */
+    private CellStyle dateStyle(StyleCache styleCache, Workbook workbook) {
+        return styleCache.shared("date", () -> {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+            return style;
+        });
+    }
+
+    /**
+     * 匹配行的高亮样式（原样式加橙色背景）
+     */
+    private CellStyle highlightStyle(StyleCache styleCache, CellStyle cellStyle) {
+        return styleCache.derive("highlight", cellStyle, (style, base) -> {
+            cloneStyle(style, base);
+            style.setFillForegroundColor(IndexedColors.LIGHT_ORANGE.getIndex());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        });
+    }
+
     /**
      * 复制单元格值（保留格式，不覆盖样式）
      */
@@ -1307,18 +2185,16 @@ public class ExcelService {
     /**
      * 构建表 3 的排除索引，用于快速查找要排除的行
      * excludeKeys 格式: "表1列名=表3列名"
-     * 返回：要排除的关联键值集合
+     * 返回：要排除的关联键值集合（只使用 contains）
      */
-    private Set<String> buildSheet3ExcludeIndex(Sheet sheet3, String[] excludeKeys,
-                                                Map<String, Integer> columnMap3) {
-        Set<String> excludeIndex = new HashSet<>();
-
-        for (int i = 1; i <= sheet3.getLastRowNum(); i++) {
-            Row row = sheet3.getRow(i);
-            if (row == null) continue;
+    private JoinIndex buildSheet3ExcludeIndex(LookupTable table3, String[] excludeKeys,
+                                              Map<String, Integer> columnMap3) {
+        JoinIndex excludeIndex = new JoinIndex(table3.getRowCount());
+        JoinIndex.Key key = new JoinIndex.Key();
 
+        for (int rowId = 0; rowId < table3.getRowCount(); rowId++) {
             // 构建排除关联键（只使用表3的列名）
-            StringBuilder keyBuilder = new StringBuilder();
+            key.clear();
             for (String keyPair : excludeKeys) {
                 // 解析格式: "表1列名=表3列名"，只取表3列名
                 String[] parts = keyPair.split("=");
@@ -1328,42 +2204,30 @@ public class ExcelService {
                 }
                 String col3Name = parts[1].trim();  // 获取表3的列名
 
-                Integer colIndex = columnMap3.get(col3Name);
-                if (colIndex == null) {
+                if (!columnMap3.containsKey(col3Name)) {
                     System.err.println("表3中不存在列: " + col3Name);
                     continue;
                 }
-                Cell cell = row.getCell(colIndex);
-                String value = getCellValueAsString(cell);
-                keyBuilder.append(value).append("|||");
+                table3.appendKeyPart(rowId, col3Name, key);
             }
-            String key = keyBuilder.toString();
-            excludeIndex.add(key);
+            excludeIndex.put(key, rowId, false);
         }
 
         return excludeIndex;
     }
 
-    /**
-     * 获取列名
-     */
-    private String getColumnName(Row headerRow, int columnIndex) {
-        if (headerRow == null) return null;
-        Cell cell = headerRow.getCell(columnIndex);
-        return cell != null ? getCellValueAsString(cell) : null;
-    }
-
     /**
      * 复制整个工作簿的所有sheet页
      *
      * @param sourceWorkbook 源工作簿
      * @param targetWorkbook 目标工作簿
      */
-    private void copyWorkbook(Workbook sourceWorkbook, Workbook targetWorkbook) {
+    private void copyWorkbook(Workbook sourceWorkbook, Workbook targetWorkbook, StyleCache styleCache,
+                              ProgressTracker progress) {
         for (int i = 0; i < sourceWorkbook.getNumberOfSheets(); i++) {
             Sheet sourceSheet = sourceWorkbook.getSheetAt(i);
             String sheetName = sourceWorkbook.getSheetName(i);
-            copySheet(sourceSheet, targetWorkbook, sheetName);
+            copySheet(sourceSheet, targetWorkbook, sheetName, styleCache, progress);
         }
     }
 
@@ -1373,13 +2237,19 @@ public class ExcelService {
      * @param sourceSheet 源sheet页
      * @param targetWorkbook 目标工作簿
      * @param targetSheetName 目标sheet页名称
+     * @param styleCache 目标工作簿的样式缓存
+     * @param progress 所属操作的进度（每 1024 行检查一次取消）
      * @return 复制后的sheet页
      */
-    private Sheet copySheet(Sheet sourceSheet, Workbook targetWorkbook, String targetSheetName) {
+    private Sheet copySheet(Sheet sourceSheet, Workbook targetWorkbook, String targetSheetName,
+                            StyleCache styleCache, ProgressTracker progress) {
         Sheet targetSheet = targetWorkbook.createSheet(targetSheetName);
 
         // 复制所有行
         for (int rowIndex = 0; rowIndex <= sourceSheet.getLastRowNum(); rowIndex++) {
+            if ((rowIndex & 1023) == 0) {
+                progress.checkCancelled();
+            }
             Row sourceRow = sourceSheet.getRow(rowIndex);
             if (sourceRow != null) {
                 Row targetRow = targetSheet.createRow(rowIndex);
@@ -1390,7 +2260,7 @@ public class ExcelService {
                     Cell sourceCell = sourceRow.getCell(colIndex);
                     if (sourceCell != null) {
                         Cell targetCell = targetRow.createCell(colIndex);
-                        copyCell(sourceCell, targetCell, targetWorkbook);
+                        copyCell(sourceCell, targetCell, targetWorkbook, styleCache);
                     }
                 }
             }
@@ -1417,26 +2287,37 @@ public class ExcelService {
 
     /**
      * 复制单元格（包括值和样式）
+     * 样式通过 styleCache 复用，同一个源样式在目标工作簿中只创建一次
      */
-    private void copyCell(Cell sourceCell, Cell targetCell, Workbook targetWorkbook) {
+    private void copyCell(Cell sourceCell, Cell targetCell, Workbook targetWorkbook, StyleCache styleCache) {
         Workbook sourceWorkbook = sourceCell.getSheet().getWorkbook();
 
         // 检查是否是XSSF（xlsx格式）
         if (sourceWorkbook instanceof XSSFWorkbook && targetWorkbook instanceof XSSFWorkbook) {
-            copyCellXSSF(sourceCell, targetCell, (XSSFWorkbook) targetWorkbook);
+            copyCellXSSF(sourceCell, targetCell, (XSSFWorkbook) targetWorkbook, styleCache);
         } else {
-            copyCellHSSF(sourceCell, targetCell, targetWorkbook);
+            copyCellHSSF(sourceCell, targetCell, targetWorkbook, styleCache);
         }
     }
 
     /**
      * 复制XSSF单元格（xlsx格式，正确处理颜色）
      */
-    private void copyCellXSSF(Cell sourceCell, Cell targetCell, XSSFWorkbook targetWorkbook) {
-        XSSFCell sourceXCell = (XSSFCell) sourceCell;
-        XSSFCell targetXCell = (XSSFCell) targetCell;
+    void copyCellXSSF(Cell sourceCell, Cell targetCell, XSSFWorkbook targetWorkbook, StyleCache styleCache) {
+        XSSFCellStyle sourceStyle = ((XSSFCell) sourceCell).getCellStyle();
+
+        // 先设置样式
+        targetCell.setCellStyle(styleCache.copyOf(sourceCell.getSheet().getWorkbook(), sourceStyle,
+                () -> createStyleCopyXSSF(sourceStyle, targetWorkbook)));
+
+        // 然后复制值（不会覆盖样式）
+        copyCellValue(sourceCell, targetCell);
+    }
 
-        XSSFCellStyle sourceStyle = sourceXCell.getCellStyle();
+    /**
+     * 在目标工作簿中创建XSSF源样式的副本
+     */
+    private XSSFCellStyle createStyleCopyXSSF(XSSFCellStyle sourceStyle, XSSFWorkbook targetWorkbook) {
         XSSFCellStyle targetStyle = targetWorkbook.createCellStyle();
 
         // 复制对齐方式
@@ -1481,19 +2362,28 @@ public class ExcelService {
         targetStyle.setHidden(sourceStyle.getHidden());
         targetStyle.setLocked(sourceStyle.getLocked());
 
+        return targetStyle;
+    }
+
+    /**
+     * 复制HSSF单元格（xls格式或其他）
+     */
+    private void copyCellHSSF(Cell sourceCell, Cell targetCell, Workbook targetWorkbook, StyleCache styleCache) {
+        Workbook sourceWorkbook = sourceCell.getSheet().getWorkbook();
+        CellStyle sourceStyle = sourceCell.getCellStyle();
+
         // 先设置样式
-        targetXCell.setCellStyle(targetStyle);
+        targetCell.setCellStyle(styleCache.copyOf(sourceWorkbook, sourceStyle,
+                () -> createStyleCopy(sourceStyle, sourceWorkbook, targetWorkbook)));
 
-        // 然后复制值（不会覆盖样式）
+        // 然后复制值
         copyCellValue(sourceCell, targetCell);
     }
 
     /**
-     * 复制HSSF单元格（xls格式或其他）
+     * 在目标工作簿中创建源样式的副本（xls格式或其他）
      */
-    private void copyCellHSSF(Cell sourceCell, Cell targetCell, Workbook targetWorkbook) {
-        // 复制样式
-        CellStyle sourceStyle = sourceCell.getCellStyle();
+    private CellStyle createStyleCopy(CellStyle sourceStyle, Workbook sourceWorkbook, Workbook targetWorkbook) {
         CellStyle targetStyle = targetWorkbook.createCellStyle();
 
         // 复制对齐方式
@@ -1519,7 +2409,6 @@ public class ExcelService {
         targetStyle.setFillPattern(sourceStyle.getFillPattern());
 
         // 复制字体
-        Workbook sourceWorkbook = sourceCell.getSheet().getWorkbook();
         Font sourceFont = sourceWorkbook.getFontAt(sourceStyle.getFontIndex());
 
         // 查找或创建相同的字体
@@ -1533,11 +2422,7 @@ public class ExcelService {
         targetStyle.setHidden(sourceStyle.getHidden());
         targetStyle.setLocked(sourceStyle.getLocked());
 
-        // 先设置样式
-        targetCell.setCellStyle(targetStyle);
-
-        // 然后复制值
-        copyCellValue(sourceCell, targetCell);
+        return targetStyle;
     }
 
     /**
@@ -1589,6 +2474,35 @@ public class ExcelService {
         }
     }
 
+    /**
+     * 为匹配行添加橙色背景的条件格式
+     * 连续的行合并为一个区域，所有区域共用一条恒为真的规则
+     *
+     * @param rows    需要高亮的行号（升序）
+     * @param lastCol 高亮的最后一列
+     */
+    private void applyHighlightFormatting(Sheet sheet, List<Integer> rows, int lastCol) {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        int start = rows.get(0);
+        int end = start;
+        for (int i = 1; i < rows.size(); i++) {
+            int row = rows.get(i);
+            if (row != end + 1) {
+                regions.add(new CellRangeAddress(start, end, 0, lastCol));
+                start = row;
+            }
+            end = row;
+        }
+        regions.add(new CellRangeAddress(start, end, 0, lastCol));
+
+        SheetConditionalFormatting formatting = sheet.getSheetConditionalFormatting();
+        ConditionalFormattingRule rule = formatting.createConditionalFormattingRule("TRUE");
+        PatternFormatting fill = rule.createPatternFormatting();
+        fill.setFillBackgroundColor(IndexedColors.LIGHT_ORANGE.getIndex());
+        fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+        formatting.addConditionalFormatting(regions.toArray(new CellRangeAddress[0]), rule);
+    }
+
     /**
      * 关闭工作簿，忽略异常
      */
@@ -1613,13 +2527,30 @@ public class ExcelService {
     }
 
     /**
-     * 应用列运算
+     * 编译后的列运算：按依赖顺序排列的公式、目标列和需要读取的列
      */
-    private void applyColumnCalculations(Sheet outputSheet, Map<String, Integer> outputColumnMap,
-                                        List<ColumnCalculation> columnCalculations, int headerRow) {
-        Row headerRowObj = outputSheet.getRow(headerRow);
-        if (headerRowObj == null) return;
+    static final class CompiledCalculations {
+        final ColumnExpression[] expressions;
+        final int[] targetColumns;
+        final int[] sourceColumns;  // 所有公式引用的列
+        final double[] values;      // 按输出列索引保存的本行数值，每行复用
+
+        CompiledCalculations(ColumnExpression[] expressions, int[] targetColumns, int[] sourceColumns,
+                             int columnCount) {
+            this.expressions = expressions;
+            this.targetColumns = targetColumns;
+            this.sourceColumns = sourceColumns;
+            this.values = new double[columnCount];
+        }
+    }
 
+    /**
+     * 编译列运算
+     * 目标列不存在时添加到表头；二元运算引用的列不存在或运算符不支持时跳过该运算，
+     * 公式语法错误、引用的列不存在或存在循环引用时输出错误信息并返回 null
+     */
+    CompiledCalculations compileColumnCalculations(Row headerRowObj, Map<String, Integer> outputColumnMap,
+                                                   List<ColumnCalculation> columnCalculations) {
         // 确保目标列存在，如果不存在则添加到表头
         Set<String> existingColumns = new HashSet<>();
         for (Cell cell : headerRowObj) {
@@ -1640,72 +2571,171 @@ public class ExcelService {
             }
         }
 
-        // 对每一行应用运算（从表头行的下一行开始）
-        int dataStartRow = headerRow + 1;
-        for (int i = dataStartRow; i <= outputSheet.getLastRowNum(); i++) {
-            Row row = outputSheet.getRow(i);
-            if (row == null) continue;
-
-            for (ColumnCalculation calc : columnCalculations) {
-                Integer col1Index = outputColumnMap.get(calc.column1);
-                Integer col2Index = outputColumnMap.get(calc.column2);
-                Integer targetIndex = outputColumnMap.get(calc.targetColumn);
-
-                if (col1Index != null && col2Index != null && targetIndex != null) {
-                    Double result = performColumnCalculation(row, col1Index, col2Index, calc.operator);
-                    if (result != null) {
-                        Cell targetCell = row.getCell(targetIndex);
-                        if (targetCell == null) {
-                            targetCell = row.createCell(targetIndex);
-                        }
-                        targetCell.setCellValue(result);
-                    }
+        // 列引用直接使用输出列索引作为槽位
+        ToIntFunction<String> slotOf = name -> outputColumnMap.getOrDefault(name, -1);
+        List<ColumnCalculation> compiledCalcs = new ArrayList<>();
+        List<ColumnExpression> compiled = new ArrayList<>();
+        for (ColumnCalculation calc : columnCalculations) {
+            ColumnExpression expression;
+            if (isFormula(calc)) {
+                try {
+                    expression = ColumnExpression.compile(calc.expression, slotOf);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("列运算 '" + calc.targetColumn + "' 的公式错误: " + e.getMessage());
+                    return null;
+                }
+            } else {
+                if (!outputColumnMap.containsKey(calc.column1) || !outputColumnMap.containsKey(calc.column2)) {
+                    continue;
+                }
+                expression = ColumnExpression.binary(calc.column1, calc.operator, calc.column2, slotOf);
+                if (expression == null) {
+                    continue;
                 }
             }
+            compiledCalcs.add(calc);
+            compiled.add(expression);
+        }
+
+        // 按依赖排序：公式排在它引用的其他运算之后；二元运算保持列表中的顺序，读取执行到它时的单元格值
+        int count = compiled.size();
+        int[] order = new int[count];
+        int[] state = new int[count];  // 0 未访问，1 访问中，2 已排序
+        int[] sorted = {0};
+        for (int c = 0; c < count; c++) {
+            if (!sortCalculation(c, compiledCalcs, compiled, state, order, sorted)) {
+                System.err.println("列运算存在循环引用: " + compiledCalcs.get(c).targetColumn);
+                return null;
+            }
+        }
+
+        ColumnExpression[] expressions = new ColumnExpression[count];
+        int[] targetColumns = new int[count];
+        Set<Integer> sourceColumns = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            expressions[i] = compiled.get(order[i]);
+            targetColumns[i] = outputColumnMap.get(compiledCalcs.get(order[i]).targetColumn);
+            for (String column : expressions[i].getColumns()) {
+                sourceColumns.add(outputColumnMap.get(column));
+            }
+        }
+        return new CompiledCalculations(expressions, targetColumns,
+                sourceColumns.stream().mapToInt(Integer::intValue).toArray(), headerRowObj.getLastCellNum());
+    }
+
+    /**
+     * 深度优先排序一个列运算（公式先排它引用的其他运算），发现循环引用时返回 false
+     * 二元运算不添加依赖，与原来一样按列表顺序执行：[A = B + C, B = D * E] 中 A 使用 B 的原值
+     */
+    private boolean sortCalculation(int c, List<ColumnCalculation> calcs, List<ColumnExpression> expressions,
+                                    int[] state, int[] order, int[] sorted) {
+        if (state[c] == 2) {
+            return true;
+        }
+        if (state[c] == 1) {
+            return false;
+        }
+        state[c] = 1;
+        Set<String> columns = isFormula(calcs.get(c)) ? expressions.get(c).getColumns() : Collections.emptySet();
+        for (int d = 0; d < calcs.size(); d++) {
+            if (d != c && columns.contains(calcs.get(d).targetColumn)
+                    && !sortCalculation(d, calcs, expressions, state, order, sorted)) {
+                return false;
+            }
         }
+        state[c] = 2;
+        order[sorted[0]++] = c;
+        return true;
+    }
+
+    private static boolean isFormula(ColumnCalculation calc) {
+        return calc.expression != null && !calc.expression.trim().isEmpty();
     }
 
     /**
-     * 执行列运算
+     * 对一行应用列运算
+     * 先读取公式引用的列，再按依赖顺序求值；结果为空时不写入，后续运算读取到的仍是单元格原值
      */
-    private Double performColumnCalculation(Row row, int col1Index, int col2Index, String operator) {
-        Cell cell1 = row.getCell(col1Index);
-        Cell cell2 = row.getCell(col2Index);
+    void applyColumnCalculations(Row row, CompiledCalculations calculations) {
+        double[] values = calculations.values;
+        for (int col : calculations.sourceColumns) {
+            values[col] = getNumericValue(row.getCell(col));
+        }
 
-        if (cell1 == null || cell2 == null) {
-            return null;
+        for (int i = 0; i < calculations.expressions.length; i++) {
+            double result = calculations.expressions[i].evaluate(values);
+            if (Double.isNaN(result)) {
+                continue;
+            }
+            int targetIndex = calculations.targetColumns[i];
+            Cell targetCell = row.getCell(targetIndex);
+            if (targetCell == null) {
+                targetCell = row.createCell(targetIndex);
+            }
+            targetCell.setCellValue(result);
+            values[targetIndex] = result;
         }
+    }
 
-        Double val1 = getNumericValue(cell1);
-        Double val2 = getNumericValue(cell2);
+    /**
+     * 对直通输出中的一行应用列运算
+     * 已修改的单元格读取新值，其余单元格读取主表中的原值，规则与 applyColumnCalculations(Row, ...) 相同
+     */
+    private void applyColumnCalculations(SheetPassthroughWriter.XmlRow row, Row sourceRow,
+                                         CompiledCalculations calculations) {
+        double[] values = calculations.values;
+        for (int col : calculations.sourceColumns) {
+            SheetPassthroughWriter.XmlCell cell = row.getCell(col);
+            values[col] = cell != null && cell.isModified() ? cell.getNewNumericValue()
+                    : getNumericValue(sourceRow != null ? sourceRow.getCell(col) : null);
+        }
 
-        if (val1 == null || val2 == null) {
-            return null;
+        for (int i = 0; i < calculations.expressions.length; i++) {
+            double result = calculations.expressions[i].evaluate(values);
+            if (Double.isNaN(result)) {
+                continue;
+            }
+            int targetIndex = calculations.targetColumns[i];
+            row.getOrCreateCell(targetIndex).setNumber(result);
+            values[targetIndex] = result;
         }
+    }
 
-        switch (operator) {
-            case "add":
-                return val1 + val2;
-            case "subtract":
-                return val1 - val2;
-            case "multiply":
-                return val1 * val2;
-            case "divide":
-                if (val2 == 0.0) {
-                    return null;  // 避免除以零
-                }
-                return val1 / val2;
-            default:
-                return null;
+    /**
+     * 设置直通输出中单元格的值，规则与 setCellValue 相同
+     */
+    private void setXmlCellValue(SheetPassthroughWriter.XmlCell cell, Object value, StyleCache styleCache,
+                                 XSSFWorkbook workbook) {
+        if (value == null) {
+            cell.setBlank();
+            return;
+        }
+
+        if (value instanceof String) {
+            String stringValue = (String) value;
+            if (stringValue.contains("\n") || stringValue.contains("\r")) {
+                CellStyle cellStyle = workbook.getCellStyleAt(cell.getStyle());
+                cell.setStyle(wrapTextStyle(styleCache, workbook, cellStyle).getIndex());
+            }
+            cell.setString(stringValue);
+        } else if (value instanceof Number) {
+            cell.setNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            cell.setBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            cell.setNumber(DateUtil.getExcelDate((Date) value, workbook.isDate1904()));
+            cell.setStyle(dateStyle(styleCache, workbook).getIndex());
+        } else {
+            cell.setString(value.toString());
         }
     }
 
     /**
-     * 获取单元格的数值
+     * 获取单元格的数值，单元格为空或不是数字时返回 NaN
      */
-    private Double getNumericValue(Cell cell) {
+    private double getNumericValue(Cell cell) {
         if (cell == null) {
-            return null;
+            return Double.NaN;
         }
 
         switch (cell.getCellType()) {
@@ -1715,16 +2745,16 @@ public class ExcelService {
                 try {
                     String str = cell.getStringCellValue().trim();
                     if (str.isEmpty()) {
-                        return null;
+                        return Double.NaN;
                     }
                     return Double.parseDouble(str);
                 } catch (NumberFormatException e) {
-                    return null;
+                    return Double.NaN;
                 }
             case BLANK:
-                return null;
+                return Double.NaN;
             default:
-                return null;
+                return Double.NaN;
         }
     }
 
@@ -1735,6 +2765,66 @@ public class ExcelService {
             } catch (IOException e) {
                 // Ignore
             }
+            if (workbook instanceof SXSSFWorkbook) {
+                // 删除流式写出的临时文件
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+    }
+
+    /**
+     * 创建流式输出工作簿（xlsx）
+     * 内存中只保留最近 OUTPUT_WINDOW_SIZE 行，更早的行压缩写入临时文件，
+     * 输出行数再多内存占用也保持不变
+     */
+    private SXSSFWorkbook createStreamingWorkbook() {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(OUTPUT_WINDOW_SIZE) {
+            @Override
+            protected ZipArchiveOutputStream createArchiveOutputStream(OutputStream out) {
+                // 写出时按设置的压缩级别并行压缩
+                ZipArchiveOutputStream zip = new ParallelDeflateZipOutputStream(out, outputCompressionLevel);
+                zip.setUseZip64(zip64Mode);
+                return zip;
+            }
+        };
+        workbook.setCompressTempFiles(true);
+        return workbook;
+    }
+
+    /**
+     * 写出工作簿
+     * xlsx 按 outputCompressionLevel 压缩，大的包部件并行压缩（XSSFWorkbook 直接使用传入的 zip 输出流，
+     * SXSSFWorkbook 在 createStreamingWorkbook 中设置）；xls 直接写出。
+     * 每写出一块检查一次取消，取消时删除未写完的输出文件
+     */
+    private void writeWorkbook(Workbook workbook, File outputFile, ProgressTracker progress) throws IOException {
+        FileOutputStream fileOut = new FileOutputStream(outputFile);
+        OutputStream out = new BufferedOutputStream(new FilterOutputStream(fileOut) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                progress.checkCancelled();
+                out.write(b, off, len);
+            }
+        }, 1 << 16);
+        if (workbook instanceof XSSFWorkbook) {
+            out = new ParallelDeflateZipOutputStream(out, outputCompressionLevel);
+        }
+        ExcelEvents.WorkbookWriteEvent event = ExcelEvents.workbookWrite(outputFile,
+                workbook instanceof SXSSFWorkbook ? "xlsx 流式" : workbook instanceof XSSFWorkbook ? "xlsx" : "xls",
+                outputCompressionLevel);
+        try (OutputStream target = out) {
+            workbook.write(target);
+        } catch (IOException | RuntimeException e) {
+            if (progress.isCancelled()) {
+                fileOut.close();
+                if (!outputFile.delete()) {
+                    outputFile.deleteOnExit();
+                }
+            }
+            throw e;
+        }
+        if (event != null) {
+            event.end(outputFile);
         }
     }
 
@@ -1750,18 +2840,28 @@ public class ExcelService {
     public boolean exportSelectedColumns(File inputFile, List<String> columnsToExport, File outputFile) {
         Workbook inputWorkbook = null;
         Workbook outputWorkbook = null;
+        ProgressTracker progress = new ProgressTracker("导出指定列", progressListener, cancellationToken);
 
         try {
             // 读取工作簿
+            progress.begin(ProgressListener.Phase.LOAD, -1);
             inputWorkbook = readWorkbook(inputFile);
+            progress.end(1);
             if (inputWorkbook == null) {
                 System.err.println("无法读取 Excel 文件");
                 return false;
             }
 
-            outputWorkbook = inputWorkbook.getClass().newInstance();
+            // xlsx 流式写出，xls 仍使用 HSSF
+            Sheet outputSheet;
+            if (inputWorkbook instanceof XSSFWorkbook) {
+                outputWorkbook = createStreamingWorkbook();
+                outputSheet = outputWorkbook.createSheet();
+            } else {
+                outputWorkbook = inputWorkbook.getClass().newInstance();
+                outputSheet = outputWorkbook.createSheet();
+            }
             Sheet inputSheet = inputWorkbook.getSheetAt(0);
-            Sheet outputSheet = outputWorkbook.createSheet();
 
             // 读取表头
             Row header = inputSheet.getRow(0);
@@ -1795,12 +2895,19 @@ public class ExcelService {
                 }
             }
 
-            // 复制数据行
+            // 复制数据行，写入时记录列宽
+            ColumnWidthEstimator widthEstimator = new ColumnWidthEstimator();
+            widthEstimator.trackRow(outputHeader);
+            int rowCount = inputSheet.getLastRowNum();
+            int outputRowCount = 0;
+            progress.begin(ProgressListener.Phase.WRITE, rowCount);
             for (int i = 1; i <= inputSheet.getLastRowNum(); i++) {
+                progress.update(i - 1);
                 Row inputRow = inputSheet.getRow(i);
                 if (inputRow == null) continue;
 
                 Row outputRow = outputSheet.createRow(i);
+                outputRowCount++;
                 int outColIdx = 0;
                 for (String colName : columnsToExport) {
                     Integer sourceColIndex = columnMap.get(colName);
@@ -1810,27 +2917,35 @@ public class ExcelService {
                         copyCellValue(sourceCell, newCell);
                     }
                 }
+                widthEstimator.trackRow(outputRow);
             }
+            progress.end(rowCount);
+            progress.report().setCount(PerformanceReport.Count.INPUT_ROWS, rowCount);
+            progress.report().setCount(PerformanceReport.Count.OUTPUT_ROWS, outputRowCount);
 
-            // 自动调整列宽
-            for (int i = 0; i < outputHeader.getLastCellNum(); i++) {
-                outputSheet.autoSizeColumn(i);
-            }
+            // 按记录的宽度调整列宽
+            widthEstimator.applyTo(outputSheet, colIndex);
 
             // 写入输出文件
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                outputWorkbook.write(fos);
-            }
+            progress.begin(ProgressListener.Phase.SAVE, -1);
+            writeWorkbook(outputWorkbook, outputFile, progress);
+            progress.end(1);
+            progress.report().markSucceeded();
 
             return true;
 
         } catch (Exception e) {
+            if (progress.isCancelled()) {
+                System.err.println("导出 Excel 文件已取消");
+                return false;
+            }
             System.err.println("导出 Excel 文件时出错: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
             closeQuietly(inputWorkbook);
             closeQuietly(outputWorkbook);
+            finishReport(progress, outputFile);
         }
     }
 
@@ -1850,14 +2965,20 @@ public class ExcelService {
                                            int templateHeaderRow, int outboundHeaderRow,
                                            String taxClassification) {
         Workbook templateWorkbook = null;
-        Workbook outboundWorkbook = null;
         Workbook outputWorkbook = null;
+        ProgressTracker progress = new ProgressTracker("电子发票处理", progressListener, cancellationToken);
 
         try {
-            // 读取工作簿
-            templateWorkbook = readWorkbook(templateFile);
-            outboundWorkbook = readWorkbook(outboundFile);
-            if (templateWorkbook == null || outboundWorkbook == null) {
+            progress.begin(ProgressListener.Phase.LOAD, -1);
+
+            // 并行读取模板工作簿和出库表（出库表只读，只保留需要的列）
+            Future<Workbook> templateFuture = InputLoader.submit(() -> readWorkbook(templateFile));
+            Future<LookupTable> outboundFuture = InputLoader.submit(() -> loadLookupTable(outboundFile, 0,
+                    outboundHeaderRow, Arrays.asList("商品名称", "商品编号", "数量", "定价"), progress));
+            templateWorkbook = InputLoader.await(templateFuture, templateFile, progress);
+            LookupTable outboundTable = InputLoader.await(outboundFuture, outboundFile, progress);
+            progress.checkCancelled();
+            if (templateWorkbook == null || outboundTable == null) {
                 System.err.println("无法读取 Excel 文件");
                 return false;
             }
@@ -1866,20 +2987,18 @@ public class ExcelService {
 
             // 获取sheet页
             Sheet templateSheet = templateWorkbook.getSheetAt(0);
-            Sheet outboundSheet = outboundWorkbook.getSheetAt(0);
 
             // 读取表头
             Row templateHeader = templateSheet.getRow(templateHeaderRow);
-            Row outboundHeader = outboundSheet.getRow(outboundHeaderRow);
 
-            if (templateHeader == null || outboundHeader == null) {
+            if (templateHeader == null) {
                 System.err.println("无法读取表头");
                 return false;
             }
 
             // 获取列名映射
             Map<String, Integer> templateColumnMap = getColumnMapping(templateHeader);
-            Map<String, Integer> outboundColumnMap = getColumnMapping(outboundHeader);
+            Map<String, Integer> outboundColumnMap = outboundTable.getColumnMap();
 
             // 验证必要的列是否存在
             if (!templateColumnMap.containsKey("项目名称")) {
@@ -1909,8 +3028,12 @@ public class ExcelService {
             }
 
             // 复制模板到输出工作簿
-            copyWorkbook(templateWorkbook, outputWorkbook);
+            StyleCache styleCache = new StyleCache(outputWorkbook);
+            PerformanceReport.Timing copyTiming = progress.report().start("COPY_WORKBOOK", "复制工作簿", true);
+            copyWorkbook(templateWorkbook, outputWorkbook, styleCache, progress);
+            progress.report().stop(copyTiming);
             Sheet outputSheet = outputWorkbook.getSheetAt(0);
+            progress.end(2);
 
             // 清空模板中的原有数据行（每次处理都清空）
             int dataStartRow = templateHeaderRow + 1;
@@ -1937,7 +3060,6 @@ public class ExcelService {
             }
 
             // 处理出库数据
-            int outboundDataStartRow = outboundHeaderRow + 1;
             int newRowNum = outputSheet.getLastRowNum() + 1;  // 新行从最后开始
 
             // 创建共享的样式对象，避免在循环中重复创建（防止内存泄漏）
@@ -1957,23 +3079,15 @@ public class ExcelService {
             amountStyle.setDataFormat(dataFormat.getFormat("0.00"));
             amountStyle.setFillPattern(FillPatternType.NO_FILL);
 
-            for (int i = outboundDataStartRow; i <= outboundSheet.getLastRowNum(); i++) {
-                Row outboundRow = outboundSheet.getRow(i);
-                if (outboundRow == null) continue;
-
+            progress.begin(ProgressListener.Phase.WRITE, outboundTable.getRowCount());
+            for (int rowId = 0; rowId < outboundTable.getRowCount(); rowId++) {
+                progress.update(rowId);
                 // 获取商品名称（使用商品名称或商品编号作为匹配键）
-                String productName = "";
-                Integer productNameCol = outboundColumnMap.get("商品名称");
-                if (productNameCol != null) {
-                    productName = getCellValueAsString(outboundRow.getCell(productNameCol));
-                }
+                String productName = outboundTable.getValueAsString(rowId, "商品名称");
 
                 // 如果商品名称为空，尝试使用商品编号
                 if (productName == null || productName.trim().isEmpty()) {
-                    Integer productCodeCol = outboundColumnMap.get("商品编号");
-                    if (productCodeCol != null) {
-                        productName = getCellValueAsString(outboundRow.getCell(productCodeCol));
-                    }
+                    productName = outboundTable.getValueAsString(rowId, "商品编号");
                 }
 
                 if (productName == null || productName.trim().isEmpty()) {
@@ -1982,21 +3096,8 @@ public class ExcelService {
                 productName = productName.trim();
 
                 // 获取数量和单价（使用定价列）
-                Integer quantityCol = outboundColumnMap.get("数量");
-                Integer priceCol = outboundColumnMap.get("定价");
-
-                Double quantity = null;
-                Double price = null;
-
-                if (quantityCol != null) {
-                    Cell qtyCell = outboundRow.getCell(quantityCol);
-                    quantity = getNumericValueForInvoice(qtyCell);
-                }
-
-                if (priceCol != null) {
-                    Cell priceCell = outboundRow.getCell(priceCol);
-                    price = getNumericValueForInvoice(priceCell);
-                }
+                Double quantity = outboundTable.getNumber(rowId, "数量");
+                Double price = outboundTable.getNumber(rowId, "定价");
 
                 if (quantity == null || price == null) {
                     continue;  // 跳过没有数量或单价的行
@@ -2033,7 +3134,7 @@ public class ExcelService {
                                 Cell formatCell = formatRow.getCell(col);
                                 if (formatCell != null) {
                                     Cell newCell = newRow.createCell(col);
-                                    copyCell(formatCell, newCell, outputWorkbook);
+                                    copyCell(formatCell, newCell, outputWorkbook, styleCache);
                                     newCell.setBlank();  // 清空值但保留格式
                                 }
                             }
@@ -2041,13 +3142,16 @@ public class ExcelService {
                     }
 
                     // 设置数据行背景色为无填充（前3行表头保持原样）
-                    // 注意：copyCell 已经为新行创建了新样式，只需要修改填充模式
+                    // 注意：copyCell 得到的是共用样式，不能直接修改，改用派生的无填充样式
                     for (int col = 0; col < templateHeader.getLastCellNum(); col++) {
                         Cell cell = newRow.getCell(col);
                         if (cell != null) {
                             CellStyle cellStyle = cell.getCellStyle();
                             if (cellStyle != null) {
-                                cellStyle.setFillPattern(FillPatternType.NO_FILL);
+                                cell.setCellStyle(styleCache.derive("noFill", cellStyle, (style, base) -> {
+                                    style.cloneStyleFrom(base);
+                                    style.setFillPattern(FillPatternType.NO_FILL);
+                                }));
                             }
                         }
                     }
@@ -2138,24 +3242,34 @@ public class ExcelService {
                 }
             }
 
+            progress.end(outboundTable.getRowCount());
+            progress.report().setCount(PerformanceReport.Count.INPUT_ROWS, outboundTable.getRowCount());
+            progress.report().setCount(PerformanceReport.Count.OUTPUT_ROWS,
+                    Math.max(0, outputSheet.getLastRowNum() - templateHeaderRow));
+
             // 冻结前3行
             outputSheet.createFreezePane(0, 3);
 
             // 写入输出文件
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                outputWorkbook.write(fos);
-            }
+            progress.begin(ProgressListener.Phase.SAVE, -1);
+            writeWorkbook(outputWorkbook, outputFile, progress);
+            progress.end(1);
+            progress.report().markSucceeded();
 
             return true;
 
         } catch (Exception e) {
+            if (progress.isCancelled()) {
+                System.err.println("处理电子发票已取消");
+                return false;
+            }
             System.err.println("处理电子发票时出错: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
             closeQuietly(templateWorkbook);
-            closeQuietly(outboundWorkbook);
             closeQuietly(outputWorkbook);
+            finishReport(progress, outputFile);
         }
     }
 
@@ -0,0 +1,489 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 外部排序归并关联（表2超出内存预算时使用）
+ * 表2按行流式读取，不在内存中保留：每个关联列组的键写入排序记录，要合并的列按行 id 写入临时数据文件。
+ * 表1的键同样写入排序记录。记录在内存中攒满一批后排序写成一个顺串文件，
+ * 最后 k 路归并所有顺串，按 (组, 键) 把表1行与该键在表2中的第一行对应起来，得到每个表1行在各组中的候选表2行。
+ * 候选行的分配（组的优先级、每个表2行只用一次）由调用方完成，与内存中的哈希关联结果相同。
+ * 所有临时文件在 close 时删除。
+ */
+final class ExternalJoin implements StreamingSheetReader.RowHandler, Closeable {
+
+    // 表2的数据记录在前，相同键的表1记录在后
+    private static final byte SIDE_TABLE2 = 0;
+    private static final byte SIDE_TABLE1 = 1;
+
+    // 单个顺串在内存中累积的记录字节数上限（估算值）
+    private static final long RUN_BUFFER_BYTES = 32L * 1024 * 1024;
+    // 每条记录除键以外的估算开销（对象头、数组头、引用）
+    private static final int RECORD_OVERHEAD = 64;
+
+    // 单元格类型标记（与 LookupTable 一致）
+    private static final byte ABSENT = 0;
+    private static final byte BLANK = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+    private static final byte DATE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte FORMULA = 6;
+
+    /**
+     * 排序记录：(组, 键, 来源, 行)
+     */
+    private static final class Record {
+        final int group;
+        final byte[] key;
+        final byte side;
+        final int id;
+
+        Record(int group, byte[] key, byte side, int id) {
+            this.group = group;
+            this.key = key;
+            this.side = side;
+            this.id = id;
+        }
+    }
+
+    private static final Comparator<Record> ORDER = (a, b) -> {
+        if (a.group != b.group) {
+            return Integer.compare(a.group, b.group);
+        }
+        int byKey = compareBytes(a.key, b.key);
+        if (byKey != 0) {
+            return byKey;
+        }
+        if (a.side != b.side) {
+            return Byte.compare(a.side, b.side);
+        }
+        return Integer.compare(a.id, b.id);
+    };
+
+    private final File directory;
+    private final int headerRow;
+    private final List<List<String>> groupColumns;
+    private final List<String> mergeColumns;
+
+    // 表2表头
+    private final Map<String, Integer> columnMap = new HashMap<>();
+    private boolean headerFound;
+    private int[][] groupSourceColumns;
+    private int[] mergeSourceColumns;
+    private final Map<String, Integer> mergeSlots = new HashMap<>();
+
+    // 表2要合并的列：按行 id 顺序写入数据文件，offsets 记录每行的起始位置
+    private File payloadFile;
+    private DataOutputStream payloadOut;
+    private long payloadSize;
+    private long[] offsets = new long[1024];
+    private int table2RowCount;
+    private RandomAccessFile payloadReader;
+
+    // 排序记录缓冲区和已写出的顺串
+    private final List<Record> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private final List<File> runs = new ArrayList<>();
+    private final JoinIndex.Key key = new JoinIndex.Key();
+
+    /**
+     * @param headerRow    表2表头行索引（从0开始）
+     * @param groupColumns 各关联列组中表2的列名（组下标即排序记录中的组号）
+     * @param mergeColumns 要从表2合并的列名
+     */
+    ExternalJoin(int headerRow, List<List<String>> groupColumns, String[] mergeColumns) throws IOException {
+        this.headerRow = headerRow;
+        this.groupColumns = groupColumns;
+        this.mergeColumns = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(mergeColumns)));
+        this.directory = Files.createTempDirectory("excel-join").toFile();
+        this.payloadFile = new File(directory, "table2.dat");
+        this.payloadOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(payloadFile), 1 << 16));
+    }
+
+    @Override
+    public boolean handleRow(int rowNum, StreamingSheetReader.RowValues row) {
+        if (rowNum < headerRow) {
+            return true;
+        }
+        if (rowNum == headerRow) {
+            readHeader(row);
+            return true;
+        }
+        if (!headerFound) {
+            return false;
+        }
+
+        try {
+            int rowId = table2RowCount++;
+            for (int group = 0; group < groupSourceColumns.length; group++) {
+                key.clear();
+                for (int col : groupSourceColumns[group]) {
+                    key.addValue(row.get(col));
+                }
+                addRecord(new Record(group, key.toBytes(), SIDE_TABLE2, rowId));
+            }
+            writePayload(rowId, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private void readHeader(StreamingSheetReader.RowValues row) {
+        headerFound = true;
+        for (int col = 0; col < row.getLastCellNum(); col++) {
+            if (!row.contains(col)) continue;
+            String columnName = row.getAsString(col);
+            if (!columnName.isEmpty()) {
+                columnMap.put(columnName, col);
+            }
+        }
+
+        BitSet filter = new BitSet();
+        groupSourceColumns = new int[groupColumns.size()][];
+        for (int group = 0; group < groupColumns.size(); group++) {
+            List<String> names = groupColumns.get(group);
+            groupSourceColumns[group] = new int[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                groupSourceColumns[group][i] = sourceColumn(names.get(i), filter);
+            }
+        }
+        mergeSourceColumns = new int[mergeColumns.size()];
+        for (int slot = 0; slot < mergeColumns.size(); slot++) {
+            mergeSourceColumns[slot] = sourceColumn(mergeColumns.get(slot), filter);
+            mergeSlots.put(mergeColumns.get(slot), slot);
+        }
+        row.setColumnFilter(filter);
+    }
+
+    private int sourceColumn(String name, BitSet filter) {
+        Integer col = columnMap.get(name);
+        if (col == null) {
+            return -1;
+        }
+        filter.set(col);
+        return col;
+    }
+
+    /**
+     * 表2是否读到了表头行
+     */
+    boolean isHeaderFound() {
+        return headerFound;
+    }
+
+    /**
+     * 表2数据行数（不含表头）
+     */
+    int getTable2RowCount() {
+        return table2RowCount;
+    }
+
+    /**
+     * 表2表头列名到源列索引的映射
+     */
+    Map<String, Integer> getColumnMap() {
+        return columnMap;
+    }
+
+    /**
+     * 添加表1的一行关联键
+     *
+     * @param group   组号（与构造时 groupColumns 的下标对应）
+     * @param key     表1该行在此组的关联键
+     * @param ordinal 表1行的序号（候选结果按此序号返回）
+     */
+    void addTable1Key(int group, JoinIndex.Key key, int ordinal) throws IOException {
+        addRecord(new Record(group, key.toBytes(), SIDE_TABLE1, ordinal));
+    }
+
+    /**
+     * 归并所有记录，计算表1各行在各组中的候选表2行（该键在表2中的第一行，没有时为 -1）
+     *
+     * @param table1Count 表1行数（addTable1Key 使用的最大序号 + 1）
+     * @param progress    按已归并的表1记录数（换算为行数）上报进度、检查取消
+     * @return candidates[组][表1行序号]
+     */
+    int[][] match(int table1Count, ProgressTracker progress) throws IOException {
+        int groupCount = groupColumns.size();
+        payloadOut.close();
+        payloadOut = null;
+        offsets = Arrays.copyOf(offsets, table2RowCount + 1);
+        offsets[table2RowCount] = payloadSize;
+
+        int[][] candidates = new int[groupCount][table1Count];
+        for (int[] groupCandidates : candidates) {
+            Arrays.fill(groupCandidates, -1);
+        }
+
+        Record current = null;
+        int currentRow = -1;
+        long table1Records = 0;
+        try (RunMerger merger = new RunMerger()) {
+            Record record;
+            while ((record = merger.next()) != null) {
+                if (current == null || current.group != record.group
+                        || !Arrays.equals(current.key, record.key)) {
+                    current = record;
+                    // 排序保证同一键的表2记录在前、行 id 从小到大，第一条即保留的行
+                    currentRow = record.side == SIDE_TABLE2 ? record.id : -1;
+                }
+                if (record.side == SIDE_TABLE1) {
+                    candidates[record.group][record.id] = currentRow;
+                    progress.update(++table1Records / groupCount);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 读取表2某行要合并的列的值（值类型与 ExcelService#getCellValue 一致）
+     */
+    Object getValue(int rowId, String columnName) throws IOException {
+        Integer slot = mergeSlots.get(columnName);
+        if (slot == null) {
+            return null;
+        }
+        if (payloadReader == null) {
+            payloadReader = new RandomAccessFile(payloadFile, "r");
+        }
+        byte[] bytes = new byte[(int) (offsets[rowId + 1] - offsets[rowId])];
+        payloadReader.seek(offsets[rowId]);
+        payloadReader.readFully(bytes);
+
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < slot; i++) {
+            skipValue(data);
+        }
+        return readValue(data);
+    }
+
+    private void writePayload(int rowId, StreamingSheetReader.RowValues row) throws IOException {
+        if (rowId >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[rowId] = payloadSize;
+        for (int col : mergeSourceColumns) {
+            if (!row.contains(col)) {
+                payloadOut.writeByte(ABSENT);
+                payloadSize += 1;
+                continue;
+            }
+            Object value = row.get(col);
+            if (value == null) {
+                payloadOut.writeByte(BLANK);
+                payloadSize += 1;
+            } else if (row.isFormula(col)) {
+                payloadSize += writeText(FORMULA, value.toString());
+            } else if (value instanceof Double) {
+                payloadOut.writeByte(NUMBER);
+                payloadOut.writeDouble((Double) value);
+                payloadSize += 9;
+            } else if (value instanceof Date) {
+                payloadOut.writeByte(DATE);
+                payloadOut.writeLong(((Date) value).getTime());
+                payloadSize += 9;
+            } else if (value instanceof Boolean) {
+                payloadOut.writeByte(BOOLEAN);
+                payloadOut.writeBoolean((Boolean) value);
+                payloadSize += 2;
+            } else {
+                payloadSize += writeText(STRING, value.toString());
+            }
+        }
+    }
+
+    private int writeText(byte kind, String text) throws IOException {
+        payloadOut.writeByte(kind);
+        payloadOut.writeInt(text.length());
+        payloadOut.writeChars(text);
+        return 5 + text.length() * 2;
+    }
+
+    private static void skipValue(ByteBuffer data) {
+        byte kind = data.get();
+        switch (kind) {
+            case NUMBER:
+            case DATE:
+                data.position(data.position() + 8);
+                break;
+            case BOOLEAN:
+                data.position(data.position() + 1);
+                break;
+            case STRING:
+            case FORMULA:
+                int length = data.getInt();
+                data.position(data.position() + length * 2);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Object readValue(ByteBuffer data) {
+        byte kind = data.get();
+        switch (kind) {
+            case NUMBER:
+                return data.getDouble();
+            case DATE:
+                return new Date(data.getLong());
+            case BOOLEAN:
+                return data.get() != 0;
+            case STRING:
+            case FORMULA:
+                char[] chars = new char[data.getInt()];
+                data.asCharBuffer().get(chars);
+                return new String(chars);
+            default:
+                return null;
+        }
+    }
+
+    private void addRecord(Record record) throws IOException {
+        buffer.add(record);
+        bufferBytes += record.key.length + RECORD_OVERHEAD;
+        if (bufferBytes >= RUN_BUFFER_BYTES) {
+            flushRun();
+        }
+    }
+
+    /**
+     * 将缓冲区中的记录排序后写成一个顺串文件
+     */
+    private void flushRun() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(ORDER);
+        File run = new File(directory, "run-" + runs.size() + ".dat");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (Record record : buffer) {
+                out.writeInt(record.group);
+                out.writeInt(record.key.length);
+                out.write(record.key);
+                out.writeByte(record.side);
+                out.writeInt(record.id);
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    /**
+     * k 路归并所有顺串
+     */
+    private final class RunMerger implements Closeable {
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Object[]> heap = new PriorityQueue<>(
+                (a, b) -> ORDER.compare((Record) a[0], (Record) b[0]));
+
+        RunMerger() throws IOException {
+            flushRun();
+            for (File run : runs) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(run), 1 << 16));
+                inputs.add(in);
+                Record first = read(in);
+                if (first != null) {
+                    heap.add(new Object[]{first, in});
+                }
+            }
+        }
+
+        Record next() throws IOException {
+            Object[] head = heap.poll();
+            if (head == null) {
+                return null;
+            }
+            DataInputStream in = (DataInputStream) head[1];
+            Record following = read(in);
+            if (following != null) {
+                heap.add(new Object[]{following, in});
+            }
+            return (Record) head[0];
+        }
+
+        private Record read(DataInputStream in) throws IOException {
+            int group;
+            try {
+                group = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            byte side = in.readByte();
+            int id = in.readInt();
+            return new Record(group, bytes, side, id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream in : inputs) {
+                in.close();
+            }
+        }
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * 删除所有临时文件
+     */
+    @Override
+    public void close() {
+        try {
+            if (payloadOut != null) {
+                payloadOut.close();
+            }
+            if (payloadReader != null) {
+                payloadReader.close();
+            }
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
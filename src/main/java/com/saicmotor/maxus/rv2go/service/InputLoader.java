@@ -0,0 +1,86 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 输入文件并行加载
+ * 合并等操作的多个输入文件相互独立，提交到有界线程池并行解析，
+ * 总加载时间接近最大文件的解析时间，而不是所有文件之和。
+ */
+final class InputLoader {
+
+    // 单次操作最多 3 个输入文件，线程数不超过 CPU 核数
+    private static final int THREADS = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors()));
+
+    // 等待加载结果时检查取消的间隔
+    private static final long POLL_MILLIS = 100;
+
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "excel-loader-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    private InputLoader() {
+    }
+
+    /**
+     * 提交一个加载任务
+     */
+    static <T> Future<T> submit(Callable<T> task) {
+        return EXECUTOR.submit(task);
+    }
+
+    /**
+     * 等待加载结果，任务异常时输出该文件的错误信息并返回 null（操作已取消时不输出）
+     * 每 POLL_MILLIS 毫秒醒来检查一次取消：已取消时中断加载任务（工作簿读取在 sheet 页之间停止，
+     * 未开始的 sheet 页解析任务一并取消）并抛出 CancellationException，不等待整个工作簿解析完成
+     *
+     * @param future   加载任务
+     * @param file     对应的输入文件（用于错误信息）
+     * @param progress 所属操作的进度（检查取消）
+     */
+    static <T> T await(Future<T> future, File file, ProgressTracker progress) {
+        try {
+            while (true) {
+                try {
+                    return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (progress.isCancelled()) {
+                        future.cancel(true);
+                        progress.checkCancelled();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            System.err.println("读取文件被中断: " + file.getAbsolutePath());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (!(cause instanceof CancellationException)) {
+                // 操作已取消时由调用方统一处理，不输出错误信息
+                System.err.println("读取文件失败: " + file.getAbsolutePath() + " - " + cause.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,339 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 关联键索引（关联键 -> 行 id）
+ * 替代 "值|||值|||" 拼接字符串 + HashMap 的做法：关联键按列保存为带类型的键片段
+ * （数值存 double 的位模式、日期存秒、布尔存 0/1、文本直接引用原字符串），
+ * 索引用开放寻址的基本类型数组保存，哈希相同时逐个片段比对。
+ * 构建和查找都复用同一个 Key 缓冲区，不为每行创建字符串或包装对象。
+ * <p>
+ * 匹配规则与原来按 getCellValueAsString 拼接字符串比较一致：
+ * 数值 12345 与文本 "12345.0"、布尔 true 与文本 "true"、空单元格与空文本都视为相等；
+ * 不同的是各片段单独比较，值中包含 "|||" 时不会再与其他列的值拼接后误匹配。
+ */
+final class JoinIndex {
+
+    // 键片段类型
+    private static final byte TEXT = 0;
+    private static final byte NUMBER = 1;
+    private static final byte DATE = 2;
+    private static final byte BOOLEAN = 3;
+
+    /**
+     * 关联键缓冲区（可复用，每行调用 clear 后按列依次添加片段）
+     */
+    static final class Key {
+        private byte[] kinds = new byte[4];
+        private long[] bits = new long[4];
+        private String[] texts = new String[4];
+        private int size;
+        private int hash = 1;
+
+        void clear() {
+            Arrays.fill(texts, 0, size, null);
+            size = 0;
+            hash = 1;
+        }
+
+        /**
+         * 添加数值片段
+         */
+        void addNumber(double value) {
+            add(NUMBER, Double.doubleToLongBits(value), null);
+        }
+
+        /**
+         * 添加日期片段（按秒比较，与 Date#toString 的精度一致）
+         */
+        void addDate(long millis) {
+            add(DATE, Math.floorDiv(millis, 1000L), null);
+        }
+
+        void addBoolean(boolean value) {
+            add(BOOLEAN, value ? 1 : 0, null);
+        }
+
+        /**
+         * 添加文本片段，null 按空文本处理
+         * 与数值、布尔值的字符串形式完全相同的文本按对应类型保存，保持与字符串比较时一致的匹配结果
+         */
+        void addText(String text) {
+            if (text == null) {
+                text = "";
+            }
+            if ("true".equals(text) || "false".equals(text)) {
+                addBoolean("true".equals(text));
+            } else if (looksLikeDouble(text)) {
+                double value = Double.parseDouble(text);
+                if (Double.toString(value).equals(text)) {
+                    addNumber(value);
+                } else {
+                    add(TEXT, 0, text);
+                }
+            } else {
+                add(TEXT, 0, text);
+            }
+        }
+
+        /**
+         * 按 ExcelService#getCellValue 返回的值类型添加片段
+         */
+        void addValue(Object value) {
+            if (value instanceof Double) {
+                addNumber((Double) value);
+            } else if (value instanceof Date) {
+                addDate(((Date) value).getTime());
+            } else if (value instanceof Boolean) {
+                addBoolean((Boolean) value);
+            } else {
+                addText(value != null ? value.toString() : null);
+            }
+        }
+
+        private void add(byte kind, long value, String text) {
+            if (size == kinds.length) {
+                int newLength = size * 2;
+                kinds = Arrays.copyOf(kinds, newLength);
+                bits = Arrays.copyOf(bits, newLength);
+                texts = Arrays.copyOf(texts, newLength);
+            }
+            kinds[size] = kind;
+            bits[size] = value;
+            texts[size] = text;
+            size++;
+            int partHash = text != null ? text.hashCode() : Long.hashCode(value);
+            hash = 31 * hash + (kind * 0x9E3779B9 ^ partHash);
+        }
+
+        /**
+         * 编码为字节序列（用于外部排序），两个键相等当且仅当编码相同
+         */
+        byte[] toBytes() {
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                length += kinds[i] == TEXT ? 5 + texts[i].length() * 2 : 9;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (int i = 0; i < size; i++) {
+                buffer.put(kinds[i]);
+                if (kinds[i] == TEXT) {
+                    String text = texts[i];
+                    buffer.putInt(text.length());
+                    for (int c = 0; c < text.length(); c++) {
+                        buffer.putChar(text.charAt(c));
+                    }
+                } else {
+                    buffer.putLong(bits[i]);
+                }
+            }
+            return buffer.array();
+        }
+
+        /**
+         * 与另一个键的各片段是否完全相同
+         */
+        boolean sameAs(Key other) {
+            if (size != other.size || hash != other.hash) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (kinds[i] != other.kinds[i] || bits[i] != other.bits[i]) {
+                    return false;
+                }
+                if (kinds[i] == TEXT && !texts[i].equals(other.texts[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 键的哈希值（各片段哈希组合后再打散）
+         */
+        int mixedHash() {
+            // murmur3 fmix32，打散低位
+            int h = hash ^ size;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h;
+        }
+
+        /**
+         * 文本是否可能是 Double#toString 的输出（[-]数字.数字[E[-]数字]），用于快速排除普通文本
+         */
+        private static boolean looksLikeDouble(String text) {
+            int length = text.length();
+            int i = 0;
+            if (i < length && text.charAt(i) == '-') i++;
+            int digits = i;
+            while (i < length && isDigit(text.charAt(i))) i++;
+            if (i == digits || i >= length || text.charAt(i) != '.') {
+                return "NaN".equals(text) || "Infinity".equals(text) || "-Infinity".equals(text);
+            }
+            i++;
+            digits = i;
+            while (i < length && isDigit(text.charAt(i))) i++;
+            if (i == digits) {
+                return false;
+            }
+            if (i < length && text.charAt(i) == 'E') {
+                i++;
+                if (i < length && text.charAt(i) == '-') i++;
+                digits = i;
+                while (i < length && isDigit(text.charAt(i))) i++;
+                if (i == digits) {
+                    return false;
+                }
+            }
+            return i == length;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+
+    // 开放寻址槽位：0 表示空，否则为 条目下标 + 1
+    private int[] slots;
+    // 条目：哈希值、对应行 id、键片段在片段数组中的起止位置
+    private int[] entryHashes;
+    private int[] entryRows;
+    private int[] entryStarts;
+    private int entryCount;
+    // 所有条目的键片段
+    private byte[] partKinds;
+    private long[] partBits;
+    private String[] partTexts;
+    private int partCount;
+
+    /**
+     * @param expectedSize 预计的条目数
+     */
+    JoinIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        slots = new int[capacity];
+        int entries = Math.max(16, expectedSize);
+        entryHashes = new int[entries];
+        entryRows = new int[entries];
+        entryStarts = new int[entries + 1];
+        partKinds = new byte[entries];
+        partBits = new long[entries];
+        partTexts = new String[entries];
+    }
+
+    /**
+     * 添加关联键
+     *
+     * @param key     关联键
+     * @param rowId   行 id
+     * @param replace 键已存在时是否用新行覆盖（true 保留最后一行，false 保留第一行）
+     */
+    void put(Key key, int rowId, boolean replace) {
+        int hash = key.mixedHash();
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            if (entryHashes[entry] == hash && matches(entry, key)) {
+                if (replace) {
+                    entryRows[entry] = rowId;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int entry = addEntry(key, hash, rowId);
+        slots[slot] = entry + 1;
+        if (entryCount * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * 查找关联键对应的行 id，不存在时返回 -1
+     */
+    int get(Key key) {
+        int hash = key.mixedHash();
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            if (entryHashes[entry] == hash && matches(entry, key)) {
+                return entryRows[entry];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean contains(Key key) {
+        return get(key) >= 0;
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    private boolean matches(int entry, Key key) {
+        int start = entryStarts[entry];
+        if (entryStarts[entry + 1] - start != key.size) {
+            return false;
+        }
+        for (int i = 0; i < key.size; i++) {
+            int part = start + i;
+            if (partKinds[part] != key.kinds[i] || partBits[part] != key.bits[i]) {
+                return false;
+            }
+            if (partKinds[part] == TEXT && !partTexts[part].equals(key.texts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addEntry(Key key, int hash, int rowId) {
+        if (entryCount + 1 >= entryStarts.length) {
+            int newLength = entryHashes.length * 2;
+            entryHashes = Arrays.copyOf(entryHashes, newLength);
+            entryRows = Arrays.copyOf(entryRows, newLength);
+            entryStarts = Arrays.copyOf(entryStarts, newLength + 1);
+        }
+        if (partCount + key.size > partKinds.length) {
+            int newLength = Math.max(partKinds.length * 2, partCount + key.size);
+            partKinds = Arrays.copyOf(partKinds, newLength);
+            partBits = Arrays.copyOf(partBits, newLength);
+            partTexts = Arrays.copyOf(partTexts, newLength);
+        }
+        System.arraycopy(key.kinds, 0, partKinds, partCount, key.size);
+        System.arraycopy(key.bits, 0, partBits, partCount, key.size);
+        System.arraycopy(key.texts, 0, partTexts, partCount, key.size);
+        partCount += key.size;
+
+        int entry = entryCount++;
+        entryHashes[entry] = hash;
+        entryRows[entry] = rowId;
+        entryStarts[entry + 1] = partCount;
+        return entry;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int entry = 0; entry < entryCount; entry++) {
+            int slot = entryHashes[entry] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = entry + 1;
+        }
+        slots = newSlots;
+    }
+}
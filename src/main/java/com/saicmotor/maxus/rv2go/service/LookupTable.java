@@ -0,0 +1,355 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只读查找表（列式存储）
+ * 保存表 2 / 表 3 / 出库表等只读输入中参与关联和合并的列，其余列在读取时直接丢弃。
+ * 每列由三个数组组成：单元格类型标记（byte，兼作空值位图）、数值（double，日期存毫秒、布尔存 0/1）
+ * 和字符串字典编码（int，指向本列的去重字符串表）。
+ * 不再为每行创建 Map 和装箱的 Double/Date 对象，按列扫描时内存连续。行通过从0开始的行 id 访问。
+ */
+class LookupTable {
+
+    // 单元格类型标记
+    private static final byte ABSENT = 0;   // 没有单元格
+    private static final byte BLANK = 1;    // 单元格存在但值为空
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+    private static final byte DATE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte FORMULA = 6;  // 公式文本，存放在字符串字典中
+
+    private final Map<String, Integer> columnMap;   // 表头列名 -> 源列索引
+    private final Map<String, Integer> slotMap;     // 保留的列名 -> 列下标
+    private final Column[] columns;
+    private final int[] rowNums;
+    private final int rowCount;
+    private final boolean date1904;  // 源工作簿的日期系统，日期换算回序列号时使用
+
+    private LookupTable(Builder builder) {
+        this.columnMap = builder.columnMap;
+        this.date1904 = builder.date1904;
+        this.slotMap = builder.slotMap;
+        this.rowCount = builder.rowCount;
+        this.rowNums = Arrays.copyOf(builder.rowNums, rowCount);
+        this.columns = builder.tableColumns;
+        for (Column column : columns) {
+            column.trim(rowCount);
+        }
+    }
+
+    /**
+     * 单列存储
+     */
+    private static final class Column {
+        byte[] kinds = new byte[64];
+        double[] numbers = new double[64];
+        int[] codes = new int[64];
+        // 字符串字典：编码 -> 字符串；构建期间用 codeOf 做去重
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> codeOf = new HashMap<>();
+
+        void set(int rowId, Object value, boolean formula) {
+            if (rowId >= kinds.length) {
+                int newLength = Math.max(kinds.length * 2, rowId + 1);
+                kinds = Arrays.copyOf(kinds, newLength);
+                numbers = Arrays.copyOf(numbers, newLength);
+                codes = Arrays.copyOf(codes, newLength);
+            }
+            if (value == null) {
+                kinds[rowId] = BLANK;
+            } else if (formula) {
+                kinds[rowId] = FORMULA;
+                codes[rowId] = encode(value.toString());
+            } else if (value instanceof Double) {
+                kinds[rowId] = NUMBER;
+                numbers[rowId] = (Double) value;
+            } else if (value instanceof Date) {
+                kinds[rowId] = DATE;
+                numbers[rowId] = ((Date) value).getTime();
+            } else if (value instanceof Boolean) {
+                kinds[rowId] = BOOLEAN;
+                numbers[rowId] = (Boolean) value ? 1 : 0;
+            } else {
+                kinds[rowId] = STRING;
+                codes[rowId] = encode(value.toString());
+            }
+        }
+
+        private int encode(String text) {
+            Integer code = codeOf.get(text);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(text);
+                codeOf.put(text, code);
+            }
+            return code;
+        }
+
+        void trim(int rowCount) {
+            if (kinds.length != rowCount) {
+                kinds = Arrays.copyOf(kinds, rowCount);
+                numbers = Arrays.copyOf(numbers, rowCount);
+                codes = Arrays.copyOf(codes, rowCount);
+            }
+            ((ArrayList<String>) dictionary).trimToSize();
+            codeOf = null;
+        }
+    }
+
+    /**
+     * 表头列名到源列索引的映射（与 ExcelService#getColumnMapping 含义相同）
+     */
+    Map<String, Integer> getColumnMap() {
+        return columnMap;
+    }
+
+    /**
+     * 数据行数（不含表头）
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 保存的单元格数（行数 × 保留列数），用于估算内存占用
+     */
+    long getCellCount() {
+        return (long) rowCount * columns.length;
+    }
+
+    /**
+     * 行 id 对应的 sheet 行号（从0开始）
+     */
+    int getRowNum(int rowId) {
+        return rowNums[rowId];
+    }
+
+    /**
+     * 按 sheet 行号查找行 id：返回数组的下标为 行号 - firstRowNum，该行不存在时为 -1
+     */
+    int[] rowIdsFrom(int firstRowNum, int count) {
+        int[] rowIds = new int[count];
+        Arrays.fill(rowIds, -1);
+        for (int rowId = 0; rowId < rowCount; rowId++) {
+            int index = rowNums[rowId] - firstRowNum;
+            if (index >= 0 && index < count) {
+                rowIds[index] = rowId;
+            }
+        }
+        return rowIds;
+    }
+
+    /**
+     * 获取单元格值，列不存在或单元格为空时返回 null
+     * 返回值类型与 ExcelService#getCellValue 一致（Double、String、Date、Boolean 或公式文本）
+     */
+    Object getValue(int rowId, String columnName) {
+        Column column = columnOf(columnName);
+        if (column == null) {
+            return null;
+        }
+        switch (column.kinds[rowId]) {
+            case NUMBER:
+                return column.numbers[rowId];
+            case STRING:
+            case FORMULA:
+                return column.dictionary.get(column.codes[rowId]);
+            case DATE:
+                return new Date((long) column.numbers[rowId]);
+            case BOOLEAN:
+                return column.numbers[rowId] != 0;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 该行在源文件中是否存在此列的单元格（即使值为空）
+     */
+    boolean hasCell(int rowId, String columnName) {
+        Column column = columnOf(columnName);
+        return column != null && column.kinds[rowId] != ABSENT;
+    }
+
+    /**
+     * 获取单元格值作为字符串（与 ExcelService#getCellValueAsString 一致）
+     */
+    String getValueAsString(int rowId, String columnName) {
+        Column column = columnOf(columnName);
+        if (column == null) {
+            return "";
+        }
+        byte kind = column.kinds[rowId];
+        if (kind == STRING || kind == FORMULA) {
+            // 字符串列直接返回字典中的实例，不创建新对象
+            return column.dictionary.get(column.codes[rowId]);
+        }
+        Object value = getValue(rowId, columnName);
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * 获取单元格的数值（与 ExcelService#getNumericValueForInvoice 规则一致）
+     * 数值和日期单元格返回数值，文本单元格按数字解析，公式、布尔和空单元格返回 null
+     */
+    Double getNumber(int rowId, String columnName) {
+        Column column = columnOf(columnName);
+        if (column == null) {
+            return null;
+        }
+        switch (column.kinds[rowId]) {
+            case NUMBER:
+                return column.numbers[rowId];
+            case DATE:
+                return DateUtil.getExcelDate(new Date((long) column.numbers[rowId]), date1904);
+            case STRING:
+                String text = column.dictionary.get(column.codes[rowId]);
+                if (text.isEmpty()) {
+                    return null;
+                }
+                try {
+                    return Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 将单元格值作为关联键片段添加到 key（直接读取列数组，不创建包装对象）
+     * 列不存在或单元格为空时按空文本处理，与 getValueAsString 返回 "" 一致
+     */
+    void appendKeyPart(int rowId, String columnName, JoinIndex.Key key) {
+        Column column = columnOf(columnName);
+        if (column == null) {
+            key.addText("");
+            return;
+        }
+        switch (column.kinds[rowId]) {
+            case NUMBER:
+                key.addNumber(column.numbers[rowId]);
+                break;
+            case STRING:
+            case FORMULA:
+                key.addText(column.dictionary.get(column.codes[rowId]));
+                break;
+            case DATE:
+                key.addDate((long) column.numbers[rowId]);
+                break;
+            case BOOLEAN:
+                key.addBoolean(column.numbers[rowId] != 0);
+                break;
+            default:
+                key.addText("");
+                break;
+        }
+    }
+
+    private Column columnOf(String columnName) {
+        Integer slot = slotMap.get(columnName);
+        return slot != null ? columns[slot] : null;
+    }
+
+    /**
+     * 查找表构建器，作为行回调接收流式读取或 DOM 遍历得到的行
+     */
+    static final class Builder implements StreamingSheetReader.RowHandler {
+        private final int headerRow;
+        private final List<String> columns;
+        private final Map<String, Integer> columnMap = new HashMap<>();
+        private final Map<String, Integer> slotMap = new HashMap<>();
+        private int[] sourceColumns;
+        private Column[] tableColumns;
+        private int[] rowNums = new int[64];
+        private int rowCount;
+        private boolean headerFound;
+        private boolean date1904;
+
+        /**
+         * @param headerRow 表头行索引（从0开始）
+         * @param columns   需要保留的列名
+         */
+        Builder(int headerRow, Collection<String> columns) {
+            this.headerRow = headerRow;
+            this.columns = new ArrayList<>(new LinkedHashSet<>(columns));
+        }
+
+        @Override
+        public boolean handleRow(int rowNum, StreamingSheetReader.RowValues row) {
+            if (rowNum < headerRow) {
+                return true;
+            }
+            if (rowNum == headerRow) {
+                readHeader(row);
+                return true;
+            }
+            if (!headerFound) {
+                // 表头行不存在，后续数据无法按列名解析
+                return false;
+            }
+
+            int rowId = rowCount++;
+            if (rowId >= rowNums.length) {
+                rowNums = Arrays.copyOf(rowNums, rowNums.length * 2);
+            }
+            rowNums[rowId] = rowNum;
+            for (int slot = 0; slot < sourceColumns.length; slot++) {
+                int col = sourceColumns[slot];
+                if (row.contains(col)) {
+                    tableColumns[slot].set(rowId, row.get(col), row.isFormula(col));
+                }
+            }
+            return true;
+        }
+
+        private void readHeader(StreamingSheetReader.RowValues row) {
+            headerFound = true;
+            date1904 = row.isDate1904();
+            for (int col = 0; col < row.getLastCellNum(); col++) {
+                if (!row.contains(col)) continue;
+                String columnName = row.getAsString(col);
+                if (!columnName.isEmpty()) {
+                    columnMap.put(columnName, col);
+                }
+            }
+
+            // 只解码需要的列
+            BitSet filter = new BitSet();
+            sourceColumns = new int[columns.size()];
+            tableColumns = new Column[columns.size()];
+            for (int slot = 0; slot < columns.size(); slot++) {
+                String name = columns.get(slot);
+                Integer col = columnMap.get(name);
+                sourceColumns[slot] = col != null ? col : -1;
+                tableColumns[slot] = new Column();
+                slotMap.put(name, slot);
+                if (col != null) {
+                    filter.set(col);
+                }
+            }
+            row.setColumnFilter(filter);
+        }
+
+        boolean isHeaderFound() {
+            return headerFound;
+        }
+
+        LookupTable build() {
+            return headerFound ? new LookupTable(this) : null;
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 内存映射的查找存储（用于很大的表2）
+ * 表2的需要列按行编码后写入临时目录下的存储文件，文件末尾附带关联键的开放寻址哈希索引，
+ * 使用时通过 FileChannel.map 映射为只读缓冲区，查找和读取都直接访问映射内存，不在堆上保存表2。
+ * 存储文件名以 源文件路径 + sheet 页 + 表头行 + 列 的哈希开头，每次生成使用新的文件名，并记录源文件的大小和修改时间：
+ * 源文件不变时，下次运行（包括重启程序后）直接映射已有文件，不再解析 Excel，热数据由操作系统页缓存保持。
+ * 过期的存储文件不会被覆盖，由生成新文件后的按总大小清理删除。
+ * <p>
+ * 文件结构：头部（源文件信息、表头列、保留列）| 行数据 | 行偏移（long[行数 + 1]）| 哈希索引（int 哈希, int 行 id + 1）| 尾部
+ */
+final class MappedLookupStore implements RowLookup {
+
+    /**
+     * 按行读取源 sheet 页
+     */
+    interface SheetSource {
+        /**
+         * @return 是否读取成功
+         */
+        boolean read(StreamingSheetReader.RowHandler handler);
+    }
+
+    private static final int MAGIC = 0x5256324D;  // "RV2M"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 4 + 8 + 8 + 4 + 4;
+    private static final int SLOT_SIZE = 8;
+
+    // 单元格类型标记（与 LookupTable 一致）
+    private static final byte ABSENT = 0;
+    private static final byte BLANK = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+    private static final byte DATE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte FORMULA = 6;
+
+    private static final File STORE_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "rv2go-lookup");
+    // 映射的 ByteBuffer 最多 2GB
+    private static final long MAX_STORE_SIZE = Integer.MAX_VALUE;
+    // 存储目录中保留的存储文件总大小，超出时删除最久未使用的文件
+    private static final long MAX_DIRECTORY_SIZE = 4L << 30;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Integer> columnMap;
+    private final Map<String, Integer> slotMap;
+    private final int keyCount;
+    private final int rowCount;
+    private final long offsetsStart;
+    private final long indexStart;
+    private final int capacity;
+    // 比对键时解码存储行的键（每个线程一个）
+    private final ThreadLocal<JoinIndex.Key> scratchKey = ThreadLocal.withInitial(JoinIndex.Key::new);
+
+    private MappedLookupStore(ByteBuffer buffer, Map<String, Integer> columnMap, List<String> slots, int keyCount,
+                              int rowCount, long offsetsStart, long indexStart, int capacity) {
+        this.buffer = buffer;
+        this.columnMap = columnMap;
+        this.slotMap = new HashMap<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            slotMap.putIfAbsent(slots.get(slot), slot);
+        }
+        this.keyCount = keyCount;
+        this.rowCount = rowCount;
+        this.offsetsStart = offsetsStart;
+        this.indexStart = indexStart;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 打开源文件对应的查找存储，没有可用的存储文件时先从源文件生成
+     *
+     * @param source        源 Excel 文件
+     * @param sheetIndex    sheet 页索引
+     * @param headerRow     表头行索引（从0开始）
+     * @param keyColumns    关联列（按顺序组成关联键，重复键保留最后一行）
+     * @param columns       其他需要读取的列
+     * @param estimatedSize 表的估算大小（字节），超过 2GB 时不生成存储文件
+     * @param sheet         按行读取源 sheet 页
+     * @return 查找存储；源 sheet 页读取失败或没有表头时返回 null
+     */
+    static MappedLookupStore open(File source, int sheetIndex, int headerRow, String[] keyColumns,
+                                  Collection<String> columns, long estimatedSize, SheetSource sheet)
+            throws IOException {
+        List<String> slots = new ArrayList<>(Arrays.asList(keyColumns));
+        for (String column : columns) {
+            if (!slots.contains(column)) {
+                slots.add(column);
+            }
+        }
+        String identity = source.getCanonicalPath() + "#" + sheetIndex + ":" + headerRow + ":" + keyColumns.length
+                + ":" + String.join("\u0000", slots);
+        String prefix = UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8)) + "-";
+
+        // 同一张表的存储文件都以 prefix 开头，每次生成使用新的文件名：
+        // 旧文件可能仍被本进程或其他进程映射（Windows 上无法替换或删除），不需要覆盖它
+        File[] existing = STORE_DIRECTORY.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".map"));
+        if (existing != null) {
+            for (File storeFile : existing) {
+                MappedLookupStore store = load(storeFile, source, identity);
+                if (store != null) {
+                    storeFile.setLastModified(System.currentTimeMillis());
+                    return store;
+                }
+            }
+        }
+
+        if (estimatedSize > MAX_STORE_SIZE) {
+            throw new IOException("查找存储预计超过 2GB: " + source.getName());
+        }
+        if (!STORE_DIRECTORY.isDirectory() && !STORE_DIRECTORY.mkdirs()) {
+            throw new IOException("无法创建查找存储目录: " + STORE_DIRECTORY.getAbsolutePath());
+        }
+        File storeFile = File.createTempFile(prefix, ".map", STORE_DIRECTORY);
+        boolean opened = false;
+        try {
+            Writer writer = new Writer(storeFile, source, identity, headerRow, slots, keyColumns.length);
+            boolean built;
+            try {
+                built = sheet.read(writer) && writer.headerFound;
+                if (built) {
+                    writer.finish();
+                }
+            } finally {
+                writer.close();
+            }
+            if (!built) {
+                return null;
+            }
+
+            MappedLookupStore store = load(storeFile, source, identity);
+            if (store == null) {
+                throw new IOException("查找存储文件损坏: " + storeFile.getAbsolutePath());
+            }
+            opened = true;
+            evictStaleFiles(storeFile);
+            return store;
+        } finally {
+            if (!opened && !storeFile.delete()) {
+                // 生成失败的文件没有被映射，删除失败时退出时再删除
+                storeFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 清理存储目录：按最后使用时间从新到旧保留存储文件，总大小超过 MAX_DIRECTORY_SIZE 后的旧文件删除
+     * （刚生成的文件总是保留）。仍被映射的文件在 Windows 上删除失败，留到下次清理。
+     */
+    private static void evictStaleFiles(File current) {
+        File[] files = STORE_DIRECTORY.listFiles((dir, name) -> name.endsWith(".map"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = current.length();
+        for (File file : files) {
+            if (file.equals(current)) {
+                continue;
+            }
+            long length = file.length();
+            total += length;
+            if (total > MAX_DIRECTORY_SIZE && file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * 校验并映射存储文件，文件与源文件不一致、不完整或已损坏时返回 null
+     * 校验通过通道读取头部和尾部，不通过的文件不会被映射（映射无法主动释放，会使文件在 Windows 上无法删除）
+     */
+    private static MappedLookupStore load(File storeFile, File source, String identity) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(storeFile, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE + 8 || size > MAX_STORE_SIZE
+                    || !matches(channel, size, source, identity)) {
+                return null;
+            }
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int end = buffer.capacity();
+        ByteBuffer header = buffer.duplicate();
+        header.position(8 + 8 + 8 + 4 + identity.length() * 2);
+        Map<String, Integer> columnMap = new HashMap<>();
+        int columnCount = header.getInt();
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(header);
+            columnMap.put(name, header.getInt());
+        }
+        int keyCount = header.getInt();
+        List<String> slots = new ArrayList<>();
+        int slotCount = header.getInt();
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(readString(header));
+        }
+
+        int trailer = end - TRAILER_SIZE;
+        int rowCount = buffer.getInt(trailer);
+        long offsetsStart = buffer.getLong(trailer + 4);
+        long indexStart = buffer.getLong(trailer + 12);
+        int capacity = buffer.getInt(trailer + 20);
+        return new MappedLookupStore(buffer, Collections.unmodifiableMap(columnMap), slots, keyCount,
+                rowCount, offsetsStart, indexStart, capacity);
+    }
+
+    /**
+     * 读取存储文件的头部（魔数、版本、源文件大小和修改时间、标识）和尾部魔数，检查是否完整且与源文件一致
+     */
+    private static boolean matches(FileChannel channel, long size, File source, String identity)
+            throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(4);
+        if (!readFully(channel, trailer, size - 4) || trailer.getInt(0) != MAGIC) {
+            return false;
+        }
+        int headerSize = 8 + 8 + 8 + 4 + identity.length() * 2;
+        if (headerSize > size) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        if (!readFully(channel, header, 0)) {
+            return false;
+        }
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION
+                && header.getLong() == source.length() && header.getLong() == source.lastModified()
+                && identity.equals(readString(header));
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * 表头列名到源列索引的映射
+     */
+    Map<String, Integer> getColumnMap() {
+        return columnMap;
+    }
+
+    /**
+     * 数据行数（不含表头）
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int find(JoinIndex.Key key) {
+        int hash = key.mixedHash();
+        int mask = capacity - 1;
+        int slot = hash & mask;
+        JoinIndex.Key stored = scratchKey.get();
+        while (true) {
+            int position = (int) (indexStart + (long) slot * SLOT_SIZE);
+            int row = buffer.getInt(position + 4) - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (buffer.getInt(position) == hash) {
+                decodeKey(buffer, rowStart(row), keyCount, stored);
+                if (stored.sameAs(key)) {
+                    return row;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public boolean hasCell(int rowId, String columnName) {
+        Integer slot = slotMap.get(columnName);
+        return slot != null && buffer.get(valueStart(rowId, slot)) != ABSENT;
+    }
+
+    @Override
+    public Object getValue(int rowId, String columnName) {
+        Integer slot = slotMap.get(columnName);
+        if (slot == null) {
+            return null;
+        }
+        return readValue(buffer, valueStart(rowId, slot));
+    }
+
+    private int rowStart(int rowId) {
+        return (int) buffer.getLong((int) (offsetsStart + (long) rowId * 8));
+    }
+
+    private int valueStart(int rowId, int slot) {
+        int position = rowStart(rowId);
+        for (int i = 0; i < slot; i++) {
+            position = skipValue(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * 按 LookupTable#appendKeyPart 的规则解码一行的前 keyCount 列作为关联键
+     */
+    private static void decodeKey(ByteBuffer data, int position, int keyCount, JoinIndex.Key key) {
+        key.clear();
+        for (int i = 0; i < keyCount; i++) {
+            byte kind = data.get(position);
+            switch (kind) {
+                case NUMBER:
+                    key.addNumber(data.getDouble(position + 1));
+                    break;
+                case DATE:
+                    key.addDate(data.getLong(position + 1));
+                    break;
+                case BOOLEAN:
+                    key.addBoolean(data.get(position + 1) != 0);
+                    break;
+                case STRING:
+                case FORMULA:
+                    key.addText(readChars(data, position + 1));
+                    break;
+                default:
+                    key.addText("");
+                    break;
+            }
+            position = skipValue(data, position);
+        }
+    }
+
+    private static int skipValue(ByteBuffer data, int position) {
+        switch (data.get(position)) {
+            case NUMBER:
+            case DATE:
+                return position + 9;
+            case BOOLEAN:
+                return position + 2;
+            case STRING:
+            case FORMULA:
+                return position + 5 + data.getInt(position + 1) * 2;
+            default:
+                return position + 1;
+        }
+    }
+
+    private static Object readValue(ByteBuffer data, int position) {
+        switch (data.get(position)) {
+            case NUMBER:
+                return data.getDouble(position + 1);
+            case DATE:
+                return new Date(data.getLong(position + 1));
+            case BOOLEAN:
+                return data.get(position + 1) != 0;
+            case STRING:
+            case FORMULA:
+                return readChars(data, position + 1);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 读取 长度 + UTF-16 字符 编码的字符串（绝对位置读取，不改变缓冲区状态）
+     */
+    private static String readChars(ByteBuffer data, int position) {
+        char[] chars = new char[data.getInt(position)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = data.getChar(position + 4 + i * 2);
+        }
+        return new String(chars);
+    }
+
+    private static String readString(ByteBuffer data) {
+        String text = readChars(data, data.position());
+        data.position(data.position() + 4 + text.length() * 2);
+        return text;
+    }
+
+    /**
+     * 存储文件生成器，作为行回调接收源 sheet 页的行
+     */
+    private static final class Writer implements StreamingSheetReader.RowHandler {
+        private final File file;
+        private final File source;
+        private final String identity;
+        private final int headerRow;
+        private final List<String> slots;
+        private final int keyCount;
+        private final DataOutputStream out;
+        private final JoinIndex.Key key = new JoinIndex.Key();
+
+        private long position;
+        private boolean headerFound;
+        private int[] sourceColumns;
+        private long[] offsets = new long[1024];
+        private int[] hashes = new int[1024];
+        private int rowCount;
+
+        Writer(File file, File source, String identity, int headerRow, List<String> slots, int keyCount)
+                throws IOException {
+            this.file = file;
+            this.source = source;
+            this.identity = identity;
+            this.headerRow = headerRow;
+            this.slots = slots;
+            this.keyCount = keyCount;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        @Override
+        public boolean handleRow(int rowNum, StreamingSheetReader.RowValues row) {
+            if (rowNum < headerRow) {
+                return true;
+            }
+            try {
+                if (rowNum == headerRow) {
+                    writeHeader(row);
+                    return true;
+                }
+                if (!headerFound) {
+                    return false;
+                }
+                writeRow(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        private void writeHeader(StreamingSheetReader.RowValues row) throws IOException {
+            headerFound = true;
+            Map<String, Integer> columnMap = new HashMap<>();
+            for (int col = 0; col < row.getLastCellNum(); col++) {
+                if (!row.contains(col)) continue;
+                String columnName = row.getAsString(col);
+                if (!columnName.isEmpty()) {
+                    columnMap.put(columnName, col);
+                }
+            }
+
+            BitSet filter = new BitSet();
+            sourceColumns = new int[slots.size()];
+            for (int slot = 0; slot < slots.size(); slot++) {
+                Integer col = columnMap.get(slots.get(slot));
+                sourceColumns[slot] = col != null ? col : -1;
+                if (col != null) {
+                    filter.set(col);
+                }
+            }
+            row.setColumnFilter(filter);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            writeString(identity);
+            out.writeInt(columnMap.size());
+            for (Map.Entry<String, Integer> entry : columnMap.entrySet()) {
+                writeString(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(keyCount);
+            out.writeInt(slots.size());
+            for (String slot : slots) {
+                writeString(slot);
+            }
+            position = out.size();
+        }
+
+        private void writeRow(StreamingSheetReader.RowValues row) throws IOException {
+            int rowId = rowCount++;
+            if (rowId >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            offsets[rowId] = position;
+            if (position > MAX_STORE_SIZE) {
+                // 不等到整张表写完再失败
+                throw new IOException("查找存储超过 2GB: " + source.getName());
+            }
+
+            key.clear();
+            for (int slot = 0; slot < sourceColumns.length; slot++) {
+                int col = sourceColumns[slot];
+                if (slot < keyCount) {
+                    key.addValue(row.get(col));
+                }
+                if (!row.contains(col)) {
+                    out.writeByte(ABSENT);
+                    position += 1;
+                    continue;
+                }
+                Object value = row.get(col);
+                if (value == null) {
+                    out.writeByte(BLANK);
+                    position += 1;
+                } else if (row.isFormula(col)) {
+                    writeText(FORMULA, value.toString());
+                } else if (value instanceof Double) {
+                    out.writeByte(NUMBER);
+                    out.writeDouble((Double) value);
+                    position += 9;
+                } else if (value instanceof Date) {
+                    out.writeByte(DATE);
+                    out.writeLong(((Date) value).getTime());
+                    position += 9;
+                } else if (value instanceof Boolean) {
+                    out.writeByte(BOOLEAN);
+                    out.writeBoolean((Boolean) value);
+                    position += 2;
+                } else {
+                    writeText(STRING, value.toString());
+                }
+            }
+            hashes[rowId] = key.mixedHash();
+        }
+
+        private void writeText(byte kind, String text) throws IOException {
+            out.writeByte(kind);
+            writeString(text);
+            position += 5 + text.length() * 2;
+        }
+
+        private void writeString(String text) throws IOException {
+            out.writeInt(text.length());
+            out.writeChars(text);
+        }
+
+        /**
+         * 写入行偏移、哈希索引和尾部
+         * 哈希相同的行需要比对键，从已写入的行数据中读回（只在哈希冲突和重复键时发生）
+         */
+        void finish() throws IOException {
+            long offsetsStart = position;
+            offsets = Arrays.copyOf(offsets, rowCount + 1);
+            offsets[rowCount] = offsetsStart;
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            long indexStart = offsetsStart + (long) offsets.length * 8;
+            out.flush();
+
+            int capacity = Integer.highestOneBit(Math.max(16, rowCount * 2 - 1)) << 1;
+            if (indexStart + (long) capacity * SLOT_SIZE + TRAILER_SIZE > MAX_STORE_SIZE) {
+                throw new IOException("查找存储超过 2GB: " + source.getName());
+            }
+            int[] slotHashes = new int[capacity];
+            int[] slotRows = new int[capacity];  // 行 id + 1，0 表示空
+            JoinIndex.Key current = new JoinIndex.Key();
+            JoinIndex.Key stored = new JoinIndex.Key();
+            try (RandomAccessFile reader = new RandomAccessFile(file, "r")) {
+                int mask = capacity - 1;
+                for (int rowId = 0; rowId < rowCount; rowId++) {
+                    int hash = hashes[rowId];
+                    int slot = hash & mask;
+                    boolean currentDecoded = false;
+                    while (slotRows[slot] != 0) {
+                        if (slotHashes[slot] == hash) {
+                            if (!currentDecoded) {
+                                readKey(reader, rowId, current);
+                                currentDecoded = true;
+                            }
+                            readKey(reader, slotRows[slot] - 1, stored);
+                            if (stored.sameAs(current)) {
+                                break;
+                            }
+                        }
+                        slot = (slot + 1) & mask;
+                    }
+                    // 新键占用空槽；重复键保留最后一行
+                    slotHashes[slot] = hash;
+                    slotRows[slot] = rowId + 1;
+                }
+            }
+
+            for (int slot = 0; slot < capacity; slot++) {
+                out.writeInt(slotHashes[slot]);
+                out.writeInt(slotRows[slot]);
+            }
+            out.writeInt(rowCount);
+            out.writeLong(offsetsStart);
+            out.writeLong(indexStart);
+            out.writeInt(capacity);
+            out.writeInt(MAGIC);
+        }
+
+        private void readKey(RandomAccessFile reader, int rowId, JoinIndex.Key key) throws IOException {
+            byte[] bytes = new byte[(int) (offsets[rowId + 1] - offsets[rowId])];
+            reader.seek(offsets[rowId]);
+            reader.readFully(bytes);
+            decodeKey(ByteBuffer.wrap(bytes), 0, keyCount, key);
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
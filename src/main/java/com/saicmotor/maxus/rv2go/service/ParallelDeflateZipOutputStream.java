@@ -0,0 +1,257 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * 分块并行压缩的 zip 输出流（与 pigz 的做法相同）
+ * 条目数据按 BLOCK_SIZE 分块，各块在线程池中独立压缩，以前一块的最后 32KB 作为预设字典，压缩率与整体压缩接近；
+ * 除最后一块外各块以 SYNC_FLUSH 结束（字节对齐），按顺序拼接后就是一个完整的 deflate 数据流，
+ * 写出的仍是标准的 DEFLATED 条目，Excel、WPS 和任何 zip 工具都能直接打开。
+ * 不超过一块的小条目、单核环境和压缩级别 0（只存储）按普通 zip 输出。
+ * 条目结束前压缩后的数据保存在内存中（sheet XML 压缩后通常只有原大小的 1/10 左右）。
+ * <p>
+ * POI 保存 xlsx 时如果传入的已经是 ZipArchiveOutputStream 则直接使用，不再另外创建。
+ * 正在录制 JFR 时每个条目记录一个写出包部件事件（原始大小、压缩后大小和并行压缩的块数）。
+ */
+final class ParallelDeflateZipOutputStream extends ZipArchiveOutputStream {
+
+    // 每块未压缩的大小
+    private static final int BLOCK_SIZE = 256 * 1024;
+    // 预设字典的大小（deflate 的回溯窗口）
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // 最多同时压缩的块数，限制内存中未压缩数据的大小
+    private static final int MAX_PENDING = THREADS * 4;
+
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "excel-deflate-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final int level;
+    private final boolean parallel;
+
+    // 当前条目（为 null 时直接交给父类输出）
+    private ZipArchiveEntry entry;
+    private byte[] block;
+    private int blockLength;
+    private byte[] previousBlock;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final List<byte[]> compressed = new ArrayList<>();
+    private long compressedSize;
+    private long size;
+    private final CRC32 crc = new CRC32();
+
+    // 当前条目的 JFR 事件（没有录制时为 null）
+    private ExcelEvents.PackagePartWriteEvent partEvent;
+    private ZipArchiveEntry partEntry;
+
+    /**
+     * @param out   输出流
+     * @param level 压缩级别（0 只存储，1-9，-1 为默认级别）
+     */
+    ParallelDeflateZipOutputStream(OutputStream out, int level) {
+        super(out);
+        this.level = level;
+        this.parallel = level != Deflater.NO_COMPRESSION && THREADS > 1;
+        setLevel(level);
+    }
+
+    @Override
+    public void putArchiveEntry(ArchiveEntry archiveEntry) throws IOException {
+        if (entry != null) {
+            closeArchiveEntry();
+        }
+        ZipArchiveEntry zipEntry = (ZipArchiveEntry) archiveEntry;
+        if (!parallel || zipEntry.getMethod() == ZipEntry.STORED) {
+            super.putArchiveEntry(archiveEntry);
+        } else {
+            entry = zipEntry;
+            block = new byte[BLOCK_SIZE];
+            blockLength = 0;
+            size = 0;
+            crc.reset();
+        }
+        partEvent = ExcelEvents.packagePartWrite(zipEntry.getName());
+        partEntry = zipEntry;
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (entry == null) {
+            super.write(b, offset, length);
+            return;
+        }
+        crc.update(b, offset, length);
+        size += length;
+        while (length > 0) {
+            int n = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    @Override
+    public void closeArchiveEntry() throws IOException {
+        ExcelEvents.PackagePartWriteEvent event = partEvent;
+        ZipArchiveEntry part = partEntry;
+        partEvent = null;
+        partEntry = null;
+        int blocks = closeEntry();
+        if (event != null) {
+            event.end(part.getSize(), part.getCompressedSize(), blocks);
+        }
+    }
+
+    /**
+     * 结束当前条目
+     *
+     * @return 并行压缩的块数，按普通方式输出时为 0
+     */
+    private int closeEntry() throws IOException {
+        if (entry == null) {
+            super.closeArchiveEntry();
+            return 0;
+        }
+        ZipArchiveEntry current = entry;
+        entry = null;
+        try {
+            if (pending.isEmpty() && compressed.isEmpty()) {
+                // 不超过一块的小条目按普通方式压缩
+                super.putArchiveEntry(current);
+                super.write(block, 0, blockLength);
+                super.closeArchiveEntry();
+                return 0;
+            }
+
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                collect(pending.poll());
+            }
+            current.setMethod(ZipEntry.DEFLATED);
+            current.setCrc(crc.getValue());
+            current.setSize(size);
+            current.setCompressedSize(compressedSize);
+            List<InputStream> streams = new ArrayList<>(compressed.size());
+            for (byte[] data : compressed) {
+                streams.add(new ByteArrayInputStream(data));
+            }
+            addRawArchiveEntry(current, new SequenceInputStream(Collections.enumeration(streams)));
+            return streams.size();
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+            compressed.clear();
+            compressedSize = 0;
+            block = null;
+            previousBlock = null;
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (entry != null) {
+            throw new IOException("This archive contains unclosed entries.");
+        }
+        super.finish();
+    }
+
+    /**
+     * 提交当前块压缩，等待最早的块完成以限制同时压缩的块数
+     */
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte[] dictionary = previousBlock;
+        pending.add(EXECUTOR.submit(() -> deflate(data, length, dictionary, last)));
+        previousBlock = data;
+        block = last ? null : new byte[BLOCK_SIZE];
+        blockLength = 0;
+        while (pending.size() > MAX_PENDING) {
+            collect(pending.poll());
+        }
+    }
+
+    private void collect(Future<byte[]> future) throws IOException {
+        try {
+            byte[] data = future.get();
+            compressed.add(data);
+            compressedSize += data.length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("压缩被中断");
+        } catch (ExecutionException e) {
+            throw new IOException("压缩失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 压缩一块（raw deflate，不带 zlib 头）
+     *
+     * @param dictionary 前一块（使用最后 32KB 作为预设字典），第一块为 null
+     * @param last       是否最后一块（以 FINISH 结束，否则以 SYNC_FLUSH 结束）
+     */
+    private byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+            } else {
+                // 输出缓冲区被填满时还有未输出的数据，继续调用
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ooxml.POIXMLDocumentPart;
+import org.apache.poi.ooxml.POIXMLException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
+import org.apache.poi.xssf.usermodel.XSSFPivotTable;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行解析 sheet 页的 xlsx 读取
+ * XSSFWorkbook 加载时先读取共享字符串和样式，之后逐个解压并解析 sheet 页的 XML（占读取时间的大部分）。
+ * 各 sheet 页的解析互不依赖，这里在解析第一个 sheet 页时把所有 sheet 页提交到线程池同时解析，
+ * 再按原顺序登记到工作簿，得到的工作簿与 new XSSFWorkbook(...) 读取的相同。
+ * <p>
+ * 只读打开时按需从文件随机读取各部件（不把整个文件读入内存），各部件在使用时才解压，
+ * sheet 页的解压也在线程池中并行；文件句柄保持到工作簿关闭为止。
+ * 需要写回的工作簿（原地合并）用 FileInputStream 以读写方式打开，打开时顺序解压所有部件，只有 XML 解析并行，
+ * 不保持文件句柄（避免 Windows 上的 KERNELBASE.dll 错误）。
+ * <p>
+ * 只有一个 sheet 页、单核环境、包含数据透视表（解析时会修改工作簿共享的数据透视表列表）时按顺序解析。
+ * 读取线程被中断（操作取消）时在 sheet 页之间停止，并取消其余的解析任务。
+ */
+public final class ParallelSheetLoader {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService EXECUTOR;
+
+    // XSSFWorkbook.parseSheet 使用的 POI 内部成员，取不到时（POI 版本变化）按顺序解析
+    private static final Field SHEET_FIELD;
+    private static final Field SHEETS_FIELD;
+    private static final Method ON_DOCUMENT_READ;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "excel-sheet-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Field sheetField = null;
+        Field sheetsField = null;
+        Method onDocumentRead = null;
+        try {
+            sheetField = XSSFSheet.class.getDeclaredField("sheet");
+            sheetsField = XSSFWorkbook.class.getDeclaredField("sheets");
+            onDocumentRead = XSSFSheet.class.getDeclaredMethod("onDocumentRead");
+            sheetField.setAccessible(true);
+            sheetsField.setAccessible(true);
+            onDocumentRead.setAccessible(true);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            sheetField = null;
+            sheetsField = null;
+            onDocumentRead = null;
+        }
+        SHEET_FIELD = sheetField;
+        SHEETS_FIELD = sheetsField;
+        ON_DOCUMENT_READ = onDocumentRead;
+    }
+
+    private ParallelSheetLoader() {
+    }
+
+    /**
+     * 以只读方式读取 xlsx 工作簿（不能写回，可以复制到其他工作簿）
+     *
+     * @param file xlsx 文件
+     * @throws IOException 文件读取失败或不是有效的 xlsx 文件
+     */
+    public static XSSFWorkbook open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * 读取 xlsx 工作簿
+     *
+     * @param file     xlsx 文件
+     * @param writable 工作簿是否需要写出（原地合并直接写出主表工作簿）
+     * @throws IOException 文件读取失败或不是有效的 xlsx 文件
+     */
+    static XSSFWorkbook open(File file, boolean writable) throws IOException {
+        OPCPackage pkg;
+        if (writable) {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                pkg = OPCPackage.open(fis);
+            } catch (InvalidFormatException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        } else {
+            ZipFile zipFile = new ZipFile(file);
+            try {
+                pkg = OPCPackage.open(new ZipFileZipEntrySource(zipFile));
+            } catch (InvalidFormatException | RuntimeException e) {
+                zipFile.close();
+                if (e instanceof InvalidFormatException) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                throw (RuntimeException) e;
+            }
+        }
+        try {
+            return new LoadedWorkbook(pkg);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    /**
+     * 并行解析 sheet 页的工作簿
+     * 注意：父类构造方法中就会调用 parseSheet，此时子类的字段还没有初始化，字段不能带初始值。
+     */
+    static final class LoadedWorkbook extends XSSFWorkbook {
+
+        // sheet 页 -> 解析任务（只包含并行解析的 sheet 页）
+        private Map<XSSFSheet, Future<?>> parsing;
+
+        /**
+         * 空工作簿（输出工作簿用 getClass().newInstance() 创建时使用）
+         */
+        public LoadedWorkbook() {
+            super();
+        }
+
+        LoadedWorkbook(OPCPackage pkg) throws IOException {
+            super(pkg);
+        }
+
+        @Override
+        public void parseSheet(Map<String, XSSFSheet> shIdMap, CTSheet ctSheet) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 读取被取消（InputLoader.await 中断了加载线程），不再解析其余 sheet 页
+                if (parsing != null) {
+                    cancelAll();
+                }
+                throw new POIXMLException("读取 sheet 页被中断");
+            }
+            if (parsing == null) {
+                parsing = startParsing(shIdMap);
+            }
+            XSSFSheet sheet = shIdMap.get(ctSheet.getId());
+            Future<?> future = sheet != null ? parsing.get(sheet) : null;
+            if (future == null) {
+                ExcelEvents.SheetParseEvent event = sheet != null ? ExcelEvents.sheetParse(ctSheet.getName(), false) : null;
+                super.parseSheet(shIdMap, ctSheet);
+                if (event != null) {
+                    event.end(sheet);
+                }
+                return;
+            }
+            await(future);
+            try {
+                SHEET_FIELD.set(sheet, ctSheet);
+                @SuppressWarnings("unchecked")
+                List<XSSFSheet> sheets = (List<XSSFSheet>) SHEETS_FIELD.get(this);
+                sheets.add(sheet);
+            } catch (IllegalAccessException e) {
+                throw new POIXMLException(e);
+            }
+        }
+
+        /**
+         * 把所有 sheet 页提交到线程池解析，不能并行时返回空表（全部按顺序解析）
+         */
+        private Map<XSSFSheet, Future<?>> startParsing(Map<String, XSSFSheet> shIdMap) {
+            Map<XSSFSheet, Future<?>> futures = new IdentityHashMap<>();
+            if (ON_DOCUMENT_READ == null || THREADS == 1) {
+                return futures;
+            }
+            List<XSSFSheet> sheets = new ArrayList<>();
+            Map<XSSFSheet, String> sheetNames = new IdentityHashMap<>();
+            for (CTSheet ctSheet : getCTWorkbook().getSheets().getSheetArray()) {
+                XSSFSheet sheet = shIdMap.get(ctSheet.getId());
+                if (sheet == null || sheets.contains(sheet)) {
+                    continue;
+                }
+                for (POIXMLDocumentPart.RelationPart part : sheet.getRelationParts()) {
+                    if (part.getDocumentPart() instanceof XSSFPivotTable) {
+                        return futures;
+                    }
+                }
+                sheets.add(sheet);
+                sheetNames.put(sheet, ctSheet.getName());
+            }
+            if (sheets.size() < 2) {
+                return futures;
+            }
+            for (XSSFSheet sheet : sheets) {
+                String sheetName = sheetNames.get(sheet);
+                futures.put(sheet, EXECUTOR.submit(() -> {
+                    ExcelEvents.SheetParseEvent event = ExcelEvents.sheetParse(sheetName, true);
+                    ON_DOCUMENT_READ.invoke(sheet);
+                    if (event != null) {
+                        event.end(sheet);
+                    }
+                    return null;
+                }));
+            }
+            return futures;
+        }
+
+        /**
+         * 等待 sheet 页解析完成，失败时取消其余任务并抛出与顺序解析相同的异常
+         */
+        private void await(Future<?> future) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new POIXMLException("读取 sheet 页被中断", e);
+            } catch (ExecutionException e) {
+                cancelAll();
+                Throwable cause = e.getCause();
+                if (cause instanceof InvocationTargetException) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new POIXMLException(cause);
+            }
+        }
+
+        /**
+         * 取消其余 sheet 页的解析：未开始的任务不再执行，正在解析的线程被中断
+         */
+        private void cancelAll() {
+            for (Future<?> future : parsing.values()) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解析结果缓存（进程内共享）
+ * 缓存 sheet 页名称、表头列表和只读查找表等不可变的解析结果，键为 文件路径 + 内容标识，
+ * 命中前会比对文件大小和修改时间，文件被修改后自动失效。
+ * 按访问顺序做 LRU 淘汰，同时限制条目数和总权重（约等于缓存的单元格数）；
+ * 值通过软引用持有，内存紧张时可以被 GC 回收。
+ */
+final class ParsedDataCache {
+
+    /**
+     * 缓存未命中时的加载器，返回 null 表示加载失败（不缓存）
+     */
+    interface Loader<T> {
+        T load();
+    }
+
+    /**
+     * 结果权重计算
+     */
+    interface Weigher<T> {
+        long weigh(T value);
+    }
+
+    private static final int MAX_ENTRIES = 128;
+    private static final long MAX_WEIGHT = 2_000_000L;
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalWeight;
+
+    private static final class Entry {
+        final long length;
+        final long lastModified;
+        final long weight;
+        final SoftReference<Object> value;
+
+        Entry(long length, long lastModified, long weight, Object value) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.weight = weight;
+            this.value = new SoftReference<>(value);
+        }
+    }
+
+    private ParsedDataCache() {
+    }
+
+    /**
+     * 获取缓存的解析结果，未命中或文件已变化时调用加载器并缓存
+     *
+     * @param file    源文件
+     * @param part    文件内的内容标识（如 "headers:0"）
+     * @param weigher 结果的权重计算（单元格数等），为 null 时按 1 计算
+     * @param loader  加载器
+     */
+    static <T> T get(File file, String part, Weigher<T> weigher, Loader<T> loader) {
+        String key = keyOf(file) + "#" + part;
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (ParsedDataCache.class) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                Object value = entry.value.get();
+                if (value != null && entry.length == length && entry.lastModified == lastModified) {
+                    @SuppressWarnings("unchecked")
+                    T cached = (T) value;
+                    return cached;
+                }
+                remove(key);
+            }
+        }
+
+        // 加载在锁外进行，避免不同文件的解析互相阻塞
+        T value = loader.load();
+        if (value == null) {
+            return null;
+        }
+        long entryWeight = weigher != null ? Math.max(1L, weigher.weigh(value)) : 1L;
+        if (entryWeight > MAX_WEIGHT) {
+            // 单个结果超过缓存容量，不缓存
+            return value;
+        }
+
+        synchronized (ParsedDataCache.class) {
+            remove(key);
+            ENTRIES.put(key, new Entry(length, lastModified, entryWeight, value));
+            totalWeight += entryWeight;
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * 清空缓存
+     */
+    static synchronized void clear() {
+        ENTRIES.clear();
+        totalWeight = 0;
+    }
+
+    private static void remove(String key) {
+        Entry removed = ENTRIES.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private static void evict() {
+        Iterator<Entry> iterator = ENTRIES.values().iterator();
+        while (iterator.hasNext() && (ENTRIES.size() > MAX_ENTRIES || totalWeight > MAX_WEIGHT)) {
+            totalWeight -= iterator.next().weight;
+            iterator.remove();
+        }
+        // 顺带清理已被 GC 回收的条目
+        iterator = ENTRIES.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.value.get() == null) {
+                totalWeight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String keyOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次操作的性能报告
+ * 记录各阶段（与进度阶段相同，另有复制工作簿、列运算两个子步骤）的耗时和分配的内存、
+ * 整个操作的堆内存峰值，以及输入输出行数、匹配行数等计数。
+ * 分配的内存是所有线程（包括并行加载、探测、压缩的线程）分配字节数之和，只在阶段开始和结束时读取；
+ * 堆内存峰值是操作期间定时采样（以及各阶段开始、结束时）的堆内存使用量的最大值，
+ * 是整个进程的使用量（包括同时运行的其他操作），采样之间的短暂峰值可能漏掉；
+ * 不重置 JVM 的内存池峰值，同时运行的操作互不影响。
+ * 运行时没有 java.management / jdk.management 模块时这两项为 -1（未知）。
+ */
+public final class PerformanceReport {
+
+    /**
+     * 计数项
+     */
+    public enum Count {
+        TABLE1_ROWS("表1行数"),
+        TABLE2_ROWS("表2行数"),
+        TABLE3_ROWS("表3行数"),
+        INPUT_ROWS("输入行数"),
+        MATCHED_ROWS("匹配行数"),
+        FILTERED_ROWS("过滤行数"),
+        OUTPUT_ROWS("输出行数");
+
+        private final String displayName;
+
+        Count(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 一个阶段或子步骤的耗时
+     */
+    public static final class Timing {
+        private final String name;
+        private final String displayName;
+        private final boolean step;
+        private long startNanos;
+        private long startAllocated;
+        private long wallNanos;
+        private long allocatedBytes = -1;
+
+        private Timing(String name, String displayName, boolean step) {
+            this.name = name;
+            this.displayName = displayName;
+            this.step = step;
+        }
+
+        /**
+         * 名称（JSON 中使用，如 LOAD、COPY_WORKBOOK）
+         */
+        public String getName() {
+            return name;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 是否为所在阶段内的子步骤（耗时已包含在阶段中）
+         */
+        public boolean isStep() {
+            return step;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * 分配的字节数，未知时为 -1
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    // 取不到（运行时缺少管理模块）时为 null
+    private static final com.sun.management.ThreadMXBean THREADS;
+    private static final List<MemoryPoolMXBean> HEAP_POOLS;
+
+    // 堆内存使用量的采样间隔（毫秒）
+    private static final long HEAP_SAMPLE_MILLIS = 50;
+    private static final ScheduledExecutorService HEAP_SAMPLER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "excel-heap-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        com.sun.management.ThreadMXBean threads = null;
+        List<MemoryPoolMXBean> heapPools = Collections.emptyList();
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                threads = (com.sun.management.ThreadMXBean) bean;
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+            heapPools = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    heapPools.add(pool);
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            threads = null;
+            heapPools = Collections.emptyList();
+        }
+        THREADS = threads;
+        HEAP_POOLS = heapPools;
+    }
+
+    private final String operation;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated;
+    private final List<Timing> timings = new ArrayList<>();
+    private final Map<Count, Long> counts = new EnumMap<>(Count.class);
+    private long wallNanos;
+    private long allocatedBytes = -1;
+    private long peakHeapBytes = -1;
+    private boolean success;
+    private boolean cancelled;
+    private File outputFile;
+    private File savedFile;
+    private ScheduledFuture<?> heapSampling;
+
+    /**
+     * 开始记录（开始定时采样堆内存使用量）
+     *
+     * @param operation 操作名称
+     */
+    PerformanceReport(String operation) {
+        this.operation = operation;
+        this.startAllocated = allocatedBytes();
+        if (!HEAP_POOLS.isEmpty()) {
+            sampleHeap();
+            heapSampling = HEAP_SAMPLER.scheduleAtFixedRate(
+                    this::sampleHeap, HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 开始一个阶段或子步骤
+     */
+    synchronized Timing start(String name, String displayName, boolean step) {
+        Timing timing = new Timing(name, displayName, step);
+        timing.startNanos = System.nanoTime();
+        timing.startAllocated = allocatedBytes();
+        timings.add(timing);
+        sampleHeap();
+        return timing;
+    }
+
+    /**
+     * 结束一个阶段或子步骤
+     */
+    synchronized void stop(Timing timing) {
+        timing.wallNanos = System.nanoTime() - timing.startNanos;
+        timing.allocatedBytes = allocatedSince(timing.startAllocated);
+        sampleHeap();
+    }
+
+    /**
+     * 记录在逐行循环中累计的子步骤耗时（不统计分配）
+     */
+    synchronized void addStep(String name, String displayName, long wallNanos) {
+        Timing timing = new Timing(name, displayName, true);
+        timing.wallNanos = wallNanos;
+        timings.add(timing);
+    }
+
+    synchronized void setCount(Count count, long value) {
+        counts.put(count, value);
+    }
+
+    synchronized void markSucceeded() {
+        success = true;
+    }
+
+    /**
+     * 结束记录
+     *
+     * @param cancelled  操作是否被取消
+     * @param outputFile 输出文件
+     */
+    synchronized void finish(boolean cancelled, File outputFile) {
+        this.wallNanos = System.nanoTime() - startNanos;
+        this.allocatedBytes = allocatedSince(startAllocated);
+        this.cancelled = cancelled;
+        this.outputFile = outputFile;
+        if (heapSampling != null) {
+            heapSampling.cancel(false);
+            heapSampling = null;
+        }
+        sampleHeap();
+    }
+
+    /**
+     * 采样当前的堆内存使用量（各堆内存池使用量之和），更新峰值
+     */
+    private synchronized void sampleHeap() {
+        if (HEAP_POOLS.isEmpty()) {
+            return;
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            used += pool.getUsage().getUsed();
+        }
+        peakHeapBytes = Math.max(peakHeapBytes, used);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public synchronized boolean isSuccess() {
+        return success;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * 整个操作分配的字节数，未知时为 -1
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * 操作期间采样到的进程堆内存峰值（字节），未知时为 -1
+     */
+    public synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public synchronized List<Timing> getTimings() {
+        return new ArrayList<>(timings);
+    }
+
+    public synchronized Map<Count, Long> getCounts() {
+        return new EnumMap<>(counts);
+    }
+
+    /**
+     * 格式化为多行文本（显示在日志区域）
+     */
+    public synchronized String format() {
+        StringBuilder text = new StringBuilder();
+        text.append("=== 性能报告: ").append(operation).append(" ===\n");
+        text.append("总耗时 ").append(formatSeconds(wallNanos))
+                .append("，分配 ").append(formatBytes(allocatedBytes))
+                .append("，进程堆内存峰值约 ").append(formatBytes(peakHeapBytes)).append('\n');
+        for (Timing timing : timings) {
+            text.append(timing.step ? "    └ " : "  ").append(timing.displayName).append(": ")
+                    .append(formatSeconds(timing.wallNanos));
+            if (timing.allocatedBytes >= 0) {
+                text.append("，分配 ").append(formatBytes(timing.allocatedBytes));
+            }
+            text.append('\n');
+        }
+        if (!counts.isEmpty()) {
+            StringBuilder line = new StringBuilder();
+            for (Map.Entry<Count, Long> count : counts.entrySet()) {
+                if (line.length() > 0) {
+                    line.append("，");
+                }
+                line.append(count.getKey().getDisplayName()).append(' ').append(String.format("%,d", count.getValue()));
+            }
+            text.append("  ").append(line).append('\n');
+        }
+        // 去掉末尾换行（界面日志逐行追加）
+        text.setLength(text.length() - 1);
+        return text.toString();
+    }
+
+    /**
+     * 格式化为 JSON（便于跨版本比较）
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"operation\": ").append(quote(operation)).append(",\n");
+        json.append("  \"startTime\": ")
+                .append(quote(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(startTime))))
+                .append(",\n");
+        json.append("  \"success\": ").append(success).append(",\n");
+        json.append("  \"cancelled\": ").append(cancelled).append(",\n");
+        json.append("  \"outputFile\": ").append(outputFile != null ? quote(outputFile.getName()) : "null").append(",\n");
+        json.append("  \"wallMillis\": ").append(millis(wallNanos)).append(",\n");
+        json.append("  \"allocatedBytes\": ").append(allocatedBytes).append(",\n");
+        json.append("  \"peakHeapBytes\": ").append(peakHeapBytes).append(",\n");
+        json.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+        json.append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"javaVersion\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"phases\": [");
+        for (int i = 0; i < timings.size(); i++) {
+            Timing timing = timings.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(quote(timing.name))
+                    .append(", \"displayName\": ").append(quote(timing.displayName))
+                    .append(", \"step\": ").append(timing.step)
+                    .append(", \"wallMillis\": ").append(millis(timing.wallNanos))
+                    .append(", \"allocatedBytes\": ").append(timing.allocatedBytes).append('}');
+        }
+        json.append(timings.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"counts\": {");
+        boolean first = true;
+        for (Map.Entry<Count, Long> count : counts.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            json.append("    ").append(quote(count.getKey().name())).append(": ").append(count.getValue());
+            first = false;
+        }
+        json.append(counts.isEmpty() ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * 写出 JSON 文件，成功后记录为已保存的文件
+     */
+    public void writeJson(File file) throws IOException {
+        Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            savedFile = file;
+        }
+    }
+
+    /**
+     * 已保存的 JSON 文件，未保存（未开启、保存失败）时为 null
+     */
+    public synchronized File getSavedFile() {
+        return savedFile;
+    }
+
+    /**
+     * 输出文件旁的报告文件：与输出文件同目录，文件名为 输出文件名（去掉扩展名）.perf.json
+     */
+    public static File jsonFileFor(File outputFile) {
+        String name = outputFile.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(outputFile.getAbsoluteFile().getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + ".perf.json");
+    }
+
+    /**
+     * 所有存活线程已分配的字节数之和，不支持时为 -1
+     */
+    private static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 之后分配的字节数（期间结束的线程的分配不再计入，结果可能偏小，不会为负）
+     */
+    private static long allocatedSince(long start) {
+        if (start < 0) {
+            return -1;
+        }
+        long now = allocatedBytes();
+        return now < 0 ? -1 : Math.max(0, now - start);
+    }
+
+    private static String millis(long nanos) {
+        // JSON 数字固定使用小数点
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format("%.2f 秒", nanos / 1e9);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "未知";
+        }
+        return String.format("%,.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 表1逐行探测的并行执行
+ * 索引构建完成后，表1各行的空值过滤、关联键构建、排除判断和减法计算互不依赖，
+ * 按行区间拆分到 ForkJoin 线程池并行执行。探测读取预先按行取出的表1列（LookupTable），不并发访问 POI 单元格。
+ * 每行的结果写入按行号下标的数组，之后由调用线程按行号顺序统一写入 POI 单元格，输出与顺序执行完全相同。
+ */
+final class ProbePool {
+
+    /**
+     * 处理 [from, to) 区间内的行，同一区间在一个线程中按顺序执行
+     */
+    interface RangeTask {
+        void run(int from, int to);
+    }
+
+    // 每个任务至少处理的行数，行数不足时不拆分
+    private static final int MIN_RANGE = 1024;
+
+    private static final ForkJoinPool POOL;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("excel-probe-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    private ProbePool() {
+    }
+
+    /**
+     * 按行区间并行执行，所有区间完成后返回；任务抛出的异常在调用线程重新抛出
+     * 单核时在调用线程按顺序逐个区间执行（区间同样不超过 MIN_RANGE 行，任务在区间之间上报进度、检查取消）
+     *
+     * @param from 起始行（包含）
+     * @param to   结束行（不包含）
+     */
+    static void forEachRange(int from, int to, RangeTask task) {
+        if (to - from <= MIN_RANGE) {
+            task.run(from, to);
+            return;
+        }
+        if (POOL.getParallelism() == 1) {
+            for (int start = from; start < to; start += MIN_RANGE) {
+                task.run(start, Math.min(to, start + MIN_RANGE));
+            }
+            return;
+        }
+        POOL.invoke(new RangeAction(from, to, task));
+    }
+
+    private static final class RangeAction extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final RangeTask task;
+
+        RangeAction(int from, int to, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_RANGE) {
+                task.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, middle, task), new RangeAction(middle, to, task));
+        }
+    }
+}
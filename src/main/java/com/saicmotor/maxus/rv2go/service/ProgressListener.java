@@ -0,0 +1,64 @@
+package com.saicmotor.maxus.rv2go.service;
+
+/**
+ * 处理进度监听器
+ * ExcelService 的合并、导出和电子发票处理在每个阶段开始和结束时回调，阶段进行中最多每 100 毫秒回调一次。
+ * 回调可能来自后台线程（包括并行探测的工作线程），更新界面时需要切换到事件分派线程。
+ */
+public interface ProgressListener {
+
+    /**
+     * 处理阶段（按执行顺序，不是每个操作都有全部阶段）
+     */
+    enum Phase {
+        /**
+         * 读取输入文件（复制输出时包括复制主表工作簿），按文件计数，进行中总数未知
+         */
+        LOAD("读取文件", "个文件"),
+        /**
+         * 为关联表建立索引，按行计数
+         */
+        INDEX("建立索引", "行"),
+        /**
+         * 逐行匹配主表，按行计数
+         */
+        PROBE("匹配数据", "行"),
+        /**
+         * 写入输出行，按行计数（直通输出时包括写出文件）
+         */
+        WRITE("写入数据", "行"),
+        /**
+         * 保存输出文件，按文件计数，进行中总数未知
+         */
+        SAVE("保存文件", "个文件");
+
+        private final String displayName;
+        private final String unit;
+
+        Phase(String displayName, String unit) {
+            this.displayName = displayName;
+            this.unit = unit;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 计数单位（"行" 或 "个文件"）
+         */
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    /**
+     * 进度回调
+     *
+     * @param phase         当前阶段
+     * @param done          已完成的数量
+     * @param total         总数量，未知时为 -1
+     * @param ratePerSecond 本阶段开始以来平均每秒完成的数量
+     */
+    void onProgress(Phase phase, long done, long total, double ratePerSecond);
+}
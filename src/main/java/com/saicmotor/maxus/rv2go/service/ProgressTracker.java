@@ -0,0 +1,180 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次操作的进度上报、取消检查和性能记录
+ * 逐行循环中每行只做一次计数比较（update），每 CHECK_INTERVAL 行才检查一次取消和读取一次时钟，
+ * 距上次回调不足 REPORT_INTERVAL_NANOS 时不回调；没有监听器和取消标记时比较永远不成立，不影响处理速度。
+ * update 只能在一个线程中调用；并行探测的各区间完成后用 add 累加（可在多个线程中调用）。
+ * 检查到取消时抛出 CancellationException，由操作的异常处理统一清理。
+ * 各阶段的耗时和分配的内存总是记录到性能报告（只在阶段开始和结束时读取，不影响逐行循环）。
+ * 正在录制 JFR 时每个阶段另外记录一个处理阶段事件。
+ */
+final class ProgressTracker {
+
+    // 每处理这么多行检查一次是否需要回调、是否已取消
+    private static final long CHECK_INTERVAL = 1024;
+    // 两次回调的最小间隔
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+
+    private final ProgressListener listener;
+    private final CancellationToken cancellation;
+    private final PerformanceReport report;
+    private final AtomicLong added = new AtomicLong();
+    private ProgressListener.Phase phase;
+    private long total;
+    private long phaseStart;
+    private long lastReport;
+    private long nextCheck = Long.MAX_VALUE;
+    private PerformanceReport.Timing phaseTiming;
+    private ExcelEvents.PhaseEvent phaseEvent;
+
+    /**
+     * @param operation    操作名称（性能报告中使用）
+     * @param listener     监听器，为 null 时不上报
+     * @param cancellation 取消标记，为 null 时不能取消
+     */
+    ProgressTracker(String operation, ProgressListener listener, CancellationToken cancellation) {
+        this.listener = listener;
+        this.cancellation = cancellation;
+        this.report = new PerformanceReport(operation);
+    }
+
+    /**
+     * 本次操作的性能报告
+     */
+    PerformanceReport report() {
+        return report;
+    }
+
+    /**
+     * 开始一个阶段
+     *
+     * @param total 总数量，未知时为 -1
+     */
+    synchronized void begin(ProgressListener.Phase phase, long total) {
+        stopPhaseTiming();
+        phaseTiming = report.start(phase.name(), phase.getDisplayName(), false);
+        phaseEvent = ExcelEvents.phase(report.getOperation(), phase, total);
+        if (listener == null && cancellation == null) {
+            return;
+        }
+        checkCancelled();
+        this.phase = phase;
+        this.total = total;
+        this.phaseStart = System.nanoTime();
+        this.nextCheck = CHECK_INTERVAL;
+        added.set(0);
+        report(0, true);
+    }
+
+    /**
+     * 更新已完成的数量（逐行循环中调用）
+     */
+    void update(long done) {
+        if (done < nextCheck) {
+            return;
+        }
+        nextCheck = done + CHECK_INTERVAL;
+        checkCancelled();
+        report(done, false);
+    }
+
+    /**
+     * 累加已完成的数量（并行区间完成时调用）
+     */
+    void add(long count) {
+        if (listener == null && cancellation == null) {
+            return;
+        }
+        checkCancelled();
+        report(added.addAndGet(count), false);
+    }
+
+    /**
+     * 结束当前阶段，总数未知时以完成数量作为总数
+     */
+    synchronized void end(long done) {
+        if (phaseEvent != null) {
+            phaseEvent.end(done, true);
+            phaseEvent = null;
+        }
+        stopPhaseTiming();
+        if (listener == null && cancellation == null) {
+            return;
+        }
+        if (total < 0) {
+            total = done;
+        }
+        nextCheck = Long.MAX_VALUE;
+        report(done, true);
+    }
+
+    /**
+     * 结束性能记录（操作结束时调用，异常中断的阶段记录到中断时为止）
+     *
+     * @param outputFile 输出文件
+     */
+    synchronized PerformanceReport finish(File outputFile) {
+        stopPhaseTiming();
+        report.finish(isCancelled(), outputFile);
+        return report;
+    }
+
+    /**
+     * 是否已请求取消
+     */
+    boolean isCancelled() {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    /**
+     * 已请求取消时抛出 CancellationException（可在任意线程中调用）
+     */
+    void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("操作已取消");
+        }
+    }
+
+    /**
+     * 每读取一行先检查取消的逐行读取回调（读取表2、表3时使用）
+     */
+    StreamingSheetReader.RowHandler checking(StreamingSheetReader.RowHandler handler) {
+        if (cancellation == null) {
+            return handler;
+        }
+        return (rowNum, row) -> {
+            checkCancelled();
+            return handler.handleRow(rowNum, row);
+        };
+    }
+
+    private void stopPhaseTiming() {
+        if (phaseTiming != null) {
+            report.stop(phaseTiming);
+            phaseTiming = null;
+        }
+        if (phaseEvent != null) {
+            // 阶段没有正常结束（取消或异常中断）
+            phaseEvent.end(-1, false);
+            phaseEvent = null;
+        }
+    }
+
+    private synchronized void report(long done, boolean force) {
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!force && now - lastReport < REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        lastReport = now;
+        double seconds = (now - phaseStart) / 1e9;
+        listener.onProgress(phase, done, total, seconds > 0 ? done / seconds : 0);
+    }
+}
@@ -0,0 +1,23 @@
+package com.saicmotor.maxus.rv2go.service;
+
+/**
+ * 按关联键查找表2的行并读取要合并的列
+ * 由内存中的查找表 + 关联键索引，或内存映射的查找存储（MappedLookupStore）实现
+ */
+interface RowLookup {
+
+    /**
+     * 查找关联键对应的行 id（重复键返回最后一行），不存在时返回 -1
+     */
+    int find(JoinIndex.Key key);
+
+    /**
+     * 该行在源文件中是否存在此列的单元格（即使值为空）
+     */
+    boolean hasCell(int rowId, String columnName);
+
+    /**
+     * 获取单元格值，列不存在或单元格为空时返回 null（值类型与 ExcelService#getCellValue 一致）
+     */
+    Object getValue(int rowId, String columnName);
+}
@@ -0,0 +1,650 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.util.CellReference;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * xlsx 直通输出：只改写目标 sheet 页，其余包部件原样复制
+ * 目标 sheet 页的 XML 用 StAX 逐行流式改写（每次只在内存中保留一行），行内容由 SheetEditor 修改；
+ * 其他 sheet 页、图片、透视表缓存、共享字符串等部件直接复制压缩数据，不解压也不重新压缩。
+ * 新写入的文本使用内联字符串（inlineStr），不修改共享字符串表；
+ * 需要新样式时由调用方提供改写后的 styles.xml。
+ * 共享公式在改写时展开为普通公式，清除了公式单元格时删除计算链（calcChain），Excel 打开时重建。
+ */
+final class SheetPassthroughWriter {
+
+    /**
+     * 目标 sheet 页的改写回调
+     */
+    interface SheetEditor {
+        /**
+         * 修改一行（按行号顺序调用，只对源文件中存在的行调用）
+         */
+        void editRow(XmlRow row) throws IOException;
+
+        /**
+         * 共享公式单元格展开后的公式文本
+         */
+        String formulaAt(int rowNum, int column);
+
+        /**
+         * 所有行改写完后追加到 sheet 页的 conditionalFormatting 元素（完整 XML 文本），没有时返回空列表
+         */
+        List<String> conditionalFormattings();
+
+        /**
+         * 需要替换的其他包部件（部件名，如 /xl/styles.xml -> 新内容），所有行改写完后调用
+         */
+        Map<String, byte[]> replacedParts() throws IOException;
+    }
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+    // worksheet 中位于 conditionalFormatting 之后的元素（按 schema 顺序），新的条件格式插入到它们之前
+    private static final Set<String> AFTER_CONDITIONAL_FORMATTING = new HashSet<>(Arrays.asList(
+            "dataValidations", "hyperlinks", "printOptions", "pageMargins", "pageSetup", "headerFooter",
+            "rowBreaks", "colBreaks", "customProperties", "cellWatches", "ignoredErrors", "smartTags",
+            "drawing", "legacyDrawing", "legacyDrawingHF", "drawingHF", "picture", "oleObjects", "controls",
+            "webPublishItems", "tableParts", "extLst"));
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final String prefix;
+    private final String namespace;
+    private boolean formulaRemoved;
+
+    private SheetPassthroughWriter(String prefix, String namespace) {
+        this.prefix = prefix;
+        this.namespace = namespace;
+    }
+
+    /**
+     * 写出改写后的工作簿
+     *
+     * @param source    源 xlsx 文件
+     * @param output    输出文件
+     * @param sheetPart 目标 sheet 页的部件名（如 /xl/worksheets/sheet1.xml）
+     * @param calcChainPart 计算链部件名，没有时为 null
+     * @param compressionLevel 改写的部件的压缩级别（原样复制的部件保持原来的压缩数据）
+     * @param editor    改写回调
+     */
+    static void write(File source, File output, String sheetPart, String calcChainPart, int compressionLevel,
+                      SheetEditor editor) throws IOException {
+        File sheetXml = File.createTempFile("sheet-", ".xml");
+        try (ZipFile zip = new ZipFile(source)) {
+            ZipArchiveEntry sheetEntry = findEntry(zip, sheetPart);
+            if (sheetEntry == null) {
+                throw new IOException("工作簿中没有 sheet 页部件: " + sheetPart);
+            }
+
+            // 先改写目标 sheet 页（之后才知道是否需要替换样式、删除计算链）
+            SheetPassthroughWriter writer;
+            try (InputStream in = zip.getInputStream(sheetEntry);
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(sheetXml), 1 << 16)) {
+                writer = rewriteSheet(in, out, editor);
+            } catch (XMLStreamException e) {
+                throw new IOException("改写 sheet 页失败: " + e.getMessage(), e);
+            }
+            Map<String, byte[]> replacedParts = editor.replacedParts();
+            boolean dropCalcChain = writer.formulaRemoved && calcChainPart != null;
+
+            try (ZipArchiveOutputStream out = new ParallelDeflateZipOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(output), 1 << 16), compressionLevel)) {
+                Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    String partName = "/" + entry.getName();
+                    if (entry == sheetEntry) {
+                        putEntry(out, entry.getName(), null, sheetXml);
+                    } else if (replacedPart(replacedParts, partName) != null) {
+                        putEntry(out, entry.getName(), replacedPart(replacedParts, partName), null);
+                    } else if (dropCalcChain && partName.equalsIgnoreCase(calcChainPart)) {
+                        // 删除计算链
+                    } else if (dropCalcChain && (partName.equals("/[Content_Types].xml")
+                            || partName.endsWith(".rels"))) {
+                        // 去掉计算链的内容类型和关系
+                        putEntry(out, entry.getName(), filterCalcChain(zip, entry, calcChainPart), null);
+                    } else {
+                        // 原样复制压缩数据
+                        out.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                    }
+                }
+            }
+        } finally {
+            if (!sheetXml.delete()) {
+                sheetXml.deleteOnExit();
+            }
+        }
+    }
+
+    private static ZipArchiveEntry findEntry(ZipFile zip, String partName) {
+        Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            // 部件名不区分大小写
+            if (("/" + entry.getName()).equalsIgnoreCase(partName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] replacedPart(Map<String, byte[]> replacedParts, String partName) {
+        for (Map.Entry<String, byte[]> part : replacedParts.entrySet()) {
+            if (part.getKey().equalsIgnoreCase(partName)) {
+                return part.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入一个压缩条目，content 为 null 时从 file 读取
+     */
+    private static void putEntry(ZipArchiveOutputStream out, String name, byte[] content, File file)
+            throws IOException {
+        out.putArchiveEntry(new ZipArchiveEntry(name));
+        if (content != null) {
+            out.write(content);
+        } else {
+            Files.copy(file.toPath(), out);
+        }
+        out.closeArchiveEntry();
+    }
+
+    /**
+     * 从内容类型或关系部件中去掉指向计算链的条目
+     */
+    private static byte[] filterCalcChain(ZipFile zip, ZipArchiveEntry entry, String calcChainPart)
+            throws IOException {
+        String calcChainFile = calcChainPart.substring(calcChainPart.lastIndexOf('/') + 1);
+        Predicate<StartElement> isCalcChain = element -> {
+            Attribute partName = element.getAttributeByName(new QName("PartName"));
+            Attribute target = element.getAttributeByName(new QName("Target"));
+            return partName != null && partName.getValue().equalsIgnoreCase(calcChainPart)
+                    || target != null && target.getValue().endsWith(calcChainFile)
+                    && target.getValue().toLowerCase().contains("calcchain");
+        };
+        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(zip.getInputStream(entry))) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(in);
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(buffer, "UTF-8");
+            int skipDepth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartDocument()) {
+                    writer.add(EVENTS.createStartDocument("UTF-8", "1.0", true));
+                    continue;
+                }
+                if (skipDepth > 0) {
+                    if (event.isStartElement()) skipDepth++;
+                    if (event.isEndElement()) skipDepth--;
+                    continue;
+                }
+                if (event.isStartElement() && isCalcChain.test(event.asStartElement())) {
+                    skipDepth = 1;
+                    continue;
+                }
+                writer.add(event);
+            }
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("改写部件失败: " + entry.getName() + " - " + e.getMessage(), e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 流式改写 sheet 页 XML
+     */
+    private static SheetPassthroughWriter rewriteSheet(InputStream in, OutputStream out, SheetEditor editor)
+            throws XMLStreamException, IOException {
+        XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(new BufferedInputStream(in, 1 << 16));
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(out, "UTF-8");
+        SheetPassthroughWriter context = null;
+        int depth = 0;
+        int lastRowNum = -1;
+        boolean sheetDataDone = false;
+        boolean formattingInserted = false;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartDocument()) {
+                writer.add(EVENTS.createStartDocument("UTF-8", "1.0", true));
+                continue;
+            }
+            if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                depth++;
+                if (depth == 1) {
+                    // 新元素使用与 worksheet 相同的前缀和命名空间
+                    context = new SheetPassthroughWriter(start.getName().getPrefix(),
+                            start.getName().getNamespaceURI().isEmpty() ? MAIN_NS : start.getName().getNamespaceURI());
+                } else if (depth == 2 && sheetDataDone && !formattingInserted
+                        && AFTER_CONDITIONAL_FORMATTING.contains(start.getName().getLocalPart())) {
+                    context.writeFragments(writer, editor.conditionalFormattings());
+                    formattingInserted = true;
+                } else if (depth == 3 && start.getName().getLocalPart().equals("row")) {
+                    XmlRow row = context.readRow(reader, start, lastRowNum);
+                    lastRowNum = row.rowNum;
+                    editor.editRow(row);
+                    context.writeRow(writer, row, editor);
+                    depth--;
+                    continue;
+                }
+            } else if (event.isEndElement()) {
+                String name = event.asEndElement().getName().getLocalPart();
+                if (depth == 2 && name.equals("sheetData")) {
+                    sheetDataDone = true;
+                } else if (depth == 1 && !formattingInserted) {
+                    context.writeFragments(writer, editor.conditionalFormattings());
+                    formattingInserted = true;
+                }
+                depth--;
+            }
+            writer.add(event);
+        }
+        writer.close();
+        return context;
+    }
+
+    /**
+     * 读取一行及其单元格（不含行结束标签之后的内容）
+     */
+    private XmlRow readRow(XMLEventReader reader, StartElement start, int lastRowNum) throws XMLStreamException {
+        Attribute r = start.getAttributeByName(new QName("r"));
+        XmlRow row = new XmlRow(r != null ? Integer.parseInt(r.getValue()) - 1 : lastRowNum + 1, start);
+        int lastColumn = -1;
+        while (true) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isEndElement()) {
+                return row;
+            }
+            if (!event.isStartElement()) {
+                continue;
+            }
+            StartElement child = event.asStartElement();
+            List<XMLEvent> content = readChildren(reader);
+            if (child.getName().getLocalPart().equals("c")) {
+                XmlCell cell = new XmlCell(child, content, lastColumn);
+                lastColumn = cell.column;
+                row.cells.add(cell);
+            } else {
+                // 行内的其他元素（如 extLst）放在所有单元格之后
+                row.trailing.add(child);
+                row.trailing.addAll(content);
+            }
+        }
+    }
+
+    /**
+     * 读取当前元素的所有子节点，直到（包含）当前元素的结束标签
+     */
+    private static List<XMLEvent> readChildren(XMLEventReader reader) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<>();
+        int depth = 1;
+        while (true) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) depth++;
+            if (event.isEndElement() && --depth == 0) {
+                events.add(event);
+                return events;
+            }
+            events.add(event);
+        }
+    }
+
+    private void writeRow(XMLEventWriter writer, XmlRow row, SheetEditor editor) throws XMLStreamException {
+        List<Attribute> attributes = new ArrayList<>();
+        attributes.add(EVENTS.createAttribute("r", String.valueOf(row.rowNum + 1)));
+        for (Iterator<?> it = row.start.getAttributes(); it.hasNext(); ) {
+            Attribute attribute = (Attribute) it.next();
+            String name = attribute.getName().getLocalPart();
+            // 新增单元格后原来的 spans 可能不准确，spans 是可选的提示，直接去掉
+            if (!attribute.getName().getNamespaceURI().isEmpty()
+                    || !name.equals("r") && !(name.equals("spans") && row.cellsAdded)) {
+                attributes.add(attribute);
+            }
+        }
+        writer.add(EVENTS.createStartElement(row.start.getName(), attributes.iterator(), row.start.getNamespaces()));
+        for (XmlCell cell : row.cells) {
+            writeCell(writer, row.rowNum, cell, editor);
+        }
+        for (XMLEvent event : row.trailing) {
+            writer.add(event);
+        }
+        writer.add(EVENTS.createEndElement(row.start.getName(), null));
+    }
+
+    private void writeCell(XMLEventWriter writer, int rowNum, XmlCell cell, SheetEditor editor)
+            throws XMLStreamException {
+        List<Attribute> attributes = new ArrayList<>();
+        attributes.add(EVENTS.createAttribute("r", CellReference.convertNumToColString(cell.column) + (rowNum + 1)));
+        if (cell.style != 0) {
+            attributes.add(EVENTS.createAttribute("s", String.valueOf(cell.style)));
+        }
+        if (cell.type != null) {
+            attributes.add(EVENTS.createAttribute("t", cell.type));
+        }
+        attributes.addAll(cell.otherAttributes);
+        QName name = cell.start != null ? cell.start.getName() : new QName(namespace, "c", prefix);
+        writer.add(EVENTS.createStartElement(name, attributes.iterator(),
+                cell.start != null ? cell.start.getNamespaces() : null));
+
+        if (cell.content != null) {
+            writeOriginalContent(writer, rowNum, cell, editor);
+        } else if (cell.text != null && "inlineStr".equals(cell.type)) {
+            writer.add(EVENTS.createStartElement(prefix, namespace, "is"));
+            boolean preserve = !cell.text.isEmpty() && (Character.isWhitespace(cell.text.charAt(0))
+                    || Character.isWhitespace(cell.text.charAt(cell.text.length() - 1)));
+            writer.add(EVENTS.createStartElement(prefix, namespace, "t"));
+            if (preserve) {
+                writer.add(EVENTS.createAttribute("xml", XML_NS, "space", "preserve"));
+            }
+            writer.add(EVENTS.createCharacters(encodeControlChars(cell.text)));
+            writer.add(EVENTS.createEndElement(prefix, namespace, "t"));
+            writer.add(EVENTS.createEndElement(prefix, namespace, "is"));
+        } else if (cell.text != null) {
+            writer.add(EVENTS.createStartElement(prefix, namespace, "v"));
+            writer.add(EVENTS.createCharacters(cell.text));
+            writer.add(EVENTS.createEndElement(prefix, namespace, "v"));
+        }
+        writer.add(EVENTS.createEndElement(name, null));
+    }
+
+    /**
+     * 输出单元格原来的子元素，共享公式展开为普通公式
+     */
+    private void writeOriginalContent(XMLEventWriter writer, int rowNum, XmlCell cell, SheetEditor editor)
+            throws XMLStreamException {
+        List<XMLEvent> content = cell.content;
+        for (int i = 0; i < content.size(); i++) {
+            XMLEvent event = content.get(i);
+            if (event.isStartElement() && event.asStartElement().getName().getLocalPart().equals("f")) {
+                Attribute type = event.asStartElement().getAttributeByName(new QName("t"));
+                if (type != null && type.getValue().equals("shared")) {
+                    QName f = event.asStartElement().getName();
+                    writer.add(EVENTS.createStartElement(f, null, null));
+                    writer.add(EVENTS.createCharacters(editor.formulaAt(rowNum, cell.column)));
+                    writer.add(EVENTS.createEndElement(f, null));
+                    // 跳过原来的 f 元素
+                    int depth = 1;
+                    while (depth > 0) {
+                        XMLEvent skipped = content.get(++i);
+                        if (skipped.isStartElement()) depth++;
+                        if (skipped.isEndElement()) depth--;
+                    }
+                    continue;
+                }
+            }
+            if (i == content.size() - 1 && event.isEndElement()) {
+                // 最后一个事件是单元格自身的结束标签，由调用方输出
+                break;
+            }
+            writer.add(event);
+        }
+    }
+
+    private void writeFragments(XMLEventWriter writer, List<String> fragments) throws XMLStreamException {
+        for (String fragment : fragments) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(new StringReader(fragment));
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (!event.isStartDocument() && !event.isEndDocument()) {
+                    writer.add(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * 控制字符按 Excel 的方式编码为 _xHHHH_（XML 1.0 不允许大部分控制字符，回车读取时会被规范化为换行）
+     */
+    private static String encodeControlChars(String text) {
+        StringBuilder builder = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n') {
+                if (builder == null) {
+                    builder = new StringBuilder(text.length() + 16).append(text, 0, i);
+                }
+                builder.append(String.format("_x%04X_", (int) c));
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder != null ? builder.toString() : text;
+    }
+
+    /**
+     * 改写中的一行
+     */
+    final class XmlRow {
+        final int rowNum;
+        private final StartElement start;
+        private final List<XmlCell> cells = new ArrayList<>();
+        private final List<XMLEvent> trailing = new ArrayList<>();
+        private boolean cellsAdded;
+
+        private XmlRow(int rowNum, StartElement start) {
+            this.rowNum = rowNum;
+            this.start = start;
+        }
+
+        /**
+         * 行号（从0开始）
+         */
+        int getRowNum() {
+            return rowNum;
+        }
+
+        /**
+         * 源文件中已有的单元格（按列顺序）
+         */
+        List<XmlCell> getCells() {
+            return Collections.unmodifiableList(cells);
+        }
+
+        /**
+         * 获取单元格，不存在时返回 null
+         */
+        XmlCell getCell(int column) {
+            int index = indexOf(column);
+            return index >= 0 ? cells.get(index) : null;
+        }
+
+        /**
+         * 获取单元格，不存在时按列顺序插入新的空单元格
+         */
+        XmlCell getOrCreateCell(int column) {
+            int index = indexOf(column);
+            if (index >= 0) {
+                return cells.get(index);
+            }
+            XmlCell cell = new XmlCell(column);
+            cells.add(-index - 1, cell);
+            cellsAdded = true;
+            return cell;
+        }
+
+        private int indexOf(int column) {
+            int low = 0;
+            int high = cells.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int value = cells.get(middle).column;
+                if (value < column) {
+                    low = middle + 1;
+                } else if (value > column) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    /**
+     * 改写中的一个单元格：未修改时原样输出子元素，修改后输出新值
+     */
+    final class XmlCell {
+        final int column;
+        private final StartElement start;
+        private final List<Attribute> otherAttributes = new ArrayList<>();
+        private int style;
+        private String type;
+        private List<XMLEvent> content;   // 原来的子元素（修改值后为 null）
+        private String text;              // 新值（数值、布尔或内联字符串的文本）
+        private boolean formula;
+
+        private XmlCell(StartElement start, List<XMLEvent> content, int lastColumn) {
+            this.start = start;
+            this.content = content;
+            Attribute r = start.getAttributeByName(new QName("r"));
+            if (r != null) {
+                this.column = new CellReference(r.getValue()).getCol();
+            } else {
+                this.column = lastColumn + 1;
+            }
+            for (Iterator<?> it = start.getAttributes(); it.hasNext(); ) {
+                Attribute attribute = (Attribute) it.next();
+                String name = attribute.getName().getLocalPart();
+                boolean plain = attribute.getName().getNamespaceURI().isEmpty();
+                if (plain && name.equals("s")) {
+                    style = Integer.parseInt(attribute.getValue());
+                } else if (plain && name.equals("t")) {
+                    type = attribute.getValue();
+                } else if (!plain || !name.equals("r")) {
+                    otherAttributes.add(attribute);
+                }
+            }
+            for (XMLEvent event : content) {
+                if (event.isStartElement() && event.asStartElement().getName().getLocalPart().equals("f")) {
+                    formula = true;
+                    break;
+                }
+            }
+        }
+
+        private XmlCell(int column) {
+            this.column = column;
+            this.start = null;
+        }
+
+        /**
+         * 样式索引（cellXfs 下标）
+         */
+        int getStyle() {
+            return style;
+        }
+
+        void setStyle(int style) {
+            this.style = style;
+        }
+
+        /**
+         * 清空值，保留样式（与 Cell#setBlank 相同）
+         */
+        void setBlank() {
+            replaceValue(null, null);
+        }
+
+        void setNumber(double value) {
+            if (Double.isNaN(value)) {
+                replaceValue("e", "#NUM!");
+            } else if (Double.isInfinite(value)) {
+                replaceValue("e", "#DIV/0!");
+            } else {
+                replaceValue(null, String.valueOf(value));
+            }
+        }
+
+        void setBoolean(boolean value) {
+            replaceValue("b", value ? "1" : "0");
+        }
+
+        void setString(String value) {
+            replaceValue("inlineStr", value);
+        }
+
+        /**
+         * 新值的数值（与 ExcelService#getNumericValue 规则一致），未修改或不是数字时返回 NaN
+         */
+        double getNewNumericValue() {
+            if (content != null || text == null || "b".equals(type) || "e".equals(type)) {
+                return Double.NaN;
+            }
+            String value = text.trim();
+            if (value.isEmpty()) {
+                return Double.NaN;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        /**
+         * 值是否已被修改
+         */
+        boolean isModified() {
+            return content == null;
+        }
+
+        private void replaceValue(String type, String text) {
+            if (formula) {
+                formulaRemoved = true;
+                formula = false;
+            }
+            this.type = type;
+            this.text = text;
+            this.content = null;
+            // 值元数据（vm）、单元格元数据（cm）只对原值有效
+            otherAttributes.removeIf(attribute -> attribute.getName().getNamespaceURI().isEmpty()
+                    && (attribute.getName().getLocalPart().equals("vm")
+                    || attribute.getName().getLocalPart().equals("cm")));
+        }
+    }
+}
@@ -0,0 +1,725 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * xlsx 流式读取器
+ * 基于 POI 事件模型（XSSFReader + SAX）逐行解析 sheet，不构建 Row/Cell 对象，
+ * 内存占用只与单行宽度有关，与 sheet 行数无关。
+ * 单元格值的解码规则与 ExcelService#getCellValue 保持一致：
+ * 字符串去除首尾空格、日期格式的数值返回 Date、公式单元格返回公式文本、空单元格返回 null。
+ */
+class StreamingSheetReader {
+
+    /**
+     * 行回调
+     */
+    interface RowHandler {
+        /**
+         * 处理一行数据
+         *
+         * @param rowNum 行号（从0开始）
+         * @param row    本行单元格值（缓冲区会被复用，回调返回后不可再引用）
+         * @return 是否继续读取后续行；返回 false 时立即停止解析
+         */
+        boolean handleRow(int rowNum, RowValues row);
+    }
+
+    /**
+     * 单行单元格值（可复用的缓冲区）
+     */
+    static final class RowValues {
+        private Object[] values = new Object[16];
+        private boolean[] present = new boolean[16];
+        private boolean[] formula = new boolean[16];
+        private int lastCellNum = 0;
+        private BitSet columnFilter;
+        private boolean date1904;
+
+        /**
+         * 设置需要解码的列（为 null 表示全部列），对后续行生效
+         * 未选中的列不会解码，可减少字符串和日期对象的创建
+         */
+        void setColumnFilter(BitSet columnFilter) {
+            this.columnFilter = columnFilter;
+        }
+
+        /**
+         * 源工作簿是否使用 1904 日期系统（日期值换算回 Excel 序列号时需要）
+         */
+        boolean isDate1904() {
+            return date1904;
+        }
+
+        void setDate1904(boolean date1904) {
+            this.date1904 = date1904;
+        }
+
+        boolean wants(int column) {
+            return columnFilter == null || columnFilter.get(column);
+        }
+
+        /**
+         * 最后一个单元格的列索引 + 1（与 Row#getLastCellNum 含义相同，空行为 0）
+         */
+        int getLastCellNum() {
+            return lastCellNum;
+        }
+
+        /**
+         * 单元格是否存在（文件中存在该单元格，即使值为空）
+         */
+        boolean contains(int column) {
+            return column >= 0 && column < lastCellNum && present[column];
+        }
+
+        /**
+         * 获取单元格值，不存在或为空时返回 null
+         */
+        Object get(int column) {
+            return contains(column) ? values[column] : null;
+        }
+
+        /**
+         * 单元格是否为公式单元格（此时值为公式文本）
+         */
+        boolean isFormula(int column) {
+            return contains(column) && formula[column];
+        }
+
+        /**
+         * 获取单元格值作为字符串（与 ExcelService#getCellValueAsString 一致）
+         */
+        String getAsString(int column) {
+            Object value = get(column);
+            return value != null ? value.toString() : "";
+        }
+
+        void clear() {
+            Arrays.fill(values, 0, lastCellNum, null);
+            Arrays.fill(present, 0, lastCellNum, false);
+            Arrays.fill(formula, 0, lastCellNum, false);
+            lastCellNum = 0;
+        }
+
+        void set(int column, Object value) {
+            set(column, value, false);
+        }
+
+        void set(int column, Object value, boolean isFormula) {
+            if (column >= values.length) {
+                int newLength = Math.max(values.length * 2, column + 1);
+                values = Arrays.copyOf(values, newLength);
+                present = Arrays.copyOf(present, newLength);
+                formula = Arrays.copyOf(formula, newLength);
+            }
+            values[column] = value;
+            present[column] = true;
+            formula[column] = isFormula;
+            if (column + 1 > lastCellNum) {
+                lastCellNum = column + 1;
+            }
+        }
+    }
+
+    /**
+     * 工作簿元数据（来自 workbook.xml）
+     */
+    static final class WorkbookInfo {
+        final List<String> sheetNames = new ArrayList<>();
+        final List<String> sheetRelIds = new ArrayList<>();
+        boolean date1904;
+    }
+
+    /**
+     * 解析被回调主动中止时抛出，用于跳出 SAX 解析
+     */
+    private static final class StopParsingException extends SAXException {
+        StopParsingException() {
+            super("stop");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private StreamingSheetReader() {
+    }
+
+    /**
+     * 判断文件是否可以走流式读取（仅支持 xlsx）
+     */
+    static boolean supports(File file) {
+        return file.getName().toLowerCase().endsWith(".xlsx");
+    }
+
+    /**
+     * 读取 sheet 页名称列表（只解析 workbook.xml，不读取任何 sheet 数据）
+     *
+     * @param file xlsx 文件
+     * @return sheet 页名称列表
+     */
+    static List<String> readSheetNames(File file) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            return readWorkbookInfo(new XSSFReader(pkg)).sheetNames;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("读取工作簿信息失败: " + file.getAbsolutePath() + " - " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 流式读取指定 sheet 页
+     * 共享字符串表和样式表都按需加载：只读取表头时，sharedStrings.xml 只解析到表头引用的最大下标为止，
+     * 没有日期候选单元格时 styles.xml 也不会被解析。
+     *
+     * @param file       xlsx 文件
+     * @param sheetIndex sheet 页索引（从0开始）
+     * @param handler    行回调
+     * @return sheet 页是否存在
+     */
+    static boolean readSheet(File file, int sheetIndex, RowHandler handler) throws IOException {
+        ExcelEvents.SheetReadEvent event = ExcelEvents.sheetRead(file);
+        // 正在录制 JFR 时统计读取的行数
+        long[] rows = new long[1];
+        String sheetName = null;
+        boolean succeeded = false;
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+
+            WorkbookInfo info = readWorkbookInfo(reader);
+            if (sheetIndex < 0 || sheetIndex >= info.sheetRelIds.size()) {
+                return false;
+            }
+            sheetName = info.sheetNames.get(sheetIndex);
+
+            RowHandler rowHandler = event == null ? handler : (rowNum, row) -> {
+                rows[0]++;
+                return handler.handleRow(rowNum, row);
+            };
+            try (LazySharedStrings sharedStrings = LazySharedStrings.open(pkg);
+                 InputStream sheetStream = reader.getSheet(info.sheetRelIds.get(sheetIndex))) {
+                parse(sheetStream, new SheetHandler(sharedStrings, reader, info.date1904, rowHandler));
+            }
+            succeeded = true;
+            return true;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("流式读取失败: " + file.getAbsolutePath() + " - " + e.getMessage(), e);
+        } finally {
+            // 读取失败、取消或 sheet 页不存在时同样提交（记录到失败为止读取的行数）
+            if (event != null) {
+                event.end(sheetName, rows[0], succeeded);
+            }
+        }
+    }
+
+    /**
+     * 读取 workbook.xml 中的 sheet 列表和日期系统
+     */
+    static WorkbookInfo readWorkbookInfo(XSSFReader reader) throws Exception {
+        final WorkbookInfo info = new WorkbookInfo();
+        try (InputStream workbookStream = reader.getWorkbookData()) {
+            parse(workbookStream, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("sheet".equals(localName)) {
+                        info.sheetNames.add(attributes.getValue("name"));
+                        info.sheetRelIds.add(attributes.getValue(
+                                "http://schemas.openxmlformats.org/officeDocument/2006/relationships", "id"));
+                    } else if ("workbookPr".equals(localName)) {
+                        String date1904 = attributes.getValue("date1904");
+                        info.date1904 = "1".equals(date1904) || "true".equalsIgnoreCase(date1904);
+                    }
+                }
+            });
+        }
+        return info;
+    }
+
+    private static void parse(InputStream stream, DefaultHandler handler) throws Exception {
+        XMLReader xmlReader = XMLHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        try {
+            xmlReader.parse(new InputSource(stream));
+        } catch (StopParsingException e) {
+            // 回调主动停止
+        }
+    }
+
+    /**
+     * sheet XML 的 SAX 处理器
+     */
+    private static final class SheetHandler extends DefaultHandler {
+        private final SharedStrings sharedStrings;
+        private final XSSFReader reader;
+        private StylesTable styles;
+        private boolean stylesLoaded;
+        private final boolean date1904;
+        private final RowHandler handler;
+        private final RowValues row = new RowValues();
+
+        // 样式索引 -> 是否为日期格式（按需计算并缓存）
+        private final Map<Integer, Boolean> dateStyleCache = new HashMap<>();
+        // 共享公式：si -> {主公式文本, 主单元格行, 主单元格列}
+        private final Map<String, Object[]> sharedFormulas = new HashMap<>();
+
+        private int rowNum = -1;
+        private int colNum = -1;
+
+        // 当前单元格状态
+        private boolean wanted;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasFormula;
+        private String sharedFormulaIndex;
+        private String sharedFormulaRef;
+        private boolean hasValue;
+        private boolean inValue;
+        private boolean inFormula;
+        private boolean inInlineString;
+        private boolean inText;
+        private boolean inPhonetic;
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+
+        SheetHandler(SharedStrings sharedStrings, XSSFReader reader, boolean date1904, RowHandler handler) {
+            this.sharedStrings = sharedStrings;
+            this.reader = reader;
+            this.date1904 = date1904;
+            this.handler = handler;
+            row.setDate1904(date1904);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    colNum = -1;
+                    row.clear();
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    colNum = ref != null ? new CellReference(ref).getCol() : colNum + 1;
+                    wanted = row.wants(colNum);
+                    cellType = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    styleIndex = s != null ? Integer.parseInt(s) : 0;
+                    hasFormula = false;
+                    sharedFormulaIndex = null;
+                    sharedFormulaRef = null;
+                    hasValue = false;
+                    value.setLength(0);
+                    formula.setLength(0);
+                    break;
+                case "v":
+                    inValue = true;
+                    hasValue = true;
+                    break;
+                case "f":
+                    inFormula = true;
+                    String formulaType = attributes.getValue("t");
+                    // 模拟运算表（dataTable）不视为公式单元格
+                    hasFormula = !"dataTable".equals(formulaType);
+                    if ("shared".equals(formulaType)) {
+                        sharedFormulaIndex = attributes.getValue("si");
+                        sharedFormulaRef = attributes.getValue("ref");
+                    }
+                    break;
+                case "is":
+                    inInlineString = true;
+                    hasValue = true;
+                    break;
+                case "t":
+                    inText = inInlineString;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (!wanted) {
+                // 共享公式的主公式文本即使不需要也要记录，供后续单元格使用
+                if (inFormula) {
+                    formula.append(ch, start, length);
+                }
+                return;
+            }
+            if (inValue || (inText && !inPhonetic)) {
+                value.append(ch, start, length);
+            } else if (inFormula) {
+                formula.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                    inValue = false;
+                    break;
+                case "f":
+                    inFormula = false;
+                    if (sharedFormulaIndex != null && sharedFormulaRef != null && formula.length() > 0) {
+                        sharedFormulas.put(sharedFormulaIndex,
+                                new Object[]{formula.toString(), rowNum, colNum});
+                    }
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    if (wanted) {
+                        row.set(colNum, decodeCell(), hasFormula);
+                    }
+                    break;
+                case "row":
+                    if (!handler.handleRow(rowNum, row)) {
+                        throw new StopParsingException();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * 按 ExcelService#getCellValue 的规则解码当前单元格
+         */
+        private Object decodeCell() throws SAXException {
+            if (hasFormula) {
+                if (formula.length() == 0 && sharedFormulaIndex != null) {
+                    return resolveSharedFormula();
+                }
+                return formula.toString();
+            }
+
+            if (cellType == null || "n".equals(cellType)) {
+                if (!hasValue) {
+                    return null;
+                }
+                double number = Double.parseDouble(value.toString());
+                if (isDateStyle(styleIndex) && DateUtil.isValidExcelDate(number)) {
+                    return DateUtil.getJavaDate(number, date1904);
+                }
+                return number;
+            }
+
+            switch (cellType) {
+                case "s":
+                    if (!hasValue || sharedStrings == null) {
+                        return "";
+                    }
+                    int index = Integer.parseInt(value.toString().trim());
+                    RichTextString item = sharedStrings.getItemAt(index);
+                    return item != null ? item.getString().trim() : "";
+                case "inlineStr":
+                    return new XSSFRichTextString(value.toString()).getString().trim();
+                case "str":
+                    return value.toString().trim();
+                case "b":
+                    if (!hasValue) {
+                        return null;
+                    }
+                    String bool = value.toString().trim();
+                    return "1".equals(bool) || "true".equalsIgnoreCase(bool);
+                case "e":
+                default:
+                    return null;
+            }
+        }
+
+        private boolean isDateStyle(int index) throws SAXException {
+            Boolean cached = dateStyleCache.get(index);
+            if (cached == null) {
+                if (!stylesLoaded) {
+                    // 遇到第一个数值单元格时才解析样式表
+                    try {
+                        styles = reader.getStylesTable();
+                    } catch (Exception e) {
+                        throw new SAXException("读取样式表失败: " + e.getMessage(), e);
+                    }
+                    stylesLoaded = true;
+                }
+                boolean isDate = false;
+                if (styles != null && index < styles.getNumCellStyles()) {
+                    XSSFCellStyle style = styles.getStyleAt(index);
+                    if (style != null) {
+                        isDate = DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+                    }
+                }
+                cached = isDate;
+                dateStyleCache.put(index, cached);
+            }
+            return cached;
+        }
+
+        /**
+         * 共享公式的从属单元格只记录 si，需要按相对位置平移主公式中的相对引用
+         */
+        private String resolveSharedFormula() {
+            Object[] master = sharedFormulas.get(sharedFormulaIndex);
+            if (master == null) {
+                return "";
+            }
+            return shiftFormula((String) master[0], rowNum - (Integer) master[1], colNum - (Integer) master[2]);
+        }
+    }
+
+    /**
+     * 按需加载的共享字符串表
+     * 用 StAX 顺序拉取 sharedStrings.xml 中的 si 条目，只解析到被请求的最大下标为止。
+     * 文本拼接规则与 DOM 模型一致：合并 t 和各 r/t 的文本，忽略 rPh 注音。
+     */
+    private static final class LazySharedStrings implements SharedStrings, Closeable {
+        private final InputStream stream;
+        private final XMLStreamReader xml;
+        private final List<String> strings = new ArrayList<>();
+        private int count = -1;
+        private int uniqueCount = -1;
+
+        private LazySharedStrings(InputStream stream, XMLStreamReader xml) {
+            this.stream = stream;
+            this.xml = xml;
+        }
+
+        static LazySharedStrings open(OPCPackage pkg) throws IOException, XMLStreamException {
+            List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+            if (parts.isEmpty()) {
+                return new LazySharedStrings(null, null);
+            }
+            InputStream stream = parts.get(0).getInputStream();
+            try {
+                return new LazySharedStrings(stream, XMLHelper.newXMLInputFactory().createXMLStreamReader(stream));
+            } catch (XMLStreamException e) {
+                stream.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public RichTextString getItemAt(int idx) {
+            while (idx >= strings.size() && xml != null && readNext()) {
+                // 继续向后解析直到目标下标
+            }
+            return idx >= 0 && idx < strings.size() ? new XSSFRichTextString(strings.get(idx)) : null;
+        }
+
+        @Override
+        public int getCount() {
+            return count >= 0 ? count : strings.size();
+        }
+
+        @Override
+        public int getUniqueCount() {
+            return uniqueCount >= 0 ? uniqueCount : strings.size();
+        }
+
+        /**
+         * 读取下一个 si 条目，到达文件末尾时返回 false
+         */
+        private boolean readNext() {
+            try {
+                StringBuilder text = null;
+                boolean inText = false;
+                int phoneticDepth = 0;
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if ("sst".equals(name)) {
+                            count = parseCount(xml.getAttributeValue(null, "count"));
+                            uniqueCount = parseCount(xml.getAttributeValue(null, "uniqueCount"));
+                        } else if ("si".equals(name)) {
+                            text = new StringBuilder();
+                        } else if ("rPh".equals(name)) {
+                            phoneticDepth++;
+                        } else if ("t".equals(name)) {
+                            inText = text != null && phoneticDepth == 0;
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE) {
+                        if (inText) {
+                            text.append(xml.getText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if ("t".equals(name)) {
+                            inText = false;
+                        } else if ("rPh".equals(name)) {
+                            phoneticDepth--;
+                        } else if ("si".equals(name) && text != null) {
+                            strings.add(text.toString());
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("读取共享字符串表失败: " + e.getMessage(), e);
+            }
+        }
+
+        private static int parseCount(String value) {
+            try {
+                return value != null ? Integer.parseInt(value) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (xml != null) {
+                    xml.close();
+                }
+            } catch (XMLStreamException e) {
+                // 忽略
+            } finally {
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 平移公式中的相对 A1 引用（带 $ 的绝对部分保持不变），字符串字面量和带引号的 sheet 名不处理
+     */
+    static String shiftFormula(String formula, int rowOffset, int colOffset) {
+        if (rowOffset == 0 && colOffset == 0) {
+            return formula;
+        }
+        StringBuilder result = new StringBuilder(formula.length() + 8);
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            char ch = formula.charAt(i);
+            if (ch == '"' || ch == '\'') {
+                // 跳过字符串字面量 / 带引号的 sheet 名
+                int end = formula.indexOf(ch, i + 1);
+                while (end >= 0 && end + 1 < length && formula.charAt(end + 1) == ch) {
+                    end = formula.indexOf(ch, end + 2);
+                }
+                end = end < 0 ? length : end + 1;
+                result.append(formula, i, end);
+                i = end;
+                continue;
+            }
+            boolean tokenStart = i == 0 || !isIdentifierChar(formula.charAt(i - 1));
+            if (tokenStart && (ch == '$' || Character.isLetter(ch))) {
+                int j = i;
+                boolean colAbsolute = false;
+                if (formula.charAt(j) == '$') {
+                    colAbsolute = true;
+                    j++;
+                }
+                int colStart = j;
+                while (j < length && j - colStart < 3 && isAsciiLetter(formula.charAt(j))) {
+                    j++;
+                }
+                int colEnd = j;
+                boolean rowAbsolute = false;
+                if (j < length && formula.charAt(j) == '$') {
+                    rowAbsolute = true;
+                    j++;
+                }
+                int rowStart = j;
+                while (j < length && Character.isDigit(formula.charAt(j))) {
+                    j++;
+                }
+                int rowEnd = j;
+                boolean isReference = colEnd > colStart && rowEnd > rowStart
+                        && (j >= length || (!isIdentifierChar(formula.charAt(j)) && formula.charAt(j) != '('));
+                if (isReference) {
+                    int col = CellReference.convertColStringToIndex(formula.substring(colStart, colEnd));
+                    int rowNumber = Integer.parseInt(formula.substring(rowStart, rowEnd));
+                    if (!colAbsolute) {
+                        col += colOffset;
+                    }
+                    if (!rowAbsolute) {
+                        rowNumber += rowOffset;
+                    }
+                    if (colAbsolute) {
+                        result.append('$');
+                    }
+                    result.append(CellReference.convertNumToColString(col));
+                    if (rowAbsolute) {
+                        result.append('$');
+                    }
+                    result.append(rowNumber);
+                    i = j;
+                    continue;
+                }
+                // 不是单元格引用（函数名、名称等），原样输出整个标识符
+                int end = i + 1;
+                while (end < length && isIdentifierChar(formula.charAt(end))) {
+                    end++;
+                }
+                result.append(formula, i, end);
+                i = end;
+                continue;
+            }
+            result.append(ch);
+            i++;
+        }
+        return result.toString();
+    }
+
+    private static boolean isAsciiLetter(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+    }
+
+    private static boolean isIdentifierChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '$';
+    }
+}
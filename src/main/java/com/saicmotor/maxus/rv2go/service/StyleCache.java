@@ -0,0 +1,152 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 单元格样式缓存（每个目标工作簿一个）
+ * 复制单元格或派生样式时，同一个源样式只在目标工作簿中创建一次，之后直接复用，
+ * 避免每个单元格都新建样式导致 styles.xml 膨胀、超出 xls 4000 / xlsx 64000 的样式数上限。
+ * 缓存返回的样式被多个单元格共用，取得后不能再修改，需要修改时应通过 derive 派生新样式。
+ * 正在录制 JFR 时每次新建样式（缓存未命中）记录一个创建单元格样式事件。
+ */
+final class StyleCache {
+
+    /**
+     * 缓存未命中时创建目标样式
+     */
+    interface StyleFactory {
+        CellStyle create();
+    }
+
+    /**
+     * 设置派生样式的属性
+     */
+    interface StyleModifier {
+        /**
+         * @param style 新建的空样式
+         * @param base  基础样式
+         */
+        void apply(CellStyle style, CellStyle base);
+    }
+
+    private final Workbook workbook;
+
+    // 源工作簿 -> 源样式索引 -> 目标样式
+    private final Map<Workbook, Map<Short, CellStyle>> copies = new IdentityHashMap<>();
+    // 样式指纹 -> 目标样式（不同源样式或不同源工作簿中属性相同的样式共用一个目标样式）
+    private final Map<String, CellStyle> copiesByFingerprint = new HashMap<>();
+    // 派生类型:基础样式索引 -> 派生样式
+    private final Map<String, CellStyle> derived = new HashMap<>();
+    // 名称 -> 与基础样式无关的共用样式
+    private final Map<String, CellStyle> shared = new HashMap<>();
+
+    StyleCache(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * 获取源样式在目标工作簿中的副本
+     *
+     * @param sourceWorkbook 源样式所在的工作簿
+     * @param sourceStyle    源样式
+     * @param factory        未命中时创建副本
+     */
+    CellStyle copyOf(Workbook sourceWorkbook, CellStyle sourceStyle, StyleFactory factory) {
+        Map<Short, CellStyle> byIndex = copies.computeIfAbsent(sourceWorkbook, k -> new HashMap<>());
+        CellStyle target = byIndex.get(sourceStyle.getIndex());
+        if (target == null) {
+            String fingerprint = fingerprint(sourceWorkbook, sourceStyle);
+            target = copiesByFingerprint.get(fingerprint);
+            if (target == null) {
+                target = create("复制", factory);
+                copiesByFingerprint.put(fingerprint, target);
+            }
+            byIndex.put(sourceStyle.getIndex(), target);
+        }
+        return target;
+    }
+
+    /**
+     * 获取基础样式的派生样式（如去掉填充、高亮），同一基础样式的同一种派生只创建一次
+     *
+     * @param variant  派生类型名称
+     * @param base     目标工作簿中的基础样式
+     * @param modifier 在新建的样式上设置属性（从基础样式复制哪些属性由调用方决定）
+     */
+    CellStyle derive(String variant, CellStyle base, StyleModifier modifier) {
+        String key = variant + ":" + base.getIndex();
+        CellStyle style = derived.get(key);
+        if (style == null) {
+            style = create("派生", () -> {
+                CellStyle created = workbook.createCellStyle();
+                modifier.apply(created, base);
+                return created;
+            });
+            derived.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * 获取按名称共用的样式（如日期格式），整个工作簿只创建一次
+     */
+    CellStyle shared(String name, StyleFactory factory) {
+        return shared.computeIfAbsent(name, k -> create("共用", factory));
+    }
+
+    /**
+     * 新建样式
+     *
+     * @param kind 样式种类（JFR 事件中使用）
+     */
+    private CellStyle create(String kind, StyleFactory factory) {
+        ExcelEvents.StyleCreateEvent event = ExcelEvents.styleCreate(kind);
+        CellStyle style = factory.create();
+        if (event != null) {
+            event.end(workbook.getNumCellStyles());
+        }
+        return style;
+    }
+
+    /**
+     * 样式指纹：包含复制单元格时会复制的全部属性
+     */
+    private static String fingerprint(Workbook sourceWorkbook, CellStyle style) {
+        Font font = sourceWorkbook.getFontAt(style.getFontIndex());
+        return new StringBuilder(128)
+                .append(style.getAlignment()).append('|')
+                .append(style.getVerticalAlignment()).append('|')
+                .append(style.getWrapText()).append('|')
+                .append(style.getIndention()).append('|')
+                .append(style.getRotation()).append('|')
+                .append(style.getBorderBottom()).append('|')
+                .append(style.getBorderLeft()).append('|')
+                .append(style.getBorderRight()).append('|')
+                .append(style.getBorderTop()).append('|')
+                .append(style.getBottomBorderColor()).append('|')
+                .append(style.getLeftBorderColor()).append('|')
+                .append(style.getRightBorderColor()).append('|')
+                .append(style.getTopBorderColor()).append('|')
+                .append(style.getFillBackgroundColor()).append('|')
+                .append(style.getFillForegroundColor()).append('|')
+                .append(style.getFillPattern()).append('|')
+                .append(style.getDataFormat()).append('|')
+                .append(style.getHidden()).append('|')
+                .append(style.getLocked()).append('|')
+                .append(font.getBold()).append('|')
+                .append(font.getColor()).append('|')
+                .append(font.getFontHeight()).append('|')
+                .append(font.getFontName()).append('|')
+                .append(font.getItalic()).append('|')
+                .append(font.getStrikeout()).append('|')
+                .append(font.getTypeOffset()).append('|')
+                .append(font.getUnderline())
+                .toString();
+    }
+}
@@ -1,6 +1,8 @@
 package com.saicmotor.maxus.rv2go.ui;
 
+import com.saicmotor.maxus.rv2go.service.CancellationToken;
 import com.saicmotor.maxus.rv2go.service.ExcelService;
+import com.saicmotor.maxus.rv2go.service.PerformanceReport;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
@@ -23,7 +25,11 @@ public class DataCleanPanel extends JPanel {
     private JList<String> selectedColumnsList;
     private DefaultListModel<String> selectedColumnsModel;
     private JTextArea logArea;
+    private ProgressPanel progressPanel;
     private JButton executeButton;
+    private JButton cancelButton;
+    private JCheckBox performanceReportCheckBox;  // 保存性能报告复选框
+    private CancellationToken cancellationToken;  // 正在执行的操作的取消标记
 
     private File selectedFile;
     private List<String> columns;
@@ -39,6 +45,7 @@ public class DataCleanPanel extends JPanel {
         this.columns = new ArrayList<>();
         this.selectedColumns = new ArrayList<>();
         initComponents();
+        excelService.setProgressListener(progressPanel);
     }
 
     private void initComponents() {
@@ -108,6 +115,31 @@ public class DataCleanPanel extends JPanel {
         });
         executeButton.addActionListener(this::executeExport);
         buttonPanel.add(executeButton);
+
+        // 取消按钮（执行期间可用）
+        cancelButton = new JButton("■ 取消");
+        cancelButton.setFont(new Font("微软雅黑", Font.BOLD, 15));
+        cancelButton.setPreferredSize(new Dimension(110, 48));
+        cancelButton.setFocusPainted(false);
+        cancelButton.setContentAreaFilled(false);
+        cancelButton.setOpaque(true);
+        cancelButton.setBackground(new Color(231, 76, 60));
+        cancelButton.setForeground(Color.WHITE);
+        cancelButton.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(192, 57, 43), 2),
+            BorderFactory.createEmptyBorder(12, 24, 12, 24)
+        ));
+        cancelButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(this::cancelExecution);
+        buttonPanel.add(cancelButton);
+
+        // 保存性能报告（JSON）
+        performanceReportCheckBox = new JCheckBox("保存性能报告（JSON）");
+        performanceReportCheckBox.setFont(new Font("微软雅黑", Font.PLAIN, 13));
+        performanceReportCheckBox.setBackground(new Color(245, 247, 250));
+        performanceReportCheckBox.setToolTipText("处理成功后在输出文件旁保存 输出文件名.perf.json");
+        buttonPanel.add(performanceReportCheckBox);
         contentPanel.add(buttonPanel);
 
         JScrollPane contentScrollPane = new JScrollPane(contentPanel);
@@ -137,6 +169,8 @@ public class DataCleanPanel extends JPanel {
         JScrollPane logScrollPane = new JScrollPane(logArea);
         logScrollPane.setBorder(BorderFactory.createEmptyBorder());
         logScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        progressPanel = new ProgressPanel();
+        logPanel.add(progressPanel, BorderLayout.NORTH);
         logPanel.add(logScrollPane, BorderLayout.CENTER);
         add(logPanel, BorderLayout.SOUTH);
     }
@@ -364,6 +398,17 @@ public class DataCleanPanel extends JPanel {
         }
     }
 
+    /**
+     * 取消正在执行的操作，后台处理在下一次检查时停止并删除未写完的输出文件
+     */
+    private void cancelExecution(ActionEvent e) {
+        if (cancellationToken != null && !cancellationToken.isCancelled()) {
+            cancellationToken.cancel();
+            cancelButton.setEnabled(false);
+            logArea.append("\n正在取消...\n");
+        }
+    }
+
     private void executeExport(ActionEvent e) {
         // 验证输入
         if (selectedFile == null) {
@@ -378,12 +423,20 @@ public class DataCleanPanel extends JPanel {
 
         // 禁用按钮
         executeButton.setEnabled(false);
+        progressPanel.reset();
         logArea.setText("开始执行导出操作...\n");
 
         // 保存为 final 变量供内部类使用
         final File inputFile = selectedFile;
         final List<String> columnsToExport = new ArrayList<>(selectedColumns);
 
+        // 每次执行使用新的取消标记
+        final CancellationToken cancellation = new CancellationToken();
+        cancellationToken = cancellation;
+        excelService.setCancellationToken(cancellation);
+        cancelButton.setEnabled(true);
+        excelService.setSavePerformanceReport(performanceReportCheckBox.isSelected());
+
         // 在后台线程执行
         new SwingWorker<Boolean, String>() {
             private Exception caughtException = null;
@@ -414,6 +467,16 @@ public class DataCleanPanel extends JPanel {
                         publish("导出失败，请检查日志");
                     }
 
+                    // 显示性能报告
+                    PerformanceReport report = excelService.getLastPerformanceReport();
+                    if (report != null) {
+                        publish(report.format());
+                        File reportFile = report.getSavedFile();
+                        if (reportFile != null) {
+                            publish("性能报告已保存: " + reportFile.getAbsolutePath());
+                        }
+                    }
+
                     return success;
                 } catch (Exception ex) {
                     caughtException = ex;
@@ -436,8 +499,10 @@ public class DataCleanPanel extends JPanel {
             @Override
             protected void done() {
                 executeButton.setEnabled(true);
+                cancelButton.setEnabled(false);
 
                 if (caughtException != null) {
+                    progressPanel.finish(false);
                     logArea.append("\n=== 执行失败 ===\n");
                     logArea.append("错误类型: " + caughtException.getClass().getName() + "\n");
                     logArea.append("错误信息: " + caughtException.getMessage() + "\n");
@@ -448,6 +513,7 @@ public class DataCleanPanel extends JPanel {
 
                 try {
                     if (get()) {
+                        progressPanel.finish(true);
                         Object[] options = {"确定", "打开文件夹"};
                         int choice = JOptionPane.showOptionDialog(
                                 DataCleanPanel.this,
@@ -463,13 +529,19 @@ public class DataCleanPanel extends JPanel {
                         if (choice == 1) {
                             openFileLocation(lastOutputFile);
                         }
+                    } else if (cancellation.isCancelled()) {
+                        progressPanel.cancelled();
+                        logArea.append("\n=== 已取消 ===\n");
+                        logArea.append("已停止处理，未生成输出文件\n");
                     } else {
+                        progressPanel.finish(false);
                         logArea.append("\n=== 导出失败 ===\n");
                         logArea.append("返回值为 false，请检查配置参数\n");
                         JOptionPane.showMessageDialog(DataCleanPanel.this,
                                 "数据导出失败，请检查输入配置和日志", "失败", JOptionPane.ERROR_MESSAGE);
                     }
                 } catch (Exception ex) {
+                    progressPanel.finish(false);
                     logArea.append("\n=== 系统错误 ===\n");
                     logArea.append("错误: " + ex.getMessage() + "\n");
                     for (StackTraceElement element : ex.getStackTrace()) {
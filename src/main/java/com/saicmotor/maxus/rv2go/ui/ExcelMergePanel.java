@@ -1,6 +1,8 @@
 package com.saicmotor.maxus.rv2go.ui;
 
+import com.saicmotor.maxus.rv2go.service.CancellationToken;
 import com.saicmotor.maxus.rv2go.service.ExcelService;
+import com.saicmotor.maxus.rv2go.service.PerformanceReport;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
@@ -37,10 +39,16 @@ public class ExcelMergePanel extends JPanel {
     private JList<String> mergeColumnsList;  // 合并列列表
     private DefaultListModel<String> mergeColumnsModel;  // 合并列列表模型
     private JCheckBox highlightMatchesCheckBox;  // 高亮匹配行复选框
+    private JCheckBox conditionalHighlightCheckBox;  // 使用条件格式高亮复选框
+    private JComboBox<String> outputModeCombo;  // 输出方式下拉框
     private JTextField headerRow1Field;  // 表1表头开始行
     private JTextField headerRow2Field;  // 表2表头开始行
     private JTextArea logArea;
+    private ProgressPanel progressPanel;
     private JButton executeButton;
+    private JButton cancelButton;
+    private JCheckBox performanceReportCheckBox;  // 保存性能报告复选框
+    private CancellationToken cancellationToken;  // 正在执行的操作的取消标记
 
     private File selectedFile1;
     private File selectedFile2;
@@ -74,6 +82,7 @@ public class ExcelMergePanel extends JPanel {
         this.joinKeyGroups = new ArrayList<>();
         this.columnsToMergeList = new ArrayList<>();
         initComponents();
+        excelService.setProgressListener(progressPanel);
     }
 
     private void initComponents() {
@@ -144,6 +153,31 @@ public class ExcelMergePanel extends JPanel {
         });
         executeButton.addActionListener(this::executeMerge);
         buttonPanel.add(executeButton);
+
+        // 取消按钮（执行期间可用）
+        cancelButton = new JButton("■ 取消");
+        cancelButton.setFont(new Font("微软雅黑", Font.BOLD, 15));
+        cancelButton.setPreferredSize(new Dimension(110, 48));
+        cancelButton.setFocusPainted(false);
+        cancelButton.setContentAreaFilled(false);
+        cancelButton.setOpaque(true);
+        cancelButton.setBackground(new Color(231, 76, 60));
+        cancelButton.setForeground(Color.WHITE);
+        cancelButton.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(192, 57, 43), 2),
+            BorderFactory.createEmptyBorder(12, 24, 12, 24)
+        ));
+        cancelButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(this::cancelExecution);
+        buttonPanel.add(cancelButton);
+
+        // 保存性能报告（JSON）
+        performanceReportCheckBox = new JCheckBox("保存性能报告（JSON）");
+        performanceReportCheckBox.setFont(new Font("微软雅黑", Font.PLAIN, 13));
+        performanceReportCheckBox.setBackground(new Color(245, 247, 250));
+        performanceReportCheckBox.setToolTipText("处理成功后在输出文件旁保存 输出文件名.perf.json");
+        buttonPanel.add(performanceReportCheckBox);
         contentPanel.add(buttonPanel);
 
         JScrollPane contentScrollPane = new JScrollPane(contentPanel);
@@ -173,6 +207,8 @@ public class ExcelMergePanel extends JPanel {
         JScrollPane logScrollPane = new JScrollPane(logArea);
         logScrollPane.setBorder(BorderFactory.createEmptyBorder());
         logScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        progressPanel = new ProgressPanel();
+        logPanel.add(progressPanel, BorderLayout.NORTH);
         logPanel.add(logScrollPane, BorderLayout.CENTER);
         add(logPanel, BorderLayout.SOUTH);
     }
@@ -469,6 +505,41 @@ public class ExcelMergePanel extends JPanel {
         panel.add(highlightMatchesCheckBox, gbc);
         gbc.gridwidth = 1;
 
+        // 第八行：使用条件格式高亮（大文件时不修改单元格样式）
+        gbc.gridx = 0;
+        gbc.gridy = 7;
+        gbc.weightx = 0;
+        gbc.gridwidth = 3;
+        conditionalHighlightCheckBox = new JCheckBox("使用条件格式高亮（不修改单元格样式，适合大文件）");
+        conditionalHighlightCheckBox.setFont(new Font("微软雅黑", Font.PLAIN, 13));
+        conditionalHighlightCheckBox.setForeground(labelColor);
+        conditionalHighlightCheckBox.setBackground(new Color(255, 255, 255));
+        conditionalHighlightCheckBox.setEnabled(highlightMatchesCheckBox.isSelected());
+        highlightMatchesCheckBox.addItemListener(e ->
+                conditionalHighlightCheckBox.setEnabled(highlightMatchesCheckBox.isSelected()));
+        panel.add(conditionalHighlightCheckBox, gbc);
+        gbc.gridwidth = 1;
+
+        // 第九行：输出方式（直通输出只改写主表 sheet 页，其他内容原样保留）
+        gbc.gridx = 0;
+        gbc.gridy = 8;
+        gbc.weightx = 0;
+        JLabel outputModeLabel = new JLabel("输出方式:");
+        outputModeLabel.setFont(new Font("微软雅黑", Font.PLAIN, 13));
+        outputModeLabel.setForeground(labelColor);
+        panel.add(outputModeLabel, gbc);
+
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        gbc.gridwidth = 2;
+        outputModeCombo = new JComboBox<>(new String[]{
+                "复制工作簿（默认）",
+                "直通输出（仅 xlsx，只改写主表 sheet 页，保留图片、透视表等）",
+                "原地合并（直接修改主表后另存，内存占用减半）"});
+        outputModeCombo.setFont(new Font("微软雅黑", Font.PLAIN, 13));
+        panel.add(outputModeCombo, gbc);
+        gbc.gridwidth = 1;
+
         // 隐藏的字段（保留用于兼容）
         joinKeysField = new JTextField();
         joinKeysField.setVisible(false);
@@ -574,6 +645,17 @@ public class ExcelMergePanel extends JPanel {
         }
     }
 
+    /**
+     * 取消正在执行的操作，后台处理在下一次检查时停止并删除未写完的输出文件
+     */
+    private void cancelExecution(ActionEvent e) {
+        if (cancellationToken != null && !cancellationToken.isCancelled()) {
+            cancellationToken.cancel();
+            cancelButton.setEnabled(false);
+            logArea.append("\n正在取消...\n");
+        }
+    }
+
     private void executeMerge(ActionEvent e) {
         // 验证输入
         if (selectedFile1 == null || selectedFile2 == null) {
@@ -608,6 +690,7 @@ public class ExcelMergePanel extends JPanel {
 
         // 禁用按钮
         executeButton.setEnabled(false);
+        progressPanel.reset();
         logArea.setText("开始执行合并操作...\n");
 
         // 保存为 final 变量供内部类使用
@@ -616,6 +699,9 @@ public class ExcelMergePanel extends JPanel {
         final List<String> joinKeyGroupsList = new ArrayList<>(joinKeyGroups);
         final List<String> columnsToMergeListFinal = new ArrayList<>(columnsToMergeList);
         final boolean highlightMatches = highlightMatchesCheckBox.isSelected();
+        excelService.setHighlightWithConditionalFormatting(conditionalHighlightCheckBox.isSelected());
+        // 下拉框选项与 MergeOutputMode 的顺序一致
+        excelService.setMergeOutputMode(ExcelService.MergeOutputMode.values()[outputModeCombo.getSelectedIndex()]);
         final int headerRow1Final = headerRow1;
         final int headerRow2Final = headerRow2;
 
@@ -629,6 +715,13 @@ public class ExcelMergePanel extends JPanel {
         }
         final File finalOutputFile = outputFile;
 
+        // 每次执行使用新的取消标记
+        final CancellationToken cancellation = new CancellationToken();
+        cancellationToken = cancellation;
+        excelService.setCancellationToken(cancellation);
+        cancelButton.setEnabled(true);
+        excelService.setSavePerformanceReport(performanceReportCheckBox.isSelected());
+
         // 在后台线程执行
         new SwingWorker<Boolean, String>() {
             private Exception caughtException = null;
@@ -676,6 +769,16 @@ public class ExcelMergePanel extends JPanel {
                     publish("合并失败，请检查日志");
                 }
 
+                // 显示性能报告
+                PerformanceReport report = excelService.getLastPerformanceReport();
+                if (report != null) {
+                    publish(report.format());
+                    File reportFile = report.getSavedFile();
+                    if (reportFile != null) {
+                        publish("性能报告已保存: " + reportFile.getAbsolutePath());
+                    }
+                }
+
                 return success;
                 } catch (Exception ex) {
                     caughtException = ex;
@@ -699,9 +802,11 @@ public class ExcelMergePanel extends JPanel {
             @Override
             protected void done() {
                 executeButton.setEnabled(true);
+                cancelButton.setEnabled(false);
 
                 // 首先检查是否在 doInBackground 中捕获了异常
                 if (caughtException != null) {
+                    progressPanel.finish(false);
                     logArea.append("\n=== 执行失败 ===\n");
                     logArea.append("错误类型: " + caughtException.getClass().getName() + "\n");
                     logArea.append("错误信息: " + caughtException.getMessage() + "\n");
@@ -712,6 +817,7 @@ public class ExcelMergePanel extends JPanel {
 
                 try {
                     if (get()) {
+                        progressPanel.finish(true);
                         // 显示成功对话框，提供打开文件夹选项
                         Object[] options = {"确定", "打开文件夹"};
                         int choice = JOptionPane.showOptionDialog(
@@ -729,13 +835,19 @@ public class ExcelMergePanel extends JPanel {
                         if (choice == 1) {
                             openFileLocation(lastOutputFile);
                         }
+                    } else if (cancellation.isCancelled()) {
+                        progressPanel.cancelled();
+                        logArea.append("\n=== 已取消 ===\n");
+                        logArea.append("已停止处理，未生成输出文件\n");
                     } else {
+                        progressPanel.finish(false);
                         logArea.append("\n=== 合并失败 ===\n");
                         logArea.append("返回值为 false，请检查配置参数\n");
                         JOptionPane.showMessageDialog(ExcelMergePanel.this,
                                 "Excel 合并失败，请检查输入配置和日志", "失败", JOptionPane.ERROR_MESSAGE);
                     }
                 } catch (Exception ex) {
+                    progressPanel.finish(false);
                     logArea.append("\n=== 系统错误 ===\n");
                     logArea.append("错误: " + ex.getMessage() + "\n");
                     for (StackTraceElement element : ex.getStackTrace()) {
@@ -0,0 +1,136 @@
+package com.saicmotor.maxus.rv2go.ui;
+
+import com.saicmotor.maxus.rv2go.service.ProgressListener;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 处理进度条
+ * 显示当前阶段、已处理行数、处理速度和本阶段的预计剩余时间。
+ * 作为 ExcelService 的进度监听器使用：回调可能来自任意线程，只保存最新进度，
+ * 由事件分派线程合并刷新（未刷新前的多次回调只刷新一次）。
+ */
+public class ProgressPanel extends JPanel implements ProgressListener {
+    private final JProgressBar progressBar;
+    private final JLabel statusLabel;
+
+    // 最新进度（任意线程写入，事件分派线程读取）
+    private Phase phase;
+    private long done;
+    private long total;
+    private double ratePerSecond;
+    private boolean refreshPending;
+
+    public ProgressPanel() {
+        super(new BorderLayout(10, 0));
+        setBackground(new Color(245, 247, 250));
+        setBorder(BorderFactory.createEmptyBorder(0, 0, 6, 0));
+
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        progressBar.setPreferredSize(new Dimension(260, 20));
+        add(progressBar, BorderLayout.WEST);
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("微软雅黑", Font.PLAIN, 12));
+        statusLabel.setForeground(new Color(52, 73, 94));
+        add(statusLabel, BorderLayout.CENTER);
+    }
+
+    @Override
+    public void onProgress(Phase phase, long done, long total, double ratePerSecond) {
+        synchronized (this) {
+            this.phase = phase;
+            this.done = done;
+            this.total = total;
+            this.ratePerSecond = ratePerSecond;
+            if (refreshPending) {
+                return;
+            }
+            refreshPending = true;
+        }
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    /**
+     * 开始新的处理前清空进度（在事件分派线程中调用）
+     */
+    public void reset() {
+        synchronized (this) {
+            phase = null;
+        }
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(0);
+        progressBar.setString("");
+        statusLabel.setText(" ");
+    }
+
+    /**
+     * 处理结束（在事件分派线程中调用）
+     */
+    public void finish(boolean success) {
+        synchronized (this) {
+            phase = null;
+        }
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(success ? progressBar.getMaximum() : 0);
+        progressBar.setString(success ? "完成" : "");
+        statusLabel.setText(success ? "处理完成" : "处理未完成");
+    }
+
+    /**
+     * 处理已取消（在事件分派线程中调用）
+     */
+    public void cancelled() {
+        finish(false);
+        progressBar.setString("已取消");
+        statusLabel.setText("处理已取消");
+    }
+
+    private void refresh() {
+        Phase currentPhase;
+        long currentDone;
+        long currentTotal;
+        double currentRate;
+        synchronized (this) {
+            refreshPending = false;
+            if (phase == null) {
+                return;
+            }
+            currentPhase = phase;
+            currentDone = done;
+            currentTotal = total;
+            currentRate = ratePerSecond;
+        }
+
+        StringBuilder status = new StringBuilder(currentPhase.getDisplayName()).append(": ");
+        if (currentTotal < 0) {
+            // 总数未知（读取、保存文件）
+            progressBar.setIndeterminate(true);
+            progressBar.setString(currentPhase.getDisplayName() + "...");
+            status.append("进行中");
+        } else {
+            progressBar.setIndeterminate(false);
+            int value = currentTotal == 0 ? progressBar.getMaximum()
+                    : (int) (progressBar.getMaximum() * Math.min(1.0, (double) currentDone / currentTotal));
+            progressBar.setValue(value);
+            progressBar.setString(currentPhase.getDisplayName() + " " + value / 10 + "%");
+            status.append(String.format("%,d / %,d %s", currentDone, currentTotal, currentPhase.getUnit()));
+            if (currentRate > 0 && currentDone < currentTotal) {
+                status.append(String.format("，%,.0f %s/秒", currentRate, currentPhase.getUnit()));
+                status.append("，预计剩余 ").append(formatSeconds((currentTotal - currentDone) / currentRate));
+            }
+        }
+        statusLabel.setText(status.toString());
+    }
+
+    private static String formatSeconds(double seconds) {
+        long s = Math.max(1, Math.round(seconds));
+        if (s < 60) {
+            return s + " 秒";
+        }
+        return s / 60 + " 分 " + s % 60 + " 秒";
+    }
+}
@@ -0,0 +1,81 @@
+package com.saicmotor.maxus.rv2go.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 列运算的执行顺序
+ * 二元运算按列表顺序执行（读取执行到它时的单元格值），公式排在它引用的其他运算之后。
+ */
+class ColumnCalculationTest {
+
+    private static final String[] COLUMNS = {"A", "B", "C", "D", "E"};
+
+    private final ExcelService excelService = new ExcelService();
+    private XSSFWorkbook workbook;
+    private Row header;
+    private Row row;
+    private Map<String, Integer> columnMap;
+
+    @BeforeEach
+    void setUp() {
+        workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        header = sheet.createRow(0);
+        row = sheet.createRow(1);
+        double[] values = {0, 2, 3, 5, 7};
+        columnMap = new HashMap<>();
+        for (int col = 0; col < COLUMNS.length; col++) {
+            header.createCell(col).setCellValue(COLUMNS[col]);
+            row.createCell(col).setCellValue(values[col]);
+            columnMap.put(COLUMNS[col], col);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Test
+    void binaryCalculationsRunInListOrder() {
+        // A 使用 B 的原值，之后 B 才被改写
+        apply(Arrays.asList(
+                new ExcelService.ColumnCalculation("A", "B", "add", "C"),
+                new ExcelService.ColumnCalculation("B", "D", "multiply", "E")));
+
+        assertEquals(5, row.getCell(0).getNumericCellValue());
+        assertEquals(35, row.getCell(1).getNumericCellValue());
+    }
+
+    @Test
+    void formulaRunsAfterCalculationsItReferences() {
+        // 公式引用后面运算的目标列 B，B 先执行
+        apply(Arrays.asList(
+                new ExcelService.ColumnCalculation("A", "[B] + [C]"),
+                new ExcelService.ColumnCalculation("B", "D", "multiply", "E")));
+
+        assertEquals(38, row.getCell(0).getNumericCellValue());
+        assertEquals(35, row.getCell(1).getNumericCellValue());
+    }
+
+    private void apply(List<ExcelService.ColumnCalculation> calculations) {
+        ExcelService.CompiledCalculations compiled =
+                excelService.compileColumnCalculations(header, columnMap, calculations);
+        assertNotNull(compiled);
+        excelService.applyColumnCalculations(row, compiled);
+    }
+}